@@ -13,14 +13,37 @@
  */
 package org.metis.cassandra;
 
+import java.io.File;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.metis.utils.Utils;
 import org.slf4j.Logger;
@@ -31,17 +54,33 @@ import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.DisposableBean;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationContextAware;
+import org.apache.camel.AsyncCallback;
 import org.apache.camel.Exchange;
 import org.apache.camel.Message;
 import org.apache.camel.Processor;
+import org.apache.camel.component.file.GenericFile;
+import org.apache.camel.impl.DefaultMessage;
 
+import com.datastax.driver.core.BatchStatement;
+import com.datastax.driver.core.BoundStatement;
 import com.datastax.driver.core.Cluster;
+import com.datastax.driver.core.CodecRegistry;
 import com.datastax.driver.core.ColumnDefinitions;
-import com.datastax.driver.core.ColumnDefinitions.Definition;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.ProtocolVersion;
 import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
 import com.datastax.driver.core.Row;
 import com.datastax.driver.core.Session;
+import com.datastax.driver.core.Statement;
 import com.datastax.driver.core.exceptions.NoHostAvailableException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
 
 import static org.metis.utils.Constants.*;
 import static org.metis.utils.Utils.dumpStackTrace;
@@ -51,13 +90,53 @@ public class Client implements InitializingBean, DisposableBean, BeanNameAware,
 
 	// various properties
 	private static final Logger LOG = LoggerFactory.getLogger(Client.class);
+
+	// the estimated overhead, in bytes, of each statement in a batch and of
+	// each value (cell) that it binds, over and above the bound values
+	private static final int BATCH_STMNT_OVERHEAD = 32;
+	private static final int BATCH_VALUE_OVERHEAD = 12;
+
 	private boolean isRunning;
 	private ClusterBean clusterBean;
 	private Cluster cluster;
 	private String keyspace;
-	private Session session;
+	// published once connected, so that it can be read without locking
+	private volatile Session session;
 	private String beanName;
 	private boolean autoInject = true;
+	private boolean async;
+	private int maxInFlight;
+	private Semaphore inFlightPermits;
+	// the statements of the asynchronous producer that are waiting for an
+	// in-flight permit, or to be admitted by the concurrency limiter. no
+	// more than maxDeferred statements are deferred at a time and, if the
+	// concurrencyQueueTimeout is greater than 0, a statement that has been
+	// deferred for longer than that is rejected
+	private final Queue<DeferredFuture> deferred = new ConcurrentLinkedQueue<DeferredFuture>();
+	private final AtomicInteger deferredCount = new AtomicInteger();
+	private final AtomicLong deferredRejections = new AtomicLong();
+	private int maxDeferred = 10000;
+	private final AtomicInteger deferring = new AtomicInteger();
+	// the deferred statements are bound and sent on this executor, rather
+	// than on the driver's I/O thread that completed a statement
+	private ExecutorService deferExecutor;
+	// when true, the number of statements in flight is limited by an
+	// adaptive limit that is derived from their round trip times. a
+	// statement that is over the limit is rejected or, if the
+	// concurrencyQueueTimeout is greater than 0, waits up to that many
+	// milliseconds to be admitted
+	private boolean adaptiveConcurrency;
+	private int initialConcurrency = 20;
+	private int minConcurrency = 1;
+	private int maxConcurrency = 1000;
+	private double concurrencyTolerance = 2.0;
+	private long concurrencyQueueTimeout;
+	private CqlConcurrencyLimiter concurrencyLimiter;
+	private boolean batchByPartition;
+	private int maxBatchStatements = 100;
+	// the default for Cassandra's batch_size_warn_threshold_in_kb is 5; the
+	// default cap leaves headroom for what getSize can only estimate
+	private int maxBatchBytes = 4 * 1024;
 	private ApplicationContext applicationContext;
 
 	// the injected CQL statements
@@ -95,7 +174,75 @@ public class Client implements InitializingBean, DisposableBean, BeanNameAware,
 	// the default method used for this bean
 	private Method defaultMethod;
 
-	private final ReentrantLock sessionLock = new ReentrantLock();
+	// the supported formats for returning the results of a SELECT. LIST
+	// returns a List of Maps, whereas ITERATOR returns a lazy Iterator of
+	// Maps that is backed by the result set. COMPACT returns a List of
+	// read-only Maps that share their result set's column names. JSON
+	// returns an InputStream of JSON text that is backed by the result set
+	public enum ResultFormat {
+		LIST, ITERATOR, COMPACT, JSON;
+	}
+
+	private ResultFormat resultFormat = ResultFormat.LIST;
+
+	// the statement dispatch index, by method
+	private volatile Map<Method, CqlStmntIndex> stmntIndex;
+
+	// the executor, and its number of threads, used for scanning token ranges
+	private ExecutorService scanExecutor;
+	private int scanThreads = Runtime.getRuntime().availableProcessors();
+
+	// when true, all of the CQL statements are prepared, concurrently, at
+	// startup rather than on their first use
+	private boolean eagerPrepare;
+	// how long (in milliseconds) startup waits on the eager prepares
+	private long prepareTimeout = 10000L;
+	// SELECT payloads that are executed at startup for warming up the
+	// session's connection pools and the JIT
+	private List<Map<Object, Object>> warmUps;
+	private int warmUpIterations = 1;
+	// when true, a JSON (or Smile/CBOR) InputStream body is parsed one
+	// object at a time and each object is executed as soon as it is parsed,
+	// with no more than ingestConcurrency statements in flight
+	private boolean streamingIngest;
+	private int ingestConcurrency = 32;
+	// when true, the payload names a CSV or JSON Lines file (via a path,
+	// File or GenericFile), which is memory-mapped and loaded, in chunks of
+	// bulkLoadChunkSize bytes, by bulkLoadThreads threads; with no more than
+	// ingestConcurrency statements in flight
+	private boolean bulkLoad;
+	private String bulkLoadFormat;
+	private int bulkLoadThreads = Runtime.getRuntime().availableProcessors();
+	private long bulkLoadChunkSize = 8L * 1024 * 1024;
+	// the bulk loads in progress and the totals of those that have completed
+	private final Set<CqlBulkLoader> bulkLoads = Collections
+			.newSetFromMap(new ConcurrentHashMap<CqlBulkLoader, Boolean>());
+	private final AtomicLong bulkLoadRecords = new AtomicLong();
+	private final AtomicLong bulkLoadFailures = new AtomicLong();
+	private final AtomicLong bulkLoadBytes = new AtomicLong();
+
+	// when true, INSERTs and UPDATEs are acknowledged once they have been
+	// accepted into the write-behind buffer, which is flushed in batches
+	// when flushSize writes are pending or flushInterval milliseconds after
+	// the first was accepted. the buffer holds no more than capacity
+	// writes; a writer waits up to writeBehindTimeout milliseconds for room
+	private boolean writeBehind;
+	private int writeBehindCapacity = 10000;
+	private int writeBehindFlushSize = 500;
+	private long writeBehindFlushInterval = 100L;
+	private long writeBehindTimeout = 5000L;
+	private volatile CqlWriteBehind writeBehindBuffer;
+
+	// when true, counter UPDATEs are acknowledged once their deltas have
+	// been added to the totals of their rows, and the net delta of each row
+	// is written as one UPDATE every counterFlushInterval milliseconds
+	private boolean aggregateCounters;
+	private long counterFlushInterval = 1000L;
+	private volatile CqlCounterAggregator counterAggregator;
+
+	// the connection attempt in progress (if any), which is shared by all
+	// the threads that are waiting on the session
+	private final AtomicReference<SettableFuture<Session>> connecting = new AtomicReference<SettableFuture<Session>>();
 	private long sessionLockWaitTime = 10000L;
 
 	public Client() {
@@ -112,6 +259,24 @@ public class Client implements InitializingBean, DisposableBean, BeanNameAware,
 			return;
 		}
 
+		if (isAdaptiveConcurrency()) {
+			if (getMinConcurrency() < 1
+					|| getMaxConcurrency() < getMinConcurrency()) {
+				throw new IllegalArgumentException(getBeanName()
+						+ ": minConcurrency must be greater than 0 and no "
+						+ "greater than maxConcurrency");
+			}
+			concurrencyLimiter = new CqlConcurrencyLimiter(getBeanName(),
+					getInitialConcurrency(), getMinConcurrency(),
+					getMaxConcurrency(), getConcurrencyTolerance(),
+					getConcurrencyQueueTimeout());
+			concurrencyLimiter.setReleaseListener(new Runnable() {
+				public void run() {
+					sendDeferred();
+				}
+			});
+		}
+
 		// the client must be wired to a ClusterBean, which is used for
 		// accessing a Cassandra cluster. If the Client is not wired to a
 		// ClusterBean, then look for one in the application context
@@ -312,288 +477,2093 @@ public class Client implements InitializingBean, DisposableBean, BeanNameAware,
 					+ getDefaultMethod());
 		}
 
+		// build the statement dispatch index
+		buildStmntIndex();
+
+		if (isEagerPrepare()) {
+			prepareAll();
+		}
+		if (getWarmUps() != null && !getWarmUps().isEmpty()) {
+			warmUp();
+		}
+
 		setRunning(true);
 	}
 
+	/**
+	 * Concurrently prepares all of this Client's CQL statements and waits, up
+	 * to prepareTimeout milliseconds, for them to be prepared. A statement
+	 * that could not be prepared is prepared again on its first use.
+	 */
+	private void prepareAll() {
+		Session session = null;
+		try {
+			session = getSession();
+		} catch (Exception exc) {
+			LOG.warn(getBeanName() + ":prepareAll: no session, statements "
+					+ "will be prepared on first use");
+			return;
+		}
+		List<ListenableFuture<List<PreparedStatement>>> futures = new ArrayList<ListenableFuture<List<PreparedStatement>>>();
+		for (Method method : Method.values()) {
+			if (!method.isNoop()) {
+				for (CqlStmnt cqlStmnt : getCqlStmnts(method)) {
+					futures.add(cqlStmnt.prepareAsync(session));
+				}
+			}
+		}
+		try {
+			Futures.successfulAsList(futures).get(getPrepareTimeout(),
+					TimeUnit.MILLISECONDS);
+			LOG.info(getBeanName() + ":prepareAll: prepared {} statements",
+					futures.size());
+		} catch (Exception exc) {
+			LOG.warn(getBeanName() + ":prepareAll: statements were not "
+					+ "prepared within " + getPrepareTimeout()
+					+ " milliseconds, msg = " + exc.getMessage());
+		}
+	}
+
+	/**
+	 * Executes each of the warm-up SELECT payloads warmUpIterations times.
+	 * The results are discarded and failures are only logged.
+	 */
+	private void warmUp() {
+		int executed = 0;
+		for (int i = 0; i < getWarmUpIterations(); i++) {
+			for (Map<Object, Object> map : getWarmUps()) {
+				Message inMsg = new DefaultMessage();
+				inMsg.setHeader(CASSANDRA_METHOD, Method.SELECT.toString());
+				List<Map<Object, Object>> listMap = new ArrayList<Map<Object, Object>>();
+				listMap.add(map);
+				try {
+					execute(listMap, inMsg);
+					executed++;
+				} catch (Exception exc) {
+					LOG.warn(getBeanName() + ":warmUp: unable to execute "
+							+ "warm-up " + map + ", msg = " + exc.getMessage());
+				}
+			}
+		}
+		LOG.info(getBeanName() + ":warmUp: executed {} of {} warm-ups",
+				executed, getWarmUps().size() * getWarmUpIterations());
+	}
+
 	/**
 	 * This is the method that is called by the CassandraProducer. A route
 	 * (channel) that is using this producer may be using a thread pool;
 	 * therefore, this method, and bean in general, must be multi-thread
 	 * capable!
 	 */
-	@SuppressWarnings({ "rawtypes", "unchecked" })
 	public void process(Exchange exchange) throws Exception {
 
 		LOG.trace(getBeanName()
 				+ ":camelProcess - **** processing new request ****");
 
-		if (!isRunning()) {
-			LOG.error(getBeanName()
-					+ ":camelProcess: this client has not been initialized");
-			throw new Exception(getBeanName()
-					+ ":camelProcess: this client has not been initialized");
-		}
-
-		// determine the message exchange pattern being requested.
-		// the exchange pattern must be both in and out capable
-		if (!exchange.getPattern().isInCapable()) {
-			throw new Exception(getBeanName()
-					+ ":camelProcess: exchange pattern is not inCapable");
-		} else if (!exchange.getPattern().isOutCapable()) {
-			throw new Exception(getBeanName()
-					+ ":camelProcess: exchange pattern is not outCapable");
-		}
-
 		// get the Camel in message (not payload) for this request
-		Message inMsg = exchange.getIn();
-		if (inMsg == null) {
-			throw new Exception(getBeanName()
-					+ ":camelProcess: unable to get in message from exchange");
+		Message inMsg = getInMessage(exchange);
+
+		// load the file named by the payload
+		if (isBulkLoad()) {
+			setOutBody(exchange, inMsg, bulkLoad(inMsg));
+			copyHeaders(exchange, inMsg);
+			return;
 		}
 
-		// check to see if the exchange is transacted; if so, we'll
-		// make the call to the server within the context of a
-		// transaction
-		// TODO: needs work
-		if (exchange.isTransacted()) {
-			LOG.trace(getBeanName() + ":camelProcess: exchange is transacted");
+		// stream the payload's objects straight into their statement
+		if (isStreamingIngest() && inMsg.getBody() instanceof InputStream) {
+			setOutBody(exchange, inMsg,
+					ingest((InputStream) inMsg.getBody(), inMsg));
+			copyHeaders(exchange, inMsg);
+			return;
 		}
 
 		// get the payload (if any) and transform it
-		List<Map<Object, Object>> listMap = null;
-		Object payLoad = inMsg.getBody();
-
-		if (payLoad != null) {
-			// if payload is a stream or string, then it must be in the form of
-			// a JSON object, which then needs to be transformed into a Map or
-			// List of Maps
-			if (payLoad instanceof InputStream) {
-				LOG.trace(getBeanName()
-						+ ":camelProcess: received body as InputStream");
-				payLoad = Utils.parseJsonObject(
-						Utils.getStringFromInputStream((InputStream) payLoad),
-						Object.class);
-			} else if (payLoad instanceof String) {
-				LOG.trace(getBeanName()
-						+ ":camelProcess: received body as String");
-				payLoad = Utils.parseJsonObject((String) payLoad, Object.class);
-			}
-
-			// the payload (in its final form) must be in the form of either a
-			// List of Maps or a Map
-			if (payLoad instanceof List) {
-				if (((List) payLoad).get(0) instanceof Map) {
-					LOG.trace(getBeanName()
-							+ ":camelProcess: received payload as "
-							+ "List with size = {}", ((List) payLoad).size());
-				} else {
-					throw new Exception(getBeanName()
-							+ ":camelProcess: received payload as List, but "
-							+ "List elements are not of type Map");
-				}
-				// ensure all values in key-value pairs are Strings
-				// payLoad = Utils.objToString((Object) payLoad);
-				listMap = (List) payLoad;
-			} else if (payLoad instanceof Map) {
-				LOG.trace(getBeanName()
-						+ ":camelProcess: received payload as Map with "
-						+ "size = {}", ((Map) payLoad).size());
-				// ensure all values in key-value pairs are Strings
-				// payLoad = Utils.objToString((Object) payLoad);
-				listMap = new ArrayList<Map<Object, Object>>();
-				listMap.add((Map) payLoad);
-			} else {
-				throw new Exception(getBeanName()
-						+ ":camelProcess: received payload as neither a "
-						+ "List nor Map");
-			}
-			// ensure that all the Maps in the given list have the same set of
-			// keys. Potential quadratic running time ( O(n^2) ), but the number
-			// of keys in a Map is not expected to be that large
-			if (listMap.size() > 1) {
-				for (int i = 0; i < listMap.size(); i++) {
-					Set set1 = listMap.get(i).keySet();
-					for (int j = i + 1; j < listMap.size(); j++) {
-						if (!listMap.get(j).keySet().equals(set1)) {
-							throw new Exception(getBeanName()
-									+ ":camelProcess:ERROR, all Maps in the "
-									+ "provided List of Maps do not have the "
-									+ "same key set!");
-						}
-
-					}
-				}
-			}
-		} else {
-			LOG.trace(getBeanName() + ":camelProcess: payload was not provided");
-		}
+		List<Map<Object, Object>> listMap = getListMap(inMsg);
 
-		// execute the Map(s) and hoist the returned List of Maps up into the
-		// Exchange's out message
-		exchange.getOut().setBody(execute(listMap, inMsg));
+		// execute the Map(s) and hoist the returned List of Maps (or
+		// Iterator) up into the Exchange's out message
+		setOutBody(exchange, inMsg, getOutBody(listMap, inMsg));
 		// if requested to do so, save the current paging state
-		if (inMsg.getHeader(CASSANDRA_PAGING_STATE) != null) {
-			exchange.getOut().setHeader(CASSANDRA_PAGING_STATE,
-					inMsg.getHeader(CASSANDRA_PAGING_STATE));
-		}
+		copyHeaders(exchange, inMsg);
 	}
 
 	/**
-	 * Execute the given list of Maps. Each Map is matched up against one of the
-	 * CQL statements assigned to this Cassandra Client.
+	 * Execute the given list of Maps and return the result in the format
+	 * requested for this client.
 	 * 
 	 * @param listMap
-	 * @param method
+	 * @param inMsg
 	 * @return
 	 * @throws Exception
 	 */
-	public List<Map<String, Object>> execute(List<Map<Object, Object>> listMap,
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private Object getOutBody(List<Map<Object, Object>> listMap,
 			Message inMsg) throws Exception {
-
-		// see if request method is in the message
-		Method method = null;
-		String inMethod = (String) inMsg.getHeader(CASSANDRA_METHOD);
-		if (inMethod == null || inMethod.isEmpty()) {
-			LOG.debug(getBeanName() + ":execute - method was not provided");
-			method = getDefaultMethod();
-			if (method == null) {
-				throw new Exception(getBeanName()
-						+ ":execute - method was not provided and there "
-						+ "is no default set for this client");
-			} else {
-				LOG.debug(getBeanName()
-						+ ":execute - using this default method {}", method);
-			}
-		} else {
-			inMethod = inMethod.trim();
-			try {
-				method = Method.valueOf(inMethod.toUpperCase());
-				LOG.debug(getBeanName()
-						+ ":execute - using this passed in method {}", inMethod);
-			} catch (IllegalArgumentException e) {
-				throw new Exception(getBeanName()
-						+ ":execute: This method is not allowed [" + method
-						+ "]");
-			}
+		List<Map<Object, Object>> myListMap = copyListMap(listMap);
+		CqlStmnt cqlStmnt = getCqlStmnt(myListMap, inMsg);
+		if (cqlStmnt.isScan()) {
+			return getScanIterator(cqlStmnt, (Map) myListMap.get(0));
+		} else if (isStreaming(cqlStmnt)) {
+			// the statement cannot come from the pool, because the
+			// iterator may need it for fetching the next page
+			return getStreamingBody(cqlStmnt, executeLimited(cqlStmnt,
+					(Map) myListMap.get(0), inMsg, getSession(), false), inMsg);
 		}
+		return execute(cqlStmnt, myListMap, inMsg);
+	}
 
-		// based on the given method, attempt to find a set of candidate CQL
-		// statements
-		List<CqlStmnt> cqlStmnts = getCqlStmnts(method);
-		if (cqlStmnts == null || cqlStmnts.isEmpty()) {
-			throw new Exception(getBeanName() + ":execute - could not acquire "
-					+ "CQL statements for this method:" + method.toString());
-		}
+	/**
+	 * Returns an Iterator over a parallel, token range, scan of the given
+	 * statement's table. The scan always streams its rows back, regardless of
+	 * this client's result format.
+	 */
+	private CqlScanIterator getScanIterator(CqlStmnt cqlStmnt,
+			Map<String, Object> params) throws Exception {
+		LOG.debug(getBeanName() + ":execute: scanning via statement {}",
+				cqlStmnt.getBeanName());
+		return new CqlScanIterator(cqlStmnt, params, getSession(),
+				getScanExecutor(), getFetchSize(cqlStmnt));
+	}
 
-		// if no list of maps was passed in, then dummy one up
-		List<Map<Object, Object>> myListMap = new ArrayList<Map<Object, Object>>();
-		if (listMap == null) {
-			LOG.debug(getBeanName() + ":execute - listMap was not provided");
-			myListMap.add(new HashMap<Object, Object>());
-		} else {
-			// create a copy of the given list.
-			for (Map<Object, Object> map : listMap) {
-				myListMap.add(new HashMap<Object, Object>(map));
-			}
+	/**
+	 * Returns the bounded executor used for scanning token ranges. The
+	 * executor is created on first use.
+	 */
+	private synchronized ExecutorService getScanExecutor() {
+		if (scanExecutor == null) {
+			final AtomicInteger threadCount = new AtomicInteger();
+			scanExecutor = Executors.newFixedThreadPool(getScanThreads(),
+					new ThreadFactory() {
+						public Thread newThread(Runnable r) {
+							Thread thread = new Thread(r, getBeanName()
+									+ "-scan-" + threadCount.incrementAndGet());
+							thread.setDaemon(true);
+							return thread;
+						}
+					});
 		}
+		return scanExecutor;
+	}
 
-		LOG.debug(getBeanName() + ":execute - executing this many maps {}",
-				myListMap.size());
-
-		// Get the CQL statement that matches the given map(s)
-		CqlStmnt cqlStmnt = CqlStmnt.getMatch(cqlStmnts,
-				((Map) myListMap.get(0)).keySet());
+	/**
+	 * Returns true if the given CQL statement's results are to be streamed
+	 * back via an Iterator or JSON stream
+	 */
+	private boolean isStreaming(CqlStmnt cqlStmnt) {
+		ResultFormat format = getResultFormat();
+		return (format == ResultFormat.ITERATOR || format == ResultFormat.JSON)
+				&& cqlStmnt.isSelect();
+	}
 
-		if (cqlStmnt == null) {
-			throw new Exception(getBeanName()
-					+ ":execute: this key set could not "
-					+ "be mapped to a CQL statement: ["
-					+ myListMap.get(0).keySet().toString() + "]");
+	/**
+	 * Returns an Iterator, or JSON stream, over the given result set, or null
+	 * if there is no result set. If the statement is using the paging state,
+	 * then the Iterator or stream does not go beyond the current page.
+	 */
+	private Object getStreamingBody(CqlStmnt cqlStmnt, ResultSet resultSet,
+			Message inMsg) throws Exception {
+		if (resultSet == null) {
+			return null;
+		} else if (getResultFormat() == ResultFormat.JSON) {
+			return new CqlJsonStream(resultSet, !cqlStmnt.isPagingState(),
+					cqlStmnt.isJsonSelect(), cqlStmnt.getPrefetchThreshold(),
+					getCodec(inMsg));
 		}
+		return new CqlResultIterator(resultSet, !cqlStmnt.isPagingState(),
+				cqlStmnt.getPrefetchThreshold(),
+				cqlStmnt.getRowDecoder(resultSet.getColumnDefinitions()));
+	}
 
-		// only one map is allowed for SELECT statements
-		if (cqlStmnt.isSelect() && myListMap.size() > 1) {
-			throw new Exception(getBeanName()
-					+ ":execute: received more than one input "
-					+ "Map for a SELECT statement, this is not allowed");
-		}
+	/**
+	 * This is the method that is called by the CassandraProducer when this
+	 * client is in async mode. The CQL statement(s) are handed off to the
+	 * driver via executeAsync and the exchange is completed, through the
+	 * given callback, when all the statements have completed. The given
+	 * executor is used for running the completion; this keeps the driver's
+	 * I/O threads from having to process the remainder of the route.
+	 * 
+	 * Returns true if the exchange was completed synchronously, else false.
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	public boolean process(final Exchange exchange,
+			final AsyncCallback callback, Executor executor) {
 
-		// determine the page size
-		int fetchSize = (cqlStmnt.getFetchSize() >= 0) ? cqlStmnt
-				.getFetchSize() : getSession().getCluster().getConfiguration()
-				.getQueryOptions().getFetchSize();
+		LOG.trace(getBeanName()
+				+ ":camelProcess - **** processing new async request ****");
+
+		final List<ResultSetFuture> futures;
+		final Message inMsg;
+		final int fetchSize;
+		final CqlStmnt cqlStmnt;
+		final List<Map<Object, Object>> myListMap;
+		final boolean cached;
+		final long cacheGeneration;
+		final String coalesceKey;
+		final SettableFuture<List<Map<String, Object>>> flight;
+		final Session mySession;
 
-		// iterate through the given Maps (if any) and execute their
-		// corresponding cql statement(s)
 		try {
-			List<ResultSet> resultSets = new ArrayList<ResultSet>();
-			for (Map map : myListMap) {
-				ResultSet resultSet = cqlStmnt
-						.execute(map, inMsg, getSession());
-				if (resultSet != null) {
-					resultSets.add(resultSet);
-				}
-			} // for (Map map : listMap)
+			// get the Camel in message (not payload) for this request
+			inMsg = getInMessage(exchange);
+
+			// a bulk load bounds its own concurrency, but may run for a long
+			// time, so it is handed to the executor and the exchange is
+			// completed from there
+			if (isBulkLoad()) {
+				executor.execute(new Runnable() {
+					public void run() {
+						try {
+							setOutBody(exchange, inMsg, bulkLoad(inMsg));
+							copyHeaders(exchange, inMsg);
+						} catch (Exception exc) {
+							exchange.setException(exc);
+						} finally {
+							callback.done(false);
+						}
+					}
+				});
+				return false;
+			}
+			// a streaming ingest also bounds its own concurrency, but blocks
+			// on it, so it too is handed to the executor
+			if (isStreamingIngest() && inMsg.getBody() instanceof InputStream) {
+				executor.execute(new Runnable() {
+					public void run() {
+						try {
+							setOutBody(exchange, inMsg, ingest(
+									(InputStream) inMsg.getBody(), inMsg));
+							copyHeaders(exchange, inMsg);
+						} catch (Exception exc) {
+							exchange.setException(exc);
+						} finally {
+							callback.done(false);
+						}
+					}
+				});
+				return false;
+			}
 
-			if (LOG.isDebugEnabled()) {
-				LOG.debug(getBeanName()
-						+ ":execute: successfully executed statement(s)");
-				LOG.debug(getBeanName()
-						+ ":execute: received this many result sets {}",
-						resultSets.size());
-				LOG.debug(getBeanName() + ":execute: using this fetchSize {}",
-						fetchSize);
+			// get the payload (if any) and transform it
+			myListMap = copyListMap(getListMap(inMsg));
+
+			// Get the CQL statement that matches the given map(s)
+			cqlStmnt = getCqlStmnt(myListMap, inMsg);
+
+			// determine the page size
+			fetchSize = getFetchSize(cqlStmnt);
+
+			// a scan runs on its own executor, so it is handed back right
+			// away
+			if (cqlStmnt.isScan()) {
+				setOutBody(exchange, inMsg,
+						getScanIterator(cqlStmnt, (Map) myListMap.get(0)));
+				copyHeaders(exchange, inMsg);
+				callback.done(true);
+				return true;
 			}
 
-			// if no result sets were returned, then we're done!
-			if (resultSets.isEmpty()) {
-				return null;
+			// the write may be left to the write-behind buffer or the
+			// counter aggregator
+			if (isWriteBehind(cqlStmnt) || isAggregated(cqlStmnt)) {
+				setOutBody(exchange, inMsg,
+						execute(cqlStmnt, myListMap, inMsg));
+				copyHeaders(exchange, inMsg);
+				callback.done(true);
+				return true;
 			}
 
-			List<Map<String, Object>> listOutMaps = new ArrayList<Map<String, Object>>();
-
-			// iterate through the returned result sets
-			for (ResultSet resultSet : resultSets) {
-				Row row = null;
-				// grab the metadata for the result set
-				ColumnDefinitions cDefs = resultSet.getColumnDefinitions();
-				// transfer each row of the result set to a Map and place all
-				// the maps in a List
-				int rowCount = 0;
-				while ((row = resultSet.one()) != null && rowCount < fetchSize) {
-					Map<String, Object> map = new HashMap<String, Object>();
-					for (Definition cDef : cDefs.asList()) {
-						map.put(cDef.getName(), CqlToken.getObjectFromRow(row,
-								cDef.getName(), cDef.getType().getName()));
-					}
-					listOutMaps.add(map);
-					rowCount++;
+			// the same session is used throughout this request; in
+			// particular, to both register and complete its flight
+			mySession = getSession();
+
+			// a lone SELECT may be answered from the statement's result
+			// cache
+			cached = cqlStmnt.isCached() && !isStreaming(cqlStmnt)
+					&& myListMap.size() == 1;
+			if (cached) {
+				List<Map<String, Object>> rows = cqlStmnt.getCached(
+						mySession, (Map) myListMap.get(0));
+				if (rows != null) {
+					setOutBody(exchange, inMsg, rows);
+					copyHeaders(exchange, inMsg);
+					callback.done(true);
+					return true;
+				}
+			}
+
+			// join the identical request's query, if there is one, else
+			// register this request's query
+			coalesceKey = (cqlStmnt.isCoalescing() && !isStreaming(cqlStmnt)
+					&& myListMap.size() == 1) ? cqlStmnt.getCoalesceKey(
+					(Map) myListMap.get(0), inMsg) : null;
+			flight = (coalesceKey == null) ? null : SettableFuture
+					.<List<Map<String, Object>>> create();
+			if (flight != null) {
+				ListenableFuture<List<Map<String, Object>>> inFlight = cqlStmnt
+						.joinInFlight(mySession, coalesceKey, flight);
+				if (inFlight != null) {
+					Futures.addCallback(inFlight,
+							new FutureCallback<List<Map<String, Object>>>() {
+								public void onSuccess(
+										List<Map<String, Object>> rows) {
+									try {
+										setOutBody(exchange, inMsg,
+												copyRows(rows));
+										copyHeaders(exchange, inMsg);
+									} catch (Exception exc) {
+										exchange.setException(exc);
+									} finally {
+										callback.done(false);
+									}
+								}
+
+								public void onFailure(Throwable t) {
+									exchange.setException(t);
+									callback.done(false);
+								}
+							}, executor);
+					return false;
 				}
 			}
-			// return the List of Maps up into the Exchange's out message
-			LOG.debug(getBeanName()
-					+ ":camelProcess: sending back this many Maps {}",
-					listOutMaps.size());
 
-			return listOutMaps;
+			cacheGeneration = cached ? cqlStmnt
+					.getCacheGeneration(mySession) : 0L;
+
+			// fire off the statement(s)
+			try {
+				if (isStreaming(cqlStmnt)) {
+					futures = new ArrayList<ResultSetFuture>();
+					final Map<String, Object> params = (Map) myListMap.get(0);
+					futures.add(dispatch(null, true, new Sender() {
+						public ResultSetFuture send() {
+							return cqlStmnt.executeAsync(params, inMsg,
+									mySession, false, hedgeSender);
+						}
+					}));
+				} else {
+					futures = executeAsync(cqlStmnt, myListMap, inMsg,
+							mySession, true);
+				}
+			} catch (Throwable t) {
+				completeInFlight(cqlStmnt, mySession, coalesceKey, flight, null,
+						t);
+				throw t;
+			}
 
 		} catch (Exception exc) {
 			LOG.error(getBeanName() + ":ERROR, caught this "
 					+ "Exception while executing CQL statement " + "message: "
 					+ exc.toString());
-			LOG.error(getBeanName() + ": exception stack trace follows:");
-			exc.printStackTrace();
-			dumpStackTrace(exc.getStackTrace());
-			if (exc.getCause() != null) {
-				LOG.error(getBeanName() + ": Caused by "
-						+ exc.getCause().toString());
-				LOG.error(getBeanName()
-						+ ": causing exception stack trace follows:");
-				dumpStackTrace(exc.getCause().getStackTrace());
-			}
-			// throw the exception back
-			throw exc;
+			exchange.setException(exc);
+			callback.done(true);
+			return true;
 		}
+
+		// wait for all the statements to complete, whether they succeed or
+		// fail. the futures of those that could not be fired off are null
+		List<ResultSetFuture> fired = new ArrayList<ResultSetFuture>();
+		for (ResultSetFuture future : futures) {
+			if (future != null) {
+				fired.add(future);
+			}
+		}
+
+		// if no statements were fired off, then we're done!
+		if (fired.isEmpty()) {
+			invalidateCached(cqlStmnt, myListMap);
+			completeInFlight(cqlStmnt, mySession, coalesceKey, flight, null,
+					null);
+			exchange.getOut().setBody(null);
+			copyHeaders(exchange, inMsg);
+			callback.done(true);
+			return true;
+		}
+
+		Futures.addCallback(Futures.successfulAsList(fired),
+				new FutureCallback<List<ResultSet>>() {
+					public void onSuccess(List<ResultSet> ignore) {
+						// a write, whether or not it succeeded, may have
+						// made cached results stale
+						invalidateCached(cqlStmnt, myListMap);
+						List<Map<String, Object>> shared = null;
+						Throwable failure = null;
+						try {
+							Map<Integer, String> failures = new TreeMap<Integer, String>();
+							List<ResultSet> resultSets = getResultSets(futures,
+									failures);
+							// a lone statement that fails, fails the
+							// exchange
+							if (futures.size() == 1 && !failures.isEmpty()) {
+								throw new Exception(getBeanName()
+										+ ":execute: "
+										+ failures.values().iterator().next());
+							}
+							setFailures(failures, inMsg);
+							if (isStreaming(cqlStmnt)) {
+								setOutBody(exchange, inMsg,
+										getStreamingBody(cqlStmnt,
+												resultSets.get(0), inMsg));
+							} else {
+								List<Map<String, Object>> listOutMaps = getListOutMaps(
+										cqlStmnt, resultSets, fetchSize);
+								if (cached && listOutMaps != null) {
+									cqlStmnt.putCached(mySession,
+											(Map) myListMap.get(0),
+											listOutMaps, cacheGeneration);
+								}
+								// the requests that joined this one get
+								// their own copies, so this one does too
+								if (flight != null) {
+									shared = listOutMaps;
+									listOutMaps = copyRows(listOutMaps);
+								}
+								setOutBody(exchange, inMsg, listOutMaps);
+							}
+							copyHeaders(exchange, inMsg);
+						} catch (Exception exc) {
+							LOG.error(getBeanName() + ":ERROR, caught this "
+									+ "Exception while processing result "
+									+ "sets: " + exc.toString());
+							failure = exc;
+							exchange.setException(exc);
+						} catch (Error err) {
+							failure = err;
+							throw err;
+						} finally {
+							// the flight must not be left registered
+							completeInFlight(cqlStmnt, mySession, coalesceKey,
+									flight, shared, (shared != null) ? null
+											: failure);
+							callback.done(false);
+						}
+					}
+
+					// successfulAsList does not fail on the failure of
+					// its inputs
+					public void onFailure(Throwable t) {
+						LOG.error(getBeanName() + ":ERROR, caught this "
+								+ "Exception while executing CQL statement "
+								+ "message: " + t.toString());
+						invalidateCached(cqlStmnt, myListMap);
+						completeInFlight(cqlStmnt, mySession, coalesceKey,
+								flight, null, t);
+						exchange.setException(t);
+						callback.done(false);
+					}
+				}, executor);
+
+		return false;
+	}
+
+	/**
+	 * Fire off the given CQL statement, asynchronously, for each of the given
+	 * Maps. If this client has a maxInFlight limit, then, while the number of
+	 * this client's in-flight statements is at that limit, the calling thread
+	 * is either blocked or, if defer is true, the statement is deferred until
+	 * an in-flight statement completes. Likewise, a statement that this
+	 * client's concurrency limiter does not admit right away waits, or is
+	 * deferred, rather than being rejected; the Maps are all part of one
+	 * request, which is already under way. The returned list of futures
+	 * is in the same order as the given list of Maps; a null future is
+	 * returned for a Map that could not be bound to the statement.
+	 * 
+	 * @param cqlStmnt
+	 * @param myListMap
+	 * @param inMsg
+	 * @param session
+	 * @param defer
+	 * @return
+	 * @throws InterruptedException
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private List<ResultSetFuture> executeAsync(final CqlStmnt cqlStmnt,
+			List<Map<Object, Object>> myListMap, final Message inMsg,
+			final Session session, boolean defer) throws InterruptedException {
+
+		// see if the Maps can be grouped into batches
+		if (isBatchByPartition() && myListMap.size() > 1
+				&& isBatchable(cqlStmnt)) {
+			return executeBatchAsync(cqlStmnt, myListMap, inMsg, session,
+					defer);
+		}
+
+		List<ResultSetFuture> futures = new ArrayList<ResultSetFuture>();
+		Semaphore permits = getInFlightPermits();
+
+		for (final Map map : myListMap) {
+			futures.add(dispatch(permits, defer, new Sender() {
+				public ResultSetFuture send() {
+					return cqlStmnt.executeAsync(map, inMsg, session, true,
+							hedgeSender);
+				}
+			}));
+		}
+		return futures;
+	}
+
+	/**
+	 * Bind each of the given Maps to the given prepared statement, group the
+	 * resulting bound statements by their routing (partition) key, and then
+	 * send each group as an UNLOGGED (or, for counter updates, COUNTER) batch.
+	 * A group is split into multiple batches, so as not to exceed
+	 * maxBatchStatements or maxBatchBytes. Like executeAsync, the returned
+	 * list of futures is in the same order as the given list of Maps, where
+	 * each Map is given the future of the batch that it belongs to.
+	 * 
+	 * @param cqlStmnt
+	 * @param myListMap
+	 * @param inMsg
+	 * @param session
+	 * @param defer
+	 * @return
+	 * @throws InterruptedException
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private List<ResultSetFuture> executeBatchAsync(CqlStmnt cqlStmnt,
+			List<Map<Object, Object>> myListMap, Message inMsg,
+			Session session, boolean defer) throws InterruptedException {
+
+		ProtocolVersion protocolVersion = session.getCluster()
+				.getConfiguration().getProtocolOptions().getProtocolVersion();
+		CodecRegistry codecRegistry = session.getCluster().getConfiguration()
+				.getCodecRegistry();
+
+		// bind the Maps and group their statements by routing key. a
+		// statement without a routing key is placed in a group of its own
+		List<Statement> stmnts = new ArrayList<Statement>();
+		Map<Object, List<Integer>> groups = new LinkedHashMap<Object, List<Integer>>();
+		for (int i = 0; i < myListMap.size(); i++) {
+			Statement stmnt = cqlStmnt.getStatement((Map) myListMap.get(i),
+					inMsg, session, true);
+			stmnts.add(stmnt);
+			if (stmnt == null) {
+				continue;
+			}
+			Object key = stmnt.getRoutingKey(protocolVersion, codecRegistry);
+			if (key == null) {
+				key = new Object();
+			}
+			List<Integer> group = groups.get(key);
+			if (group == null) {
+				group = new ArrayList<Integer>();
+				groups.put(key, group);
+			}
+			group.add(i);
+		}
+
+		LOG.debug(getBeanName() + ":executeBatchAsync: {} maps grouped into "
+				+ "{} partitions", myListMap.size(), groups.size());
+
+		ResultSetFuture[] futures = new ResultSetFuture[myListMap.size()];
+		for (List<Integer> group : groups.values()) {
+			List<Integer> chunk = new ArrayList<Integer>();
+			int chunkBytes = 0;
+			for (Integer i : group) {
+				int size = getSize(stmnts.get(i));
+				if (!chunk.isEmpty()
+						&& (chunk.size() >= getMaxBatchStatements() || chunkBytes
+								+ size > getMaxBatchBytes())) {
+					executeBatchAsync(cqlStmnt, stmnts, chunk, session,
+							futures, defer);
+					chunk = new ArrayList<Integer>();
+					chunkBytes = 0;
+				}
+				chunk.add(i);
+				chunkBytes += size;
+			}
+			executeBatchAsync(cqlStmnt, stmnts, chunk, session, futures,
+					defer);
+		}
+		return Arrays.asList(futures);
+	}
+
+	/**
+	 * Returns true if the given statement's bound statements may be grouped
+	 * into batches. A conditional write is not, as each of its writes must
+	 * be applied, or not, on its own.
+	 */
+	private boolean isBatchable(CqlStmnt cqlStmnt) {
+		return cqlStmnt.isPrepared() && !cqlStmnt.isSelect()
+				&& !cqlStmnt.isConditional();
+	}
+
+	/**
+	 * Send the given chunk of statements as one UNLOGGED or COUNTER batch. A
+	 * chunk of one is sent as is. The statements are returned to their pool
+	 * when the batch has completed.
+	 */
+	private void executeBatchAsync(final CqlStmnt cqlStmnt,
+			List<Statement> stmnts, List<Integer> chunk, final Session session,
+			ResultSetFuture[] futures, boolean defer)
+			throws InterruptedException {
+
+		final List<Statement> batched = new ArrayList<Statement>();
+		for (Integer i : chunk) {
+			batched.add(stmnts.get(i));
+		}
+		Statement first = batched.get(0);
+		Statement toExecute = first;
+		if (batched.size() > 1) {
+			// counter updates may only be batched with other counter updates
+			BatchStatement batch = new BatchStatement(
+					cqlStmnt.hasCounters() ? BatchStatement.Type.COUNTER
+							: BatchStatement.Type.UNLOGGED);
+			batch.addAll(batched);
+			batch.setConsistencyLevel(first.getConsistencyLevel());
+			batch.setSerialConsistencyLevel(first.getSerialConsistencyLevel());
+			batch.setIdempotent(first.isIdempotent());
+			batch.setDefaultTimestamp(first.getDefaultTimestamp());
+			if (first.getRetryPolicy() != null) {
+				batch.setRetryPolicy(first.getRetryPolicy());
+			}
+			toExecute = batch;
+		}
+
+		final Statement batch = toExecute;
+		ResultSetFuture future = dispatch(getInFlightPermits(), defer,
+				new Sender() {
+					public ResultSetFuture send() {
+						ResultSetFuture future = null;
+						try {
+							future = session.executeAsync(batch);
+						} finally {
+							returnOnCompletion(future);
+						}
+						return future;
+					}
+
+					// the statements cannot be returned to their pool until
+					// the driver is done with them
+					private void returnOnCompletion(ResultSetFuture future) {
+						if (future == null) {
+							returnStatements();
+							return;
+						}
+						Futures.addCallback(future,
+								new FutureCallback<ResultSet>() {
+									public void onSuccess(ResultSet rs) {
+										returnStatements();
+									}
+
+									public void onFailure(Throwable t) {
+										LOG.error(getBeanName()
+												+ ":executeBatchAsync: batch "
+												+ "of {} failed with this "
+												+ "exception {}",
+												batched.size(), t.toString());
+										returnStatements();
+									}
+								});
+					}
+
+					private void returnStatements() {
+						for (Statement stmnt : batched) {
+							cqlStmnt.returnStatement(session, stmnt);
+						}
+					}
+				});
+
+		for (Integer i : chunk) {
+			futures[i] = future;
+		}
+	}
+
+	/**
+	 * Returns the approximate size, in bytes, that the given statement adds to
+	 * a batch: its bound values plus, for each value, its column's name and
+	 * cell overhead, plus a fixed per-statement overhead.
+	 */
+	private int getSize(Statement stmnt) {
+		int size = BATCH_STMNT_OVERHEAD;
+		if (stmnt instanceof BoundStatement) {
+			BoundStatement bs = (BoundStatement) stmnt;
+			ColumnDefinitions variables = bs.preparedStatement()
+					.getVariables();
+			int count = variables.size();
+			for (int i = 0; i < count; i++) {
+				size += BATCH_VALUE_OVERHEAD + variables.getName(i).length();
+				ByteBuffer value = bs.getBytesUnsafe(i);
+				if (value != null) {
+					size += value.remaining();
+				}
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Sends one statement, or batch, on behalf of dispatch()
+	 */
+	private interface Sender {
+		ResultSetFuture send();
+	}
+
+	/**
+	 * Sends the given sender's statement once it has been given one of the
+	 * given in-flight permits, if any, and has been admitted by this client's
+	 * concurrency limiter, if any. If defer is true, then the calling thread
+	 * is never blocked; a statement that cannot be sent right away is
+	 * deferred and sent, in turn, when a statement completes; unless
+	 * maxDeferred statements are already deferred, in which case the
+	 * returned future fails with a RejectedExecutionException. Otherwise, the
+	 * calling thread waits for a permit and to be admitted.
+	 */
+	private ResultSetFuture dispatch(Semaphore permits, boolean defer,
+			Sender sender) throws InterruptedException {
+		if (defer) {
+			if (deferred.isEmpty() && tryAdmit(permits)) {
+				return send(permits, sender);
+			}
+			DeferredFuture future = new DeferredFuture(permits, sender);
+			// the queue is bounded, so that an overload is pushed back on
+			// the route rather than being moved onto the heap
+			if (deferredCount.incrementAndGet() > getMaxDeferred()) {
+				deferredCount.decrementAndGet();
+				deferredRejections.incrementAndGet();
+				future.fail(new RejectedExecutionException(getBeanName()
+						+ ": statement rejected, " + getMaxDeferred()
+						+ " statements are already deferred"));
+				return future;
+			}
+			deferred.add(future);
+			// a statement may have completed before this one was deferred
+			sendDeferred();
+			return future;
+		}
+		if (permits != null) {
+			permits.acquire();
+		}
+		boolean admitted = false;
+		try {
+			if (concurrencyLimiter != null) {
+				concurrencyLimiter.acquire(true);
+			}
+			admitted = true;
+		} finally {
+			if (!admitted && permits != null) {
+				permits.release();
+			}
+		}
+		return send(permits, sender);
+	}
+
+	/**
+	 * Takes one of the given permits and is admitted by the concurrency
+	 * limiter, without waiting for either; else takes neither.
+	 */
+	private boolean tryAdmit(Semaphore permits) {
+		if (permits != null && !permits.tryAcquire()) {
+			return false;
+		}
+		if (concurrencyLimiter != null && !concurrencyLimiter.tryAcquire()) {
+			if (permits != null) {
+				permits.release();
+			}
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Sends an admitted statement. Its permit is released, and the limiter
+	 * is given its round trip time, when it completes.
+	 */
+	private ResultSetFuture send(Semaphore permits, Sender sender) {
+		long start = System.nanoTime();
+		ResultSetFuture future = null;
+		try {
+			future = sender.send();
+		} finally {
+			if (concurrencyLimiter != null) {
+				concurrencyLimiter.releaseOnCompletion(future, start);
+			}
+			releaseOnCompletion(future, permits);
+		}
+		return future;
+	}
+
+	/**
+	 * Sends the hedges of this client's hedged reads. A hedge is an extra
+	 * read, so it must take an in-flight permit and be admitted by the
+	 * concurrency limiter like any other statement; but as it is optional,
+	 * it is not sent at all if it cannot be sent right away, nor while
+	 * statements are deferred.
+	 */
+	private final CqlHedger.HedgeSender hedgeSender = new CqlHedger.HedgeSender() {
+		public ResultSetFuture trySend(final Session session,
+				final Statement stmnt) {
+			Semaphore permits = getInFlightPermits();
+			if (!deferred.isEmpty() || !tryAdmit(permits)) {
+				return null;
+			}
+			return send(permits, new Sender() {
+				public ResultSetFuture send() {
+					return session.executeAsync(stmnt);
+				}
+			});
+		}
+	};
+
+	/**
+	 * Sends, in order, as many of the deferred statements as can now be
+	 * admitted. This is called when a statement completes, which is most
+	 * often on one of the driver's I/O threads; binding a statement may
+	 * block on preparing it, so the statements are sent on the defer
+	 * executor instead. Only one pass at a time is run; a caller that finds
+	 * one running leaves it to that pass to take another.
+	 */
+	private void sendDeferred() {
+		if (deferred.isEmpty() || deferring.getAndIncrement() != 0) {
+			return;
+		}
+		try {
+			getDeferExecutor().execute(deferredSender);
+		} catch (RejectedExecutionException exc) {
+			// the client is being destroyed
+			deferring.set(0);
+			failDeferred(exc);
+		}
+	}
+
+	private final Runnable deferredSender = new Runnable() {
+		public void run() {
+			int missed = 1;
+			do {
+				DeferredFuture next;
+				while ((next = deferred.peek()) != null) {
+					// the queue is in the order of deferral, so the
+					// statements that have waited too long are at its head
+					if (next.isExpired()) {
+						pollDeferred();
+						deferredRejections.incrementAndGet();
+						next.fail(new RejectedExecutionException(
+								getBeanName() + ": statement rejected, it "
+										+ "was not admitted within "
+										+ getConcurrencyQueueTimeout()
+										+ " milliseconds"));
+					} else if (tryAdmit(next.permits)) {
+						pollDeferred();
+						next.send();
+					} else {
+						break;
+					}
+				}
+				missed = deferring.addAndGet(-missed);
+			} while (missed != 0);
+		}
+	};
+
+	/**
+	 * Fails all of the deferred statements with the given exception
+	 */
+	private void failDeferred(Throwable t) {
+		DeferredFuture next;
+		while ((next = pollDeferred()) != null) {
+			next.fail(t);
+		}
+	}
+
+	private DeferredFuture pollDeferred() {
+		DeferredFuture next = deferred.poll();
+		if (next != null) {
+			deferredCount.decrementAndGet();
+		}
+		return next;
+	}
+
+	/**
+	 * Returns the single-threaded executor on which the deferred statements
+	 * are sent. The executor is created on first use.
+	 */
+	private synchronized ExecutorService getDeferExecutor() {
+		if (deferExecutor == null) {
+			deferExecutor = Executors
+					.newSingleThreadExecutor(new ThreadFactory() {
+						public Thread newThread(Runnable r) {
+							Thread thread = new Thread(r, getBeanName()
+									+ "-deferred");
+							thread.setDaemon(true);
+							return thread;
+						}
+					});
+		}
+		return deferExecutor;
+	}
+
+	/**
+	 * The future of a statement that has been deferred. It completes as the
+	 * statement's own future completes, once the statement has been sent.
+	 */
+	private final class DeferredFuture extends CqlResultSetFuture {
+
+		private final Semaphore permits;
+		private final Sender sender;
+		private final long deferredAt = System.currentTimeMillis();
+		private volatile ResultSetFuture sent;
+
+		private DeferredFuture(Semaphore permits, Sender sender) {
+			this.permits = permits;
+			this.sender = sender;
+		}
+
+		// called if this statement is not to be sent
+		private void fail(Throwable t) {
+			setException(t);
+		}
+
+		// whether this statement has waited longer than the queue timeout
+		private boolean isExpired() {
+			long timeout = getConcurrencyQueueTimeout();
+			return timeout > 0
+					&& System.currentTimeMillis() - deferredAt > timeout;
+		}
+
+		// called once this statement has been admitted
+		private void send() {
+			if (isDone()) {
+				// cancelled while it was deferred, so give back its admission
+				if (concurrencyLimiter != null) {
+					concurrencyLimiter.release(-1L, false);
+				}
+				if (permits != null) {
+					permits.release();
+				}
+				return;
+			}
+			ResultSetFuture future = null;
+			try {
+				future = Client.this.send(permits, sender);
+			} catch (RuntimeException exc) {
+				setException(exc);
+				return;
+			}
+			if (future == null) {
+				setException(new IllegalArgumentException(
+						"unable to bind CQL statement"));
+				return;
+			}
+			sent = future;
+			Futures.addCallback(future, new FutureCallback<ResultSet>() {
+				public void onSuccess(ResultSet resultSet) {
+					set(resultSet);
+				}
+
+				public void onFailure(Throwable t) {
+					setException(t);
+				}
+			});
+			if (isCancelled()) {
+				future.cancel(true);
+			}
+		}
+
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			if (!super.cancel(mayInterruptIfRunning)) {
+				return false;
+			}
+			ResultSetFuture future = sent;
+			if (future != null) {
+				future.cancel(mayInterruptIfRunning);
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Release the given in-flight permit when the given future completes. If
+	 * there is no future, then the permit is released right away. Either way,
+	 * a deferred statement may then be sent.
+	 */
+	private void releaseOnCompletion(ResultSetFuture future,
+			final Semaphore permits) {
+		if (permits == null) {
+			return;
+		}
+		if (future == null) {
+			permits.release();
+			sendDeferred();
+			return;
+		}
+		Futures.addCallback(future, new FutureCallback<ResultSet>() {
+			public void onSuccess(ResultSet rs) {
+				permits.release();
+				sendDeferred();
+			}
+
+			public void onFailure(Throwable t) {
+				permits.release();
+				sendDeferred();
+			}
+		});
+	}
+
+	/**
+	 * Executes the given statement for the given params once this client's
+	 * concurrency limiter, if any, has admitted it. The statement's round
+	 * trip time, and whether it was dropped, is fed back to the limiter. As
+	 * with CqlStmnt.execute(), null is returned if the statement fails.
+	 */
+	ResultSet executeLimited(CqlStmnt cqlStmnt, Map<String, Object> params,
+			Message inMsg, Session session, boolean pooled)
+			throws InterruptedException {
+		if (concurrencyLimiter == null) {
+			return cqlStmnt.execute(params, inMsg, session, pooled,
+					hedgeSender);
+		}
+		concurrencyLimiter.acquire(false);
+		long start = System.nanoTime();
+		ResultSet resultSet = null;
+		RuntimeException failure = null;
+		try {
+			resultSet = cqlStmnt.executeOrFail(params, inMsg, session, pooled,
+					hedgeSender);
+		} catch (RuntimeException exc) {
+			LOG.error(getBeanName() + ":executeLimited: caught this "
+					+ "exception {}", exc.toString());
+			failure = exc;
+		} finally {
+			// a statement that could not be bound, or sent, is not sampled
+			long rtt = (resultSet == null && failure == null) ? -1L : System
+					.nanoTime() - start;
+			concurrencyLimiter.release(rtt, failure != null
+					&& CqlConcurrencyLimiter.isDropped(failure));
+		}
+		return resultSet;
+	}
+
+	/**
+	 * The asynchronous counterpart of executeLimited(). If queue is true, then
+	 * a statement that is not admitted right away waits to be admitted.
+	 */
+	ResultSetFuture executeLimitedAsync(CqlStmnt cqlStmnt,
+			Map<String, Object> params, Message inMsg, Session session,
+			boolean pooled, boolean queue) throws InterruptedException {
+		if (concurrencyLimiter == null) {
+			return cqlStmnt.executeAsync(params, inMsg, session, pooled,
+					hedgeSender);
+		}
+		concurrencyLimiter.acquire(queue);
+		long start = System.nanoTime();
+		ResultSetFuture future = null;
+		try {
+			future = cqlStmnt.executeAsync(params, inMsg, session, pooled,
+					hedgeSender);
+		} finally {
+			concurrencyLimiter.releaseOnCompletion(future, start);
+		}
+		return future;
+	}
+
+	/**
+	 * Returns, in order, the result sets of the given futures; waiting for
+	 * them to complete if need be. The failure of any one future does not
+	 * prevent the others from being collected. The given failures Map is
+	 * loaded with the index and reason of each failed future.
+	 * 
+	 * @param futures
+	 * @param failures
+	 * @return
+	 */
+	private List<ResultSet> getResultSets(List<ResultSetFuture> futures,
+			Map<Integer, String> failures) {
+		List<ResultSet> resultSets = new ArrayList<ResultSet>();
+		// statements that were batched together share the same future
+		Set<ResultSetFuture> collected = Collections
+				.newSetFromMap(new IdentityHashMap<ResultSetFuture, Boolean>());
+		for (int i = 0; i < futures.size(); i++) {
+			ResultSetFuture future = futures.get(i);
+			if (future == null) {
+				failures.put(i, "unable to bind CQL statement");
+				continue;
+			}
+			try {
+				ResultSet resultSet = future.getUninterruptibly();
+				if (collected.add(future)) {
+					resultSets.add(resultSet);
+				}
+			} catch (Exception exc) {
+				LOG.error(getBeanName() + ":getResultSets: statement {} "
+						+ "failed with this exception {}", i, exc.toString());
+				failures.put(i, exc.toString());
+			}
+		}
+		return resultSets;
+	}
+
+	/**
+	 * Save the given per-Map failures (if any) in the given message
+	 */
+	private void setFailures(Map<Integer, String> failures, Message inMsg) {
+		if (failures.isEmpty()) {
+			inMsg.removeHeader(CASSANDRA_FAILURES);
+		} else {
+			LOG.warn(getBeanName() + ":execute: this many statements failed {}",
+					failures.size());
+			inMsg.setHeader(CASSANDRA_FAILURES, failures);
+		}
+	}
+
+	/**
+	 * Ensure this client is ready and that the given exchange is one that it
+	 * can process; if so, return the exchange's in message.
+	 * 
+	 * @param exchange
+	 * @return
+	 * @throws Exception
+	 */
+	private Message getInMessage(Exchange exchange) throws Exception {
+
+		if (!isRunning()) {
+			LOG.error(getBeanName()
+					+ ":camelProcess: this client has not been initialized");
+			throw new Exception(getBeanName()
+					+ ":camelProcess: this client has not been initialized");
+		}
+
+		// determine the message exchange pattern being requested.
+		// the exchange pattern must be both in and out capable
+		if (!exchange.getPattern().isInCapable()) {
+			throw new Exception(getBeanName()
+					+ ":camelProcess: exchange pattern is not inCapable");
+		} else if (!exchange.getPattern().isOutCapable()) {
+			throw new Exception(getBeanName()
+					+ ":camelProcess: exchange pattern is not outCapable");
+		}
+
+		// get the Camel in message (not payload) for this request
+		Message inMsg = exchange.getIn();
+		if (inMsg == null) {
+			throw new Exception(getBeanName()
+					+ ":camelProcess: unable to get in message from exchange");
+		}
+
+		// check to see if the exchange is transacted; if so, we'll
+		// make the call to the server within the context of a
+		// transaction
+		// TODO: needs work
+		if (exchange.isTransacted()) {
+			LOG.trace(getBeanName() + ":camelProcess: exchange is transacted");
+		}
+
+		return inMsg;
+	}
+
+	/**
+	 * Returns the given message's payload (if any) as a List of Maps. If the
+	 * payload is a stream or string, then it is first parsed as JSON. If a
+	 * binary codec has been selected for the message, then a stream or byte
+	 * array payload is instead parsed with that codec.
+	 * 
+	 * @param inMsg
+	 * @return
+	 * @throws Exception
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private List<Map<Object, Object>> getListMap(Message inMsg)
+			throws Exception {
+
+		List<Map<Object, Object>> listMap = null;
+		Object payLoad = inMsg.getBody();
+
+		CqlCodec codec = getCodec(inMsg);
+		if (payLoad != null && codec != null && codec.isBinary()) {
+			if (payLoad instanceof InputStream) {
+				LOG.trace(getBeanName()
+						+ ":camelProcess: received body as {} InputStream",
+						codec);
+				payLoad = codec.getMapper().readValue((InputStream) payLoad,
+						Object.class);
+			} else if (payLoad instanceof byte[]) {
+				LOG.trace(getBeanName()
+						+ ":camelProcess: received body as {} byte array",
+						codec);
+				payLoad = codec.getMapper().readValue((byte[]) payLoad,
+						Object.class);
+			}
+		}
+
+		if (payLoad != null) {
+			// if payload is a stream or string, then it must be in the form of
+			// a JSON object, which then needs to be transformed into a Map or
+			// List of Maps
+			if (payLoad instanceof InputStream) {
+				LOG.trace(getBeanName()
+						+ ":camelProcess: received body as InputStream");
+				payLoad = Utils.parseJsonObject(
+						Utils.getStringFromInputStream((InputStream) payLoad),
+						Object.class);
+			} else if (payLoad instanceof String) {
+				LOG.trace(getBeanName()
+						+ ":camelProcess: received body as String");
+				payLoad = Utils.parseJsonObject((String) payLoad, Object.class);
+			}
+
+			// the payload (in its final form) must be in the form of either a
+			// List of Maps or a Map
+			if (payLoad instanceof List) {
+				if (((List) payLoad).get(0) instanceof Map) {
+					LOG.trace(getBeanName()
+							+ ":camelProcess: received payload as "
+							+ "List with size = {}", ((List) payLoad).size());
+				} else {
+					throw new Exception(getBeanName()
+							+ ":camelProcess: received payload as List, but "
+							+ "List elements are not of type Map");
+				}
+				// ensure all values in key-value pairs are Strings
+				// payLoad = Utils.objToString((Object) payLoad);
+				listMap = (List) payLoad;
+			} else if (payLoad instanceof Map) {
+				LOG.trace(getBeanName()
+						+ ":camelProcess: received payload as Map with "
+						+ "size = {}", ((Map) payLoad).size());
+				// ensure all values in key-value pairs are Strings
+				// payLoad = Utils.objToString((Object) payLoad);
+				listMap = new ArrayList<Map<Object, Object>>();
+				listMap.add((Map) payLoad);
+			} else {
+				throw new Exception(getBeanName()
+						+ ":camelProcess: received payload as neither a "
+						+ "List nor Map");
+			}
+			// ensure that all the Maps in the given list have the same set of
+			// keys. Set equality is transitive, so each Map need only be
+			// compared to the first
+			if (listMap.size() > 1) {
+				Set set1 = listMap.get(0).keySet();
+				for (int j = 1; j < listMap.size(); j++) {
+					if (!listMap.get(j).keySet().equals(set1)) {
+						throw new Exception(getBeanName()
+								+ ":camelProcess:ERROR, all Maps in the "
+								+ "provided List of Maps do not have the "
+								+ "same key set!");
+					}
+				}
+			}
+		} else {
+			LOG.trace(getBeanName() + ":camelProcess: payload was not provided");
+		}
+
+		return listMap;
+	}
+
+	/**
+	 * Returns the codec selected for the given message, or null if none was
+	 * selected. The codec is selected by the endpoint's "codec" option (e.g.,
+	 * "cql:user?codec=smile"), else by the message's Content-Type header.
+	 * 
+	 * @param inMsg
+	 * @return
+	 * @throws Exception
+	 */
+	private CqlCodec getCodec(Message inMsg) throws Exception {
+		Object endpoint = (inMsg.getExchange() == null) ? null : inMsg
+				.getExchange().getProperty(CqlComponent.CASSY_ENDPOINT_PROP);
+		if (endpoint instanceof CqlEndpoint) {
+			Object option = ((CqlEndpoint) endpoint)
+					.getParameter(CqlCodec.CODEC_OPTION);
+			if (option != null) {
+				CqlCodec codec = CqlCodec.forName(option.toString());
+				if (codec == null) {
+					throw new Exception(getBeanName()
+							+ ":camelProcess: unknown codec option: " + option);
+				}
+				return codec;
+			}
+		}
+		return CqlCodec.forName(inMsg.getHeader(Exchange.CONTENT_TYPE,
+				String.class));
+	}
+
+	/**
+	 * Hoist the given body up into the exchange's out message. If a binary
+	 * codec has been selected for the in message, then a List of result Maps
+	 * is encoded with that codec and the out message's Content-Type is set
+	 * accordingly.
+	 * 
+	 * @param exchange
+	 * @param inMsg
+	 * @param body
+	 * @throws Exception
+	 */
+	private void setOutBody(Exchange exchange, Message inMsg, Object body)
+			throws Exception {
+		CqlCodec codec = getCodec(inMsg);
+		if (codec != null && codec.isBinary()) {
+			if (body instanceof List) {
+				body = codec.getMapper().writeValueAsBytes(body);
+			}
+			if (body instanceof byte[] || body instanceof CqlJsonStream) {
+				exchange.getOut().setHeader(Exchange.CONTENT_TYPE,
+						codec.getContentType());
+			}
+		}
+		exchange.getOut().setBody(body);
+	}
+
+	/**
+	 * If requested to do so, save the current paging state in the exchange's
+	 * out message. Also hoist up any failures that were encountered while
+	 * executing a List of Maps.
+	 */
+	private void copyHeaders(Exchange exchange, Message inMsg) {
+		if (inMsg.getHeader(CASSANDRA_PAGING_STATE) != null) {
+			exchange.getOut().setHeader(CASSANDRA_PAGING_STATE,
+					inMsg.getHeader(CASSANDRA_PAGING_STATE));
+		}
+		if (inMsg.getHeader(CASSANDRA_FAILURES) != null) {
+			exchange.getOut().setHeader(CASSANDRA_FAILURES,
+					inMsg.getHeader(CASSANDRA_FAILURES));
+		}
+	}
+
+	/**
+	 * Execute the given list of Maps. Each Map is matched up against one of the
+	 * CQL statements assigned to this Cassandra Client.
+	 * 
+	 * @param listMap
+	 * @param method
+	 * @return
+	 * @throws Exception
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	public List<Map<String, Object>> execute(List<Map<Object, Object>> listMap,
+			Message inMsg) throws Exception {
+
+		// if no list of maps was passed in, then dummy one up
+		List<Map<Object, Object>> myListMap = copyListMap(listMap);
+
+		// Get the CQL statement that matches the given map(s)
+		CqlStmnt cqlStmnt = getCqlStmnt(myListMap, inMsg);
+
+		return execute(cqlStmnt, myListMap, inMsg);
+	}
+
+	/**
+	 * Execute the given CQL statement for each of the given Maps.
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private List<Map<String, Object>> execute(CqlStmnt cqlStmnt,
+			List<Map<Object, Object>> myListMap, Message inMsg)
+			throws Exception {
+
+		// the write may be left to the write-behind buffer or the counter
+		// aggregator
+		if (isWriteBehind(cqlStmnt)) {
+			return writeBehind(cqlStmnt, myListMap);
+		} else if (isAggregated(cqlStmnt)) {
+			return aggregate(cqlStmnt, myListMap);
+		}
+
+		// a lone SELECT may be answered from the statement's result cache or
+		// by an identical request's query that is already in flight
+		if (myListMap.size() != 1
+				|| !(cqlStmnt.isCached() || cqlStmnt.isCoalescing())) {
+			return executeEach(cqlStmnt, myListMap, inMsg);
+		}
+		Map<String, Object> params = (Map) myListMap.get(0);
+		Session mySession = getSession();
+		if (cqlStmnt.isCached()) {
+			List<Map<String, Object>> rows = cqlStmnt.getCached(mySession,
+					params);
+			if (rows != null) {
+				return rows;
+			}
+		}
+
+		// join the identical request's query, if there is one, else
+		// register this request's query
+		String key = cqlStmnt.isCoalescing() ? cqlStmnt.getCoalesceKey(
+				params, inMsg) : null;
+		SettableFuture<List<Map<String, Object>>> flight = null;
+		if (key != null) {
+			flight = SettableFuture.create();
+			ListenableFuture<List<Map<String, Object>>> inFlight = cqlStmnt
+					.joinInFlight(mySession, key, flight);
+			if (inFlight != null) {
+				return copyRows(getShared(cqlStmnt, inFlight));
+			}
+		}
+
+		long cacheGeneration = cqlStmnt.isCached() ? cqlStmnt
+				.getCacheGeneration(mySession) : 0L;
+		List<Map<String, Object>> rows = null;
+		Throwable failure = null;
+		try {
+			rows = executeEach(cqlStmnt, myListMap, inMsg);
+			if (cqlStmnt.isCached() && rows != null) {
+				cqlStmnt.putCached(mySession, params, rows, cacheGeneration);
+			}
+		} catch (Throwable t) {
+			failure = t;
+			throw t;
+		} finally {
+			// whatever is thrown, an Error included, the flight must not be
+			// left registered
+			completeInFlight(cqlStmnt, mySession, key, flight, rows, failure);
+		}
+		// the requests that joined this one get their own copies, so this one
+		// does too
+		return (flight == null) ? rows : copyRows(rows);
+	}
+
+	/**
+	 * Returns true if the given statement is to be left to the write-behind
+	 * buffer. Counter updates, which cannot be batched with other writes, are
+	 * never left to the buffer.
+	 */
+	private boolean isWriteBehind(CqlStmnt cqlStmnt) {
+		return isWriteBehind() && (cqlStmnt.isInsert() || cqlStmnt.isUpdate())
+				&& !cqlStmnt.hasCounters();
+	}
+
+	/**
+	 * Accepts the given Maps, for the given statement, into the write-behind
+	 * buffer and returns an empty List. Throws an exception if the buffer
+	 * does not have room for them within writeBehindTimeout milliseconds.
+	 */
+	private List<Map<String, Object>> writeBehind(CqlStmnt cqlStmnt,
+			List<Map<Object, Object>> myListMap) throws Exception {
+		CqlWriteBehind buffer = getWriteBehindBuffer();
+		if (buffer == null
+				|| !buffer.offer(cqlStmnt, myListMap, getWriteBehindTimeout())) {
+			throw new Exception(getBeanName()
+					+ ":execute: write-behind buffer is full or closed");
+		}
+		return new ArrayList<Map<String, Object>>();
+	}
+
+	/**
+	 * Returns the write-behind buffer, which is created on first use; or null
+	 * if this client is no longer running, as destroy() has already closed
+	 * the buffer.
+	 */
+	private synchronized CqlWriteBehind getWriteBehindBuffer() {
+		if (writeBehindBuffer == null && isRunning()) {
+			writeBehindBuffer = new CqlWriteBehind(this,
+					getWriteBehindCapacity(), getWriteBehindFlushSize(),
+					getWriteBehindFlushInterval());
+		}
+		return writeBehindBuffer;
+	}
+
+	/**
+	 * Returns true if the given statement is a counter UPDATE that is to be
+	 * left to the counter aggregator.
+	 */
+	private boolean isAggregated(CqlStmnt cqlStmnt) {
+		return isAggregateCounters() && cqlStmnt.isUpdate()
+				&& cqlStmnt.hasCounters();
+	}
+
+	/**
+	 * Adds the deltas of the given Maps, for the given counter UPDATE, to the
+	 * counter aggregator and returns an empty List. Every Map is parsed
+	 * before any is added; so, a Map that is not valid fails the exchange
+	 * without any of the Maps being counted, and a retry of the exchange
+	 * cannot count them twice.
+	 */
+	private List<Map<String, Object>> aggregate(CqlStmnt cqlStmnt,
+			List<Map<Object, Object>> myListMap) throws Exception {
+		CqlCounterAggregator aggregator = getCounterAggregator();
+		if (aggregator == null) {
+			throw new Exception(getBeanName()
+					+ ":execute: counter aggregator is closed");
+		}
+		Session mySession = getSession();
+		List<CqlCounterAggregator.Increment> increments = new ArrayList<CqlCounterAggregator.Increment>();
+		for (Map<Object, Object> map : myListMap) {
+			increments.add(aggregator.parse(cqlStmnt, map, mySession));
+		}
+		aggregator.add(increments);
+		return new ArrayList<Map<String, Object>>();
+	}
+
+	/**
+	 * Returns the counter aggregator, which is created on first use; or null
+	 * if this client is no longer running, as destroy() has already closed
+	 * the aggregator.
+	 */
+	private synchronized CqlCounterAggregator getCounterAggregator() {
+		if (counterAggregator == null && isRunning()) {
+			counterAggregator = new CqlCounterAggregator(this,
+					getCounterFlushInterval());
+		}
+		return counterAggregator;
+	}
+
+	/**
+	 * Called by the write-behind buffer, or the counter aggregator, to execute
+	 * the given Maps, which it has drained, for the given statement. The Maps
+	 * are sent as partition-grouped batches and this method blocks until they
+	 * have all completed. The batches wait to be admitted by the concurrency
+	 * limiter, if any, rather than being rejected. Returns the number of Maps
+	 * that failed.
+	 */
+	int executeBehind(CqlStmnt cqlStmnt, List<Map<Object, Object>> myListMap,
+			Session mySession) {
+		Map<Integer, String> failures = new TreeMap<Integer, String>();
+		try {
+			List<ResultSetFuture> futures = (isBatchable(cqlStmnt) && myListMap
+					.size() > 1) ? executeBatchAsync(cqlStmnt, myListMap,
+					new DefaultMessage(), mySession, false) : executeAsync(
+					cqlStmnt, myListMap, new DefaultMessage(), mySession, false);
+			getResultSets(futures, failures);
+		} catch (Exception exc) {
+			LOG.error(getBeanName() + ":executeBehind: caught this "
+					+ "exception {}", exc.toString());
+			return myListMap.size();
+		} finally {
+			invalidateCached(cqlStmnt, myListMap);
+		}
+		if (!failures.isEmpty()) {
+			LOG.error(getBeanName() + ":executeBehind: {} of {} writes "
+					+ "failed, first failure = {}", failures.size(),
+					myListMap.size(), failures.values().iterator().next());
+		}
+		return failures.size();
+	}
+
+	/**
+	 * Unregisters the given query of coalesced requests and hands the given
+	 * rows, or exception, to the requests that joined it.
+	 */
+	private void completeInFlight(CqlStmnt cqlStmnt, Session mySession,
+			String key, SettableFuture<List<Map<String, Object>>> flight,
+			List<Map<String, Object>> rows, Throwable t) {
+		if (flight == null) {
+			return;
+		}
+		cqlStmnt.leaveInFlight(mySession, key, flight);
+		if (t != null) {
+			flight.setException(t);
+		} else {
+			flight.set(rows);
+		}
+	}
+
+	/**
+	 * Waits for, and returns the rows of, an identical request's query. The
+	 * wait is bounded by the statement's coalesceTimeout.
+	 */
+	private List<Map<String, Object>> getShared(CqlStmnt cqlStmnt,
+			ListenableFuture<List<Map<String, Object>>> inFlight)
+			throws Exception {
+		try {
+			return inFlight.get(cqlStmnt.getCoalesceTimeout(),
+					TimeUnit.MILLISECONDS);
+		} catch (TimeoutException exc) {
+			throw new Exception(getBeanName() + ":execute: the coalesced "
+					+ "query did not complete within "
+					+ cqlStmnt.getCoalesceTimeout() + " milliseconds");
+		} catch (ExecutionException exc) {
+			if (exc.getCause() instanceof Exception) {
+				throw (Exception) exc.getCause();
+			}
+			throw exc;
+		}
+	}
+
+	// returns a copy of the given rows (if any)
+	private static List<Map<String, Object>> copyRows(
+			List<Map<String, Object>> rows) {
+		return (rows == null) ? null : CqlResultCache.copyRows(rows);
+	}
+
+	/**
+	 * Execute the given CQL statement for each of the given Maps, without
+	 * consulting the statement's result cache or in-flight queries.
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private List<Map<String, Object>> executeEach(CqlStmnt cqlStmnt,
+			List<Map<Object, Object>> myListMap, Message inMsg)
+			throws Exception {
+
+		// determine the page size
+		int fetchSize = getFetchSize(cqlStmnt);
+
+		// iterate through the given Maps (if any) and execute their
+		// corresponding cql statement(s)
+		try {
+			List<ResultSet> resultSets = null;
+			if ((getMaxInFlight() > 0 || isBatchByPartition())
+					&& myListMap.size() > 1) {
+				// fan the Maps (or their batches) out concurrently, but no
+				// more than maxInFlight at a time
+				Map<Integer, String> failures = new TreeMap<Integer, String>();
+				resultSets = getResultSets(
+						executeAsync(cqlStmnt, myListMap, inMsg, getSession(),
+								false),
+						failures);
+				setFailures(failures, inMsg);
+			} else {
+				resultSets = new ArrayList<ResultSet>();
+				for (Map map : myListMap) {
+					ResultSet resultSet = executeLimited(cqlStmnt, map,
+							inMsg, getSession(), true);
+					if (resultSet != null) {
+						resultSets.add(resultSet);
+					}
+				} // for (Map map : listMap)
+			}
+
+			if (LOG.isDebugEnabled()) {
+				LOG.debug(getBeanName()
+						+ ":execute: successfully executed statement(s)");
+				LOG.debug(getBeanName()
+						+ ":execute: received this many result sets {}",
+						resultSets.size());
+				LOG.debug(getBeanName() + ":execute: using this fetchSize {}",
+						fetchSize);
+			}
+
+			return getListOutMaps(cqlStmnt, resultSets, fetchSize);
+
+		} catch (Exception exc) {
+			LOG.error(getBeanName() + ":ERROR, caught this "
+					+ "Exception while executing CQL statement " + "message: "
+					+ exc.toString());
+			LOG.error(getBeanName() + ": exception stack trace follows:");
+			exc.printStackTrace();
+			dumpStackTrace(exc.getStackTrace());
+			if (exc.getCause() != null) {
+				LOG.error(getBeanName() + ": Caused by "
+						+ exc.getCause().toString());
+				LOG.error(getBeanName()
+						+ ": causing exception stack trace follows:");
+				dumpStackTrace(exc.getCause().getStackTrace());
+			}
+			// throw the exception back
+			throw exc;
+		} finally {
+			// a write, whether or not it succeeded, may have made cached
+			// results stale
+			invalidateCached(cqlStmnt, myListMap);
+		}
+	}
+
+	/**
+	 * Invalidates the cached results of this client's SELECTs that read from
+	 * the table that the given write statement wrote to, for the given Maps.
+	 * If the partitions that were written to can be derived from the Maps,
+	 * then only the results of those partitions are invalidated, else all of
+	 * the table's results are invalidated. A null list of Maps also
+	 * invalidates all of the table's results.
+	 * 
+	 * @param cqlStmnt
+	 * @param listMap
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	void invalidateCached(CqlStmnt cqlStmnt,
+			List<Map<Object, Object>> listMap) {
+		Session mySession = session;
+		if (cqlStmnt.isSelect() || cqlStmnt.getTable() == null
+				|| mySession == null) {
+			return;
+		}
+		Set<String> partitions = null;
+		for (CqlStmnt select : getCqlStmnts4Select()) {
+			if (!select.isCached()
+					|| !cqlStmnt.getTable().equals(select.getTable())) {
+				continue;
+			}
+			// derive the partitions once, and only if there is a cache
+			if (partitions == null && listMap != null) {
+				partitions = new HashSet<String>();
+				for (Map map : listMap) {
+					String partition = cqlStmnt.getPartition(mySession, map);
+					if (partition == null) {
+						partitions = null;
+						break;
+					}
+					partitions.add(partition);
+				}
+				listMap = null;
+			}
+			if (partitions == null) {
+				select.invalidateCached(mySession, null);
+			} else {
+				for (String partition : partitions) {
+					select.invalidateCached(mySession, partition);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Loads the CSV or JSON Lines file that is named by the given message's
+	 * payload, which is either a path, a File or a GenericFile. Returns a List
+	 * holding a summary of the load. The records that failed are reported, by
+	 * line number, in the message's failures header.
+	 * 
+	 * @param inMsg
+	 * @return
+	 * @throws Exception
+	 */
+	@SuppressWarnings("rawtypes")
+	private List<Map<String, Object>> bulkLoad(Message inMsg)
+			throws Exception {
+		Object body = inMsg.getBody();
+		File file = null;
+		if (body instanceof File) {
+			file = (File) body;
+		} else if (body instanceof GenericFile) {
+			GenericFile genericFile = (GenericFile) body;
+			file = (genericFile.getFile() instanceof File) ? (File) genericFile
+					.getFile() : new File(genericFile.getAbsoluteFilePath());
+		} else if (body instanceof String && !((String) body).trim().isEmpty()) {
+			file = new File(((String) body).trim());
+		}
+		if (file == null || !file.isFile()) {
+			throw new Exception(getBeanName() + ":bulkLoad: payload does not "
+					+ "name a file that can be loaded: " + body);
+		}
+		CqlBulkLoader loader = new CqlBulkLoader(this, file,
+				CqlBulkLoader.Format.forFile(getBulkLoadFormat(), file), inMsg,
+				getBulkLoadThreads(), getIngestConcurrency(),
+				getBulkLoadChunkSize());
+		// each load keeps its own progress, as loads may run concurrently
+		bulkLoads.add(loader);
+		try {
+			List<Map<String, Object>> result = new ArrayList<Map<String, Object>>();
+			result.add(loader.load());
+			setFailures(loader.getFailedLines(), inMsg);
+			return result;
+		} finally {
+			bulkLoads.remove(loader);
+			bulkLoadRecords.addAndGet(loader.getRecords());
+			bulkLoadFailures.addAndGet(loader.getFailures());
+			bulkLoadBytes.addAndGet(loader.getBytes());
+		}
+	}
+
+	/**
+	 * Returns the SELECT statement that matches the given key set, or null if
+	 * there is none.
+	 */
+	CqlStmnt getSelectStmnt(Set<String> keys) {
+		CqlStmntIndex index = getStmntIndex().get(Method.SELECT);
+		return (index == null) ? null : index.getMatch(keys);
+	}
+
+	/**
+	 * Returns the INSERT statement that matches the given key set, or null if
+	 * there is none.
+	 */
+	CqlStmnt getInsertStmnt(Set<String> keys) {
+		CqlStmntIndex index = getStmntIndex().get(Method.INSERT);
+		return (index == null) ? null : index.getMatch(keys);
+	}
+
+	/**
+	 * Parses the given JSON stream, which holds either an object or an array
+	 * of objects, one object at a time and executes each object as soon as it
+	 * is parsed; therefore, the stream is ingested in constant memory. The
+	 * statement is matched to the first object's key set; an object that does
+	 * not have that key set is not executed, but reported as failed. No more
+	 * than ingestConcurrency statements are in flight at any time. Failed
+	 * objects are reported, by index, in the message's failures header.
+	 * 
+	 * A SELECT may only be given one object, which is executed as usual.
+	 * 
+	 * @param is
+	 * @param inMsg
+	 * @return
+	 * @throws Exception
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private Object ingest(InputStream is, Message inMsg) throws Exception {
+
+		CqlCodec codec = getCodec(inMsg);
+		ObjectMapper ingestMapper = (codec == null) ? CqlCodec.JSON
+				.getMapper() : codec.getMapper();
+		JsonParser jp = ingestMapper.getFactory().createParser(is);
+		try {
+			JsonToken token = jp.nextToken();
+			boolean isArray = token == JsonToken.START_ARRAY;
+			if (isArray) {
+				token = jp.nextToken();
+			}
+			if (token != JsonToken.START_OBJECT) {
+				if (isArray && token == JsonToken.END_ARRAY) {
+					return getOutBody(null, inMsg);
+				}
+				throw new Exception(getBeanName()
+						+ ":ingest: received payload as neither a "
+						+ "JSON object nor array of objects");
+			}
+
+			// the first object determines the statement
+			Map first = ingestMapper.readValue(jp, Map.class);
+			token = jp.nextToken();
+			List<Map<Object, Object>> firstList = new ArrayList<Map<Object, Object>>();
+			firstList.add(first);
+			CqlStmnt cqlStmnt = getCqlStmnt(firstList, inMsg);
+			if (cqlStmnt.isSelect()) {
+				if (isArray && token == JsonToken.START_OBJECT) {
+					throw new Exception(getBeanName()
+							+ ":ingest: received more than one input "
+							+ "Map for a SELECT statement, this is not allowed");
+				}
+				return getOutBody(firstList, inMsg);
+			}
+
+			Set keys = first.keySet();
+			Session session = getSession();
+			final Semaphore permits = new Semaphore(getIngestConcurrency());
+			final Map<Integer, String> failures = new ConcurrentSkipListMap<Integer, String>();
+			Map map = first;
+			int index = 0;
+			try {
+				while (true) {
+					if (!map.keySet().equals(keys)) {
+						// the statement does not fit this object, but it may
+						// still fit the objects that follow it
+						failures.put(index, "object's key set "
+								+ map.keySet()
+								+ " is not that of the first object " + keys);
+						map = null;
+					}
+					ResultSetFuture future = null;
+					String failure = "unable to bind CQL statement";
+					if (map != null) {
+						permits.acquire();
+						try {
+							future = executeLimitedAsync(cqlStmnt, map, inMsg,
+									session, true, true);
+						} catch (RuntimeException exc) {
+							failure = exc.toString();
+						}
+						if (future == null) {
+							failures.put(index, failure);
+							permits.release();
+						}
+					}
+					if (future != null) {
+						final int myIndex = index;
+						Futures.addCallback(future,
+								new FutureCallback<ResultSet>() {
+									public void onSuccess(ResultSet rs) {
+										permits.release();
+									}
+
+									public void onFailure(Throwable t) {
+										failures.put(myIndex, t.toString());
+										permits.release();
+									}
+								});
+					}
+					index++;
+
+					// move on to the next object, if any
+					if (!isArray || token != JsonToken.START_OBJECT) {
+						break;
+					}
+					map = ingestMapper.readValue(jp, Map.class);
+					token = jp.nextToken();
+				}
+			} finally {
+				// wait for the statements that are still in flight and
+				// report the failures; even if the rest of the stream could
+				// not be read
+				permits.acquireUninterruptibly(getIngestConcurrency());
+				invalidateCached(cqlStmnt, null);
+				setFailures(new TreeMap<Integer, String>(failures), inMsg);
+			}
+			LOG.debug(getBeanName() + ":ingest: executed this many objects {}",
+					index);
+			return new ArrayList<Map<String, Object>>();
+		} finally {
+			jp.close();
+		}
+	}
+
+	/**
+	 * Returns a copy of the given list of Maps. If no list of maps was passed
+	 * in, then a list with one empty Map is returned.
+	 * 
+	 * @param listMap
+	 * @return
+	 */
+	private List<Map<Object, Object>> copyListMap(
+			List<Map<Object, Object>> listMap) {
+		List<Map<Object, Object>> myListMap = new ArrayList<Map<Object, Object>>();
+		if (listMap == null) {
+			LOG.debug(getBeanName() + ":execute - listMap was not provided");
+			myListMap.add(new HashMap<Object, Object>());
+		} else {
+			// create a copy of the given list.
+			for (Map<Object, Object> map : listMap) {
+				myListMap.add(new HashMap<Object, Object>(map));
+			}
+		}
+		LOG.debug(getBeanName() + ":execute - executing this many maps {}",
+				myListMap.size());
+		return myListMap;
+	}
+
+	/**
+	 * Returns the CQL statement that matches the given list of Maps and the
+	 * method requested by the given message.
+	 * 
+	 * @param myListMap
+	 * @param inMsg
+	 * @return
+	 * @throws Exception
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private CqlStmnt getCqlStmnt(List<Map<Object, Object>> myListMap,
+			Message inMsg) throws Exception {
+
+		Method method = getMethod(inMsg);
+
+		// based on the given method, attempt to find a set of candidate CQL
+		// statements
+		List<CqlStmnt> cqlStmnts = getCqlStmnts(method);
+		if (cqlStmnts == null || cqlStmnts.isEmpty()) {
+			throw new Exception(getBeanName() + ":execute - could not acquire "
+					+ "CQL statements for this method:" + method.toString());
+		}
+
+		// Get the CQL statement that matches the given map(s)
+		CqlStmnt cqlStmnt = getStmntIndex().get(method).getMatch(
+				myListMap.get(0).keySet());
+
+		if (cqlStmnt == null) {
+			throw new Exception(getBeanName()
+					+ ":execute: this key set could not "
+					+ "be mapped to a CQL statement: ["
+					+ myListMap.get(0).keySet().toString() + "]");
+		}
+
+		// only one map is allowed for SELECT statements
+		if (cqlStmnt.isSelect() && myListMap.size() > 1) {
+			throw new Exception(getBeanName()
+					+ ":execute: received more than one input "
+					+ "Map for a SELECT statement, this is not allowed");
+		}
+		return cqlStmnt;
+	}
+
+	/**
+	 * Returns the method requested by the given message or, if not requested,
+	 * this client's default method.
+	 * 
+	 * @param inMsg
+	 * @return
+	 * @throws Exception
+	 */
+	private Method getMethod(Message inMsg) throws Exception {
+		// see if request method is in the message
+		Method method = null;
+		String inMethod = (String) inMsg.getHeader(CASSANDRA_METHOD);
+		if (inMethod == null || inMethod.isEmpty()) {
+			LOG.debug(getBeanName() + ":execute - method was not provided");
+			method = getDefaultMethod();
+			if (method == null) {
+				throw new Exception(getBeanName()
+						+ ":execute - method was not provided and there "
+						+ "is no default set for this client");
+			} else {
+				LOG.debug(getBeanName()
+						+ ":execute - using this default method {}", method);
+			}
+		} else {
+			inMethod = inMethod.trim();
+			try {
+				method = Method.valueOf(inMethod.toUpperCase());
+				LOG.debug(getBeanName()
+						+ ":execute - using this passed in method {}", inMethod);
+			} catch (IllegalArgumentException e) {
+				throw new Exception(getBeanName()
+						+ ":execute: This method is not allowed [" + method
+						+ "]");
+			}
+		}
+
+		return method;
+	}
+
+	/**
+	 * Returns the page size to use for the given CQL statement.
+	 */
+	private int getFetchSize(CqlStmnt cqlStmnt) throws Exception {
+		return (cqlStmnt.getFetchSize() >= 0) ? cqlStmnt.getFetchSize()
+				: getSession().getCluster().getConfiguration()
+						.getQueryOptions().getFetchSize();
+	}
+
+	/**
+	 * Transfer the rows of the given result sets to a List of Maps. At most
+	 * fetchSize rows are taken from each result set, which are the rows of
+	 * the result set's current page; therefore, this method does not block
+	 * on the fetching of any additional pages.
+	 * 
+	 * @param cqlStmnt
+	 * @param resultSets
+	 * @param fetchSize
+	 * @return
+	 */
+	private List<Map<String, Object>> getListOutMaps(CqlStmnt cqlStmnt,
+			List<ResultSet> resultSets, int fetchSize) {
+
+		// if no result sets were returned, then we're done!
+		if (resultSets.isEmpty()) {
+			return null;
+		}
+
+		List<Map<String, Object>> listOutMaps = new ArrayList<Map<String, Object>>();
+
+		// iterate through the returned result sets
+		for (ResultSet resultSet : resultSets) {
+			Row row = null;
+			// grab the decoding plan for the result set's metadata
+			CqlRowDecoder decoder = cqlStmnt.getRowDecoder(resultSet
+					.getColumnDefinitions());
+			// transfer each row of the result set to a Map and place all
+			// the maps in a List
+			boolean compact = getResultFormat() == ResultFormat.COMPACT;
+			int rowCount = 0;
+			while (rowCount < fetchSize
+					&& resultSet.getAvailableWithoutFetching() > 0
+					&& (row = resultSet.one()) != null) {
+				listOutMaps.add(compact ? decoder.decodeCompact(row)
+						: decoder.decode(row));
+				rowCount++;
+			}
+		}
+		// return the List of Maps up into the Exchange's out message
+		LOG.debug(getBeanName()
+				+ ":camelProcess: sending back this many Maps {}",
+				listOutMaps.size());
+
+		return listOutMaps;
+	}
+
+	/**
+	 * Build the index used for dispatching a request to the CQL statement
+	 * that matches its key set. There is one index per method.
+	 */
+	private Map<Method, CqlStmntIndex> buildStmntIndex() {
+		Map<Method, CqlStmntIndex> index = new EnumMap<Method, CqlStmntIndex>(
+				Method.class);
+		for (Method method : Method.values()) {
+			if (!method.isNoop()) {
+				index.put(method, new CqlStmntIndex(getCqlStmnts(method)));
+			}
+		}
+		stmntIndex = index;
+		return index;
+	}
+
+	/**
+	 * Returns the statement dispatch index; it is rebuilt if the CQL
+	 * statements have been changed.
+	 */
+	private Map<Method, CqlStmntIndex> getStmntIndex() {
+		Map<Method, CqlStmntIndex> index = stmntIndex;
+		return (index != null) ? index : buildStmntIndex();
 	}
 
 	private List<CqlStmnt> getCqlStmnts(Method method)
@@ -623,6 +2593,209 @@ public class Client implements InitializingBean, DisposableBean, BeanNameAware,
 	 */
 	public void destroy() {
 		setRunning(false);
+		// flush what is left in the write-behind buffer and the counter
+		// aggregator
+		CqlWriteBehind buffer = null;
+		CqlCounterAggregator aggregator = null;
+		synchronized (this) {
+			buffer = writeBehindBuffer;
+			writeBehindBuffer = null;
+			aggregator = counterAggregator;
+			counterAggregator = null;
+		}
+		if (buffer != null) {
+			buffer.close(getWriteBehindTimeout());
+		}
+		if (aggregator != null) {
+			aggregator.close(getCounterFlushInterval());
+		}
+		synchronized (this) {
+			if (scanExecutor != null) {
+				scanExecutor.shutdownNow();
+				scanExecutor = null;
+			}
+			if (deferExecutor != null) {
+				deferExecutor.shutdownNow();
+				deferExecutor = null;
+			}
+		}
+		// the statements that were still deferred are never sent
+		deferring.set(0);
+		failDeferred(new RejectedExecutionException(getBeanName()
+				+ ": client has been destroyed"));
+	}
+
+	/**
+	 * @return the writeBehind
+	 */
+	public boolean isWriteBehind() {
+		return writeBehind;
+	}
+
+	/**
+	 * @param writeBehind
+	 *            the writeBehind to set
+	 */
+	public void setWriteBehind(boolean writeBehind) {
+		this.writeBehind = writeBehind;
+	}
+
+	/**
+	 * @return the writeBehindCapacity
+	 */
+	public int getWriteBehindCapacity() {
+		return writeBehindCapacity;
+	}
+
+	/**
+	 * @param writeBehindCapacity
+	 *            the writeBehindCapacity to set
+	 */
+	public void setWriteBehindCapacity(int writeBehindCapacity) {
+		if (writeBehindCapacity < 1) {
+			throw new IllegalArgumentException(
+					"writeBehindCapacity must be greater than 0");
+		}
+		this.writeBehindCapacity = writeBehindCapacity;
+	}
+
+	/**
+	 * @return the writeBehindFlushSize
+	 */
+	public int getWriteBehindFlushSize() {
+		return writeBehindFlushSize;
+	}
+
+	/**
+	 * @param writeBehindFlushSize
+	 *            the writeBehindFlushSize to set
+	 */
+	public void setWriteBehindFlushSize(int writeBehindFlushSize) {
+		if (writeBehindFlushSize < 1) {
+			throw new IllegalArgumentException(
+					"writeBehindFlushSize must be greater than 0");
+		}
+		this.writeBehindFlushSize = writeBehindFlushSize;
+	}
+
+	/**
+	 * @return the writeBehindFlushInterval
+	 */
+	public long getWriteBehindFlushInterval() {
+		return writeBehindFlushInterval;
+	}
+
+	/**
+	 * @param writeBehindFlushInterval
+	 *            the writeBehindFlushInterval to set
+	 */
+	public void setWriteBehindFlushInterval(long writeBehindFlushInterval) {
+		this.writeBehindFlushInterval = writeBehindFlushInterval;
+	}
+
+	/**
+	 * @return the writeBehindTimeout
+	 */
+	public long getWriteBehindTimeout() {
+		return writeBehindTimeout;
+	}
+
+	/**
+	 * @param writeBehindTimeout
+	 *            the writeBehindTimeout to set
+	 */
+	public void setWriteBehindTimeout(long writeBehindTimeout) {
+		this.writeBehindTimeout = writeBehindTimeout;
+	}
+
+	/**
+	 * @return the number of writes waiting in the write-behind buffer
+	 */
+	public int getWriteBehindPending() {
+		CqlWriteBehind buffer = writeBehindBuffer;
+		return (buffer == null) ? 0 : buffer.getPending();
+	}
+
+	/**
+	 * @return the number of writes accepted into the write-behind buffer
+	 */
+	public long getWriteBehindWrites() {
+		CqlWriteBehind buffer = writeBehindBuffer;
+		return (buffer == null) ? 0 : buffer.getWrites();
+	}
+
+	/**
+	 * @return the number of accepted writes that failed when flushed
+	 */
+	public long getWriteBehindFailures() {
+		CqlWriteBehind buffer = writeBehindBuffer;
+		return (buffer == null) ? 0 : buffer.getFailures();
+	}
+
+	/**
+	 * @return the number of times the write-behind buffer was flushed
+	 */
+	public long getWriteBehindFlushes() {
+		CqlWriteBehind buffer = writeBehindBuffer;
+		return (buffer == null) ? 0 : buffer.getFlushes();
+	}
+
+	/**
+	 * @return the aggregateCounters
+	 */
+	public boolean isAggregateCounters() {
+		return aggregateCounters;
+	}
+
+	/**
+	 * @param aggregateCounters
+	 *            the aggregateCounters to set
+	 */
+	public void setAggregateCounters(boolean aggregateCounters) {
+		this.aggregateCounters = aggregateCounters;
+	}
+
+	/**
+	 * @return the counterFlushInterval
+	 */
+	public long getCounterFlushInterval() {
+		return counterFlushInterval;
+	}
+
+	/**
+	 * @param counterFlushInterval
+	 *            the counterFlushInterval to set
+	 */
+	public void setCounterFlushInterval(long counterFlushInterval) {
+		if (counterFlushInterval < 1) {
+			throw new IllegalArgumentException(
+					"counterFlushInterval must be greater than 0");
+		}
+		this.counterFlushInterval = counterFlushInterval;
+	}
+
+	/**
+	 * @return the number of counter UPDATEs that were aggregated
+	 */
+	public long getCounterIncrements() {
+		CqlCounterAggregator aggregator = counterAggregator;
+		return (aggregator == null) ? 0 : aggregator.getIncrements();
+	}
+
+	/**
+	 * @return the number of aggregated counter UPDATEs that were executed
+	 */
+	public long getCounterUpdates() {
+		CqlCounterAggregator aggregator = counterAggregator;
+		return (aggregator == null) ? 0 : aggregator.getUpdates();
+	}
+
+	/**
+	 * @return the number of aggregated counter UPDATEs that failed
+	 */
+	public long getCounterFailures() {
+		CqlCounterAggregator aggregator = counterAggregator;
+		return (aggregator == null) ? 0 : aggregator.getFailures();
 	}
 
 	/**
@@ -705,41 +2878,66 @@ public class Client implements InitializingBean, DisposableBean, BeanNameAware,
 	 */
 	public Session getSession() throws Exception {
 
+		// fast path; the session has already been published
+		Session mySession = session;
+		if (mySession != null && !mySession.isClosed()) {
+			return mySession;
+		} else if (mySession != null) {
+			throw new Exception(this.getBeanName()
+					+ ":getSession: Cassandra session has been closed");
+		}
+
 		if (getCluster().isClosed()) {
 			throw new Exception(this.getBeanName()
 					+ ":getSession: cluster bean has been closed");
 		}
 
-		// wait to acquire the session lock (default wait time is 10 seconds).
-		if (!sessionLock.tryLock(getSessionLockWaitTime(),
-				TimeUnit.MILLISECONDS)) {
+		// session does not exist, so either create one or wait on the
+		// connection attempt that is already in progress
+		SettableFuture<Session> future = connecting.get();
+		if (future == null) {
+			SettableFuture<Session> myFuture = SettableFuture.create();
+			if (connecting.compareAndSet(null, myFuture)) {
+				try {
+					mySession = getCluster().connect(getKeyspace());
+					session = mySession;
+					myFuture.set(mySession);
+					return mySession;
+				} catch (NoHostAvailableException exc) {
+					LOG.error(getBeanName()
+							+ ":unable to connect Cassandra during bean initialization, msg = "
+							+ exc.getMessage());
+					myFuture.setException(exc);
+					throw exc;
+				} catch (RuntimeException exc) {
+					myFuture.setException(exc);
+					throw exc;
+				} finally {
+					// a failed attempt is retried by the next caller
+					if (session == null) {
+						connecting.compareAndSet(myFuture, null);
+					}
+				}
+			}
+			future = connecting.get();
+			if (future == null) {
+				return getSession();
+			}
+		}
+
+		// wait for the shared connection attempt (default wait time is 10
+		// seconds).
+		try {
+			return future.get(getSessionLockWaitTime(), TimeUnit.MILLISECONDS);
+		} catch (TimeoutException exc) {
 			throw new Exception(
 					this.getBeanName()
 							+ ":getSession: timed out attempting to acquire Cassandra session");
+		} catch (ExecutionException exc) {
+			throw new Exception(this.getBeanName()
+					+ ":getSession: unable to acquire Cassandra session, msg = "
+					+ exc.getCause().getMessage(), exc.getCause());
 		}
-
-		try {
-			// session may have already existed
-			if (session != null && !session.isClosed()) {
-				return session;
-			} else if (session != null) {
-				throw new Exception(this.getBeanName()
-						+ ":getSession: Cassandra session has been closed");
-			}
-
-			// session does not exist, so create one
-			try {
-				session = getCluster().connect(getKeyspace());
-			} catch (NoHostAvailableException exc) {
-				LOG.error(getBeanName()
-						+ ":unable to connect Cassandra during bean initialization, msg = "
-						+ exc.getMessage());
-				throw exc;
-			}
-		} finally {
-			sessionLock.unlock();
-		}
-		return session;
 	}
 
 	@Override
@@ -757,6 +2955,7 @@ public class Client implements InitializingBean, DisposableBean, BeanNameAware,
 	 */
 	public void setCqlStmnts4Select(List<CqlStmnt> cqlStmnts4Select) {
 		this.cqlStmnts4Select = cqlStmnts4Select;
+		stmntIndex = null;
 	}
 
 	/**
@@ -772,6 +2971,7 @@ public class Client implements InitializingBean, DisposableBean, BeanNameAware,
 	 */
 	public void setCqlStmnts4Update(List<CqlStmnt> cqlStmnts4Update) {
 		this.cqlStmnts4Update = cqlStmnts4Update;
+		stmntIndex = null;
 	}
 
 	public List<CqlStmnt> getCqlStmnts4Update() {
@@ -791,6 +2991,7 @@ public class Client implements InitializingBean, DisposableBean, BeanNameAware,
 	 */
 	public void setCqlStmnts4Delete(List<CqlStmnt> cqlStmnts4Delete) {
 		this.cqlStmnts4Delete = cqlStmnts4Delete;
+		stmntIndex = null;
 	}
 
 	/**
@@ -806,6 +3007,7 @@ public class Client implements InitializingBean, DisposableBean, BeanNameAware,
 	 */
 	public void setCqlStmnts4Insert(List<CqlStmnt> cqlStmnts4Insert) {
 		this.cqlStmnts4Insert = cqlStmnts4Insert;
+		stmntIndex = null;
 	}
 
 	/**
@@ -816,6 +3018,7 @@ public class Client implements InitializingBean, DisposableBean, BeanNameAware,
 		if (cqls == null || cqls.isEmpty()) {
 			return;
 		}
+		stmntIndex = null;
 		// make sure all the CQL statements are unique within a given set
 		for (CqlStmnt cql : cqls) {
 			switch (cql.getCqlStmntType()) {
@@ -918,4 +3121,469 @@ public class Client implements InitializingBean, DisposableBean, BeanNameAware,
 		this.sessionLockWaitTime = sessionLockWaitTime;
 	}
 
+	/**
+	 * @return the async
+	 */
+	public boolean isAsync() {
+		return async;
+	}
+
+	/**
+	 * @param async
+	 *            the async to set
+	 */
+	public void setAsync(boolean async) {
+		this.async = async;
+	}
+
+	/**
+	 * @return the maxInFlight
+	 */
+	public int getMaxInFlight() {
+		return maxInFlight;
+	}
+
+	/**
+	 * @param maxInFlight
+	 *            the maxInFlight to set
+	 */
+	public void setMaxInFlight(int maxInFlight) {
+		this.maxInFlight = maxInFlight;
+		inFlightPermits = (maxInFlight > 0) ? new Semaphore(maxInFlight) : null;
+	}
+
+	private Semaphore getInFlightPermits() {
+		return inFlightPermits;
+	}
+
+	/**
+	 * @return the maxDeferred
+	 */
+	public int getMaxDeferred() {
+		return maxDeferred;
+	}
+
+	/**
+	 * @param maxDeferred
+	 *            the maxDeferred to set
+	 */
+	public void setMaxDeferred(int maxDeferred) {
+		this.maxDeferred = maxDeferred;
+	}
+
+	/**
+	 * @return the number of statements that are currently deferred
+	 */
+	public int getDeferredCount() {
+		return deferredCount.get();
+	}
+
+	/**
+	 * @return the number of deferred statements that were rejected
+	 */
+	public long getDeferredRejections() {
+		return deferredRejections.get();
+	}
+
+	/**
+	 * @return the adaptiveConcurrency
+	 */
+	public boolean isAdaptiveConcurrency() {
+		return adaptiveConcurrency;
+	}
+
+	/**
+	 * @param adaptiveConcurrency
+	 *            the adaptiveConcurrency to set
+	 */
+	public void setAdaptiveConcurrency(boolean adaptiveConcurrency) {
+		this.adaptiveConcurrency = adaptiveConcurrency;
+	}
+
+	/**
+	 * @return the initialConcurrency
+	 */
+	public int getInitialConcurrency() {
+		return initialConcurrency;
+	}
+
+	/**
+	 * @param initialConcurrency
+	 *            the initialConcurrency to set
+	 */
+	public void setInitialConcurrency(int initialConcurrency) {
+		this.initialConcurrency = initialConcurrency;
+	}
+
+	/**
+	 * @return the minConcurrency
+	 */
+	public int getMinConcurrency() {
+		return minConcurrency;
+	}
+
+	/**
+	 * @param minConcurrency
+	 *            the minConcurrency to set
+	 */
+	public void setMinConcurrency(int minConcurrency) {
+		this.minConcurrency = minConcurrency;
+	}
+
+	/**
+	 * @return the maxConcurrency
+	 */
+	public int getMaxConcurrency() {
+		return maxConcurrency;
+	}
+
+	/**
+	 * @param maxConcurrency
+	 *            the maxConcurrency to set
+	 */
+	public void setMaxConcurrency(int maxConcurrency) {
+		this.maxConcurrency = maxConcurrency;
+	}
+
+	/**
+	 * @return the concurrencyTolerance
+	 */
+	public double getConcurrencyTolerance() {
+		return concurrencyTolerance;
+	}
+
+	/**
+	 * @param concurrencyTolerance
+	 *            the concurrencyTolerance to set
+	 */
+	public void setConcurrencyTolerance(double concurrencyTolerance) {
+		if (concurrencyTolerance < 1) {
+			throw new IllegalArgumentException(
+					"concurrencyTolerance must not be less than 1");
+		}
+		this.concurrencyTolerance = concurrencyTolerance;
+	}
+
+	/**
+	 * @return the concurrencyQueueTimeout
+	 */
+	public long getConcurrencyQueueTimeout() {
+		return concurrencyQueueTimeout;
+	}
+
+	/**
+	 * @param concurrencyQueueTimeout
+	 *            the concurrencyQueueTimeout to set
+	 */
+	public void setConcurrencyQueueTimeout(long concurrencyQueueTimeout) {
+		this.concurrencyQueueTimeout = concurrencyQueueTimeout;
+	}
+
+	/**
+	 * @return the current adaptive concurrency limit, or 0 if there is none
+	 */
+	public int getConcurrencyLimit() {
+		return (concurrencyLimiter == null) ? 0 : concurrencyLimiter
+				.getLimit();
+	}
+
+	/**
+	 * @return the number of statements that the concurrency limiter rejected
+	 */
+	public long getConcurrencyRejections() {
+		return (concurrencyLimiter == null) ? 0 : concurrencyLimiter
+				.getRejections();
+	}
+
+	/**
+	 * @return the batchByPartition
+	 */
+	public boolean isBatchByPartition() {
+		return batchByPartition;
+	}
+
+	/**
+	 * @param batchByPartition
+	 *            the batchByPartition to set
+	 */
+	public void setBatchByPartition(boolean batchByPartition) {
+		this.batchByPartition = batchByPartition;
+	}
+
+	/**
+	 * @return the maxBatchStatements
+	 */
+	public int getMaxBatchStatements() {
+		return maxBatchStatements;
+	}
+
+	/**
+	 * @param maxBatchStatements
+	 *            the maxBatchStatements to set
+	 */
+	public void setMaxBatchStatements(int maxBatchStatements) {
+		this.maxBatchStatements = maxBatchStatements;
+	}
+
+	/**
+	 * @return the maxBatchBytes
+	 */
+	public int getMaxBatchBytes() {
+		return maxBatchBytes;
+	}
+
+	/**
+	 * @param maxBatchBytes
+	 *            the maxBatchBytes to set
+	 */
+	public void setMaxBatchBytes(int maxBatchBytes) {
+		this.maxBatchBytes = maxBatchBytes;
+	}
+
+	/**
+	 * @return the resultFormat
+	 */
+	public ResultFormat getResultFormat() {
+		return resultFormat;
+	}
+
+	/**
+	 * @param resultFormat
+	 *            the resultFormat to set
+	 */
+	public void setResultFormat(ResultFormat resultFormat) {
+		this.resultFormat = resultFormat;
+	}
+
+	/**
+	 * @return the scanThreads
+	 */
+	public int getScanThreads() {
+		return scanThreads;
+	}
+
+	/**
+	 * @param scanThreads
+	 *            the scanThreads to set
+	 */
+	public void setScanThreads(int scanThreads) {
+		this.scanThreads = scanThreads;
+	}
+
+	/**
+	 * @return the eagerPrepare
+	 */
+	public boolean isEagerPrepare() {
+		return eagerPrepare;
+	}
+
+	/**
+	 * @param eagerPrepare
+	 *            the eagerPrepare to set
+	 */
+	public void setEagerPrepare(boolean eagerPrepare) {
+		this.eagerPrepare = eagerPrepare;
+	}
+
+	/**
+	 * @return the prepareTimeout
+	 */
+	public long getPrepareTimeout() {
+		return prepareTimeout;
+	}
+
+	/**
+	 * @param prepareTimeout
+	 *            the prepareTimeout to set
+	 */
+	public void setPrepareTimeout(long prepareTimeout) {
+		this.prepareTimeout = prepareTimeout;
+	}
+
+	/**
+	 * @return the warmUps
+	 */
+	public List<Map<Object, Object>> getWarmUps() {
+		return warmUps;
+	}
+
+	/**
+	 * @param warmUps
+	 *            the warmUps to set
+	 */
+	public void setWarmUps(List<Map<Object, Object>> warmUps) {
+		this.warmUps = warmUps;
+	}
+
+	/**
+	 * @return the warmUpIterations
+	 */
+	public int getWarmUpIterations() {
+		return warmUpIterations;
+	}
+
+	/**
+	 * @param warmUpIterations
+	 *            the warmUpIterations to set
+	 */
+	public void setWarmUpIterations(int warmUpIterations) {
+		this.warmUpIterations = warmUpIterations;
+	}
+
+	/**
+	 * @return the streamingIngest
+	 */
+	public boolean isStreamingIngest() {
+		return streamingIngest;
+	}
+
+	/**
+	 * @param streamingIngest
+	 *            the streamingIngest to set
+	 */
+	public void setStreamingIngest(boolean streamingIngest) {
+		this.streamingIngest = streamingIngest;
+	}
+
+	/**
+	 * @return the ingestConcurrency
+	 */
+	public int getIngestConcurrency() {
+		return ingestConcurrency;
+	}
+
+	/**
+	 * @param ingestConcurrency
+	 *            the ingestConcurrency to set
+	 */
+	public void setIngestConcurrency(int ingestConcurrency) {
+		if (ingestConcurrency < 1) {
+			throw new IllegalArgumentException(
+					"ingestConcurrency must be greater than 0");
+		}
+		this.ingestConcurrency = ingestConcurrency;
+	}
+
+	/**
+	 * @return the bulkLoad
+	 */
+	public boolean isBulkLoad() {
+		return bulkLoad;
+	}
+
+	/**
+	 * @param bulkLoad
+	 *            the bulkLoad to set
+	 */
+	public void setBulkLoad(boolean bulkLoad) {
+		this.bulkLoad = bulkLoad;
+	}
+
+	/**
+	 * @return the bulkLoadFormat
+	 */
+	public String getBulkLoadFormat() {
+		return bulkLoadFormat;
+	}
+
+	/**
+	 * @param bulkLoadFormat
+	 *            the bulkLoadFormat to set
+	 */
+	public void setBulkLoadFormat(String bulkLoadFormat) {
+		if (bulkLoadFormat != null && !bulkLoadFormat.trim().isEmpty()) {
+			// fail fast on an unknown format
+			CqlBulkLoader.Format.valueOf(bulkLoadFormat.trim().toUpperCase());
+		}
+		this.bulkLoadFormat = bulkLoadFormat;
+	}
+
+	/**
+	 * @return the bulkLoadThreads
+	 */
+	public int getBulkLoadThreads() {
+		return bulkLoadThreads;
+	}
+
+	/**
+	 * @param bulkLoadThreads
+	 *            the bulkLoadThreads to set
+	 */
+	public void setBulkLoadThreads(int bulkLoadThreads) {
+		if (bulkLoadThreads < 1) {
+			throw new IllegalArgumentException(
+					"bulkLoadThreads must be greater than 0");
+		}
+		this.bulkLoadThreads = bulkLoadThreads;
+	}
+
+	/**
+	 * @return the bulkLoadChunkSize
+	 */
+	public long getBulkLoadChunkSize() {
+		return bulkLoadChunkSize;
+	}
+
+	/**
+	 * @param bulkLoadChunkSize
+	 *            the bulkLoadChunkSize to set
+	 */
+	public void setBulkLoadChunkSize(long bulkLoadChunkSize) {
+		// a chunk is mapped as one buffer, which cannot exceed 2GB
+		if (bulkLoadChunkSize < 1 || bulkLoadChunkSize > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException(
+					"bulkLoadChunkSize must be greater than 0 and no greater "
+							+ "than " + Integer.MAX_VALUE);
+		}
+		this.bulkLoadChunkSize = bulkLoadChunkSize;
+	}
+
+	/**
+	 * @return the number of records read by this client's bulk loads,
+	 *         including those in progress
+	 */
+	public long getBulkLoadRecords() {
+		long total = bulkLoadRecords.get();
+		for (CqlBulkLoader loader : bulkLoads) {
+			total += loader.getRecords();
+		}
+		return total;
+	}
+
+	/**
+	 * @return the number of records of this client's bulk loads, including
+	 *         those in progress, that failed
+	 */
+	public long getBulkLoadFailures() {
+		long total = bulkLoadFailures.get();
+		for (CqlBulkLoader loader : bulkLoads) {
+			total += loader.getFailures();
+		}
+		return total;
+	}
+
+	/**
+	 * @return the number of bytes read by this client's bulk loads,
+	 *         including those in progress
+	 */
+	public long getBulkLoadBytes() {
+		long total = bulkLoadBytes.get();
+		for (CqlBulkLoader loader : bulkLoads) {
+			total += loader.getBytes();
+		}
+		return total;
+	}
+
+	/**
+	 * @return the progress (file, records, failed and bytes) of each of this
+	 *         client's bulk loads that is in progress
+	 */
+	public List<Map<String, Object>> getBulkLoadsInProgress() {
+		List<Map<String, Object>> progress = new ArrayList<Map<String, Object>>();
+		for (CqlBulkLoader loader : bulkLoads) {
+			progress.add(loader.getProgress());
+		}
+		return progress;
+	}
+
 }
@@ -58,6 +58,30 @@ public class ClientMapper extends ApplicationObjectSupport {
 
 	private final Map<String, Object> handlerMap = new LinkedHashMap<String, Object>();
 
+	// marks a cached lookup that did not find a handler
+	private static final Object NO_HANDLER = new Object();
+
+	// the max number of context paths whose lookups are cached
+	private int lookupCacheSize = 1024;
+
+	// the cache of context paths to their handlers; i.e., the results of
+	// previous lookups
+	private final Map<String, Object> lookupCache = new LinkedHashMap<String, Object>(
+			16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Object> eldest) {
+			return size() > getLookupCacheSize();
+		}
+	};
+
+	// the compiled form of the registered patterns
+	private volatile ClientPathTrie pathTrie;
+
+	// bumped each time the lookups are invalidated
+	private volatile int generation;
+
 	public ClientMapper() {
 	}
 
@@ -81,6 +105,7 @@ public class ClientMapper extends ApplicationObjectSupport {
 	public void setPathMatcher(PathMatcher pathMatcher) {
 		Assert.notNull(pathMatcher, "PathMatcher must not be null");
 		this.pathMatcher = pathMatcher;
+		invalidateLookups();
 	}
 
 	/**
@@ -127,6 +152,25 @@ public class ClientMapper extends ApplicationObjectSupport {
 		return this.defaultHandler;
 	}
 
+	/**
+	 * Set the max number of context paths whose resolved handlers are cached.
+	 * A value of 0 or less disables the cache. Default is 1024.
+	 * 
+	 * @param lookupCacheSize
+	 *            the lookupCacheSize to set
+	 */
+	public void setLookupCacheSize(int lookupCacheSize) {
+		this.lookupCacheSize = lookupCacheSize;
+		invalidateLookups();
+	}
+
+	/**
+	 * @return the lookupCacheSize
+	 */
+	public int getLookupCacheSize() {
+		return this.lookupCacheSize;
+	}
+
 	/**
 	 * Set whether to lazily initialize handlers. Only applicable to singleton
 	 * handlers, as prototypes are always lazily initialized. Default is
@@ -309,6 +353,19 @@ public class ClientMapper extends ApplicationObjectSupport {
 							+ getHandlerDescription(handler));
 				}
 			}
+			invalidateLookups();
+		}
+	}
+
+	/**
+	 * Clears the cached lookups and the compiled patterns. Both are rebuilt
+	 * on demand by subsequent lookups.
+	 */
+	protected void invalidateLookups() {
+		synchronized (lookupCache) {
+			pathTrie = null;
+			lookupCache.clear();
+			generation++;
 		}
 	}
 
@@ -336,27 +393,69 @@ public class ClientMapper extends ApplicationObjectSupport {
 			LOG.trace("lookupHandler: context path = " + urlPath);
 		}
 
+		// first check the cache of previous lookups
+		Object handler = null;
+		if (getLookupCacheSize() > 0) {
+			synchronized (lookupCache) {
+				handler = lookupCache.get(urlPath);
+			}
+		}
+
+		if (handler == null) {
+			int gen = generation;
+			handler = findHandler(urlPath);
+			// Resolve the bean name now if the bean is a singleton, so that
+			// it is not resolved again by subsequent lookups
+			if (handler instanceof String
+					&& getApplicationContext().isSingleton((String) handler)) {
+				handler = getApplicationContext().getBean((String) handler);
+			}
+			if (getLookupCacheSize() > 0) {
+				synchronized (lookupCache) {
+					// don't cache the result if the handlers were registered
+					// again while the lookup was in progress
+					if (gen == generation) {
+						lookupCache.put(urlPath, (handler == null) ? NO_HANDLER
+								: handler);
+					}
+				}
+			}
+		} else if (LOG.isTraceEnabled()) {
+			LOG.trace("lookupHandler: cached find");
+		}
+
+		if (handler == NO_HANDLER) {
+			return null;
+		}
+		// Bean name or resolved handler?
+		if (handler instanceof String) {
+			String handlerName = (String) handler;
+			handler = getApplicationContext().getBean(handlerName);
+		}
+		return handler;
+	}
+
+	/**
+	 * Returns the registered handler, or handler bean name, that best matches
+	 * the given URL path.
+	 * 
+	 * @param urlPath
+	 * @return the associated handler or <code>null</code> if not found
+	 */
+	private Object findHandler(String urlPath) {
+
 		// See if we have a direct match
 		Object handler = getHandlerMap().get(urlPath);
 		if (handler != null) {
-			// Bean name or resolved handler?
-			if (handler instanceof String) {
-				String handlerName = (String) handler;
-				handler = getApplicationContext().getBean(handlerName);
-			}
 			if (LOG.isTraceEnabled()) {
 				LOG.trace("lookupHandler: direct find");
 			}
 			return handler;
 		}
 
-		// No direct match, look for a pattern match
-		List<String> matchingPatterns = new ArrayList<String>();
-		for (String registeredPattern : getHandlerMap().keySet()) {
-			if (getPathMatcher().match(registeredPattern, urlPath)) {
-				matchingPatterns.add(registeredPattern);
-			}
-		}
+		// No direct match, look for a pattern match among those patterns
+		// whose literal prefix matches the path
+		List<String> matchingPatterns = getPathTrie().getMatches(urlPath);
 
 		if (LOG.isTraceEnabled()) {
 			LOG.trace("lookupHandler: found this many matching patterns = "
@@ -364,10 +463,12 @@ public class ClientMapper extends ApplicationObjectSupport {
 		}
 
 		String bestPatternMatch = null;
-		Comparator<String> patternComparator = getPathMatcher()
-				.getPatternComparator(urlPath);
 		if (!matchingPatterns.isEmpty()) {
-			Collections.sort(matchingPatterns, patternComparator);
+			if (matchingPatterns.size() > 1) {
+				Comparator<String> patternComparator = getPathMatcher()
+						.getPatternComparator(urlPath);
+				Collections.sort(matchingPatterns, patternComparator);
+			}
 			if (LOG.isTraceEnabled()) {
 				LOG.trace("Matching patterns for request [" + urlPath
 						+ "] are " + matchingPatterns);
@@ -375,19 +476,34 @@ public class ClientMapper extends ApplicationObjectSupport {
 			bestPatternMatch = matchingPatterns.get(0);
 		}
 		if (bestPatternMatch != null) {
-			handler = this.getHandlerMap().get(bestPatternMatch);
-			// Bean name or resolved handler?
-			if (handler instanceof String) {
-				String handlerName = (String) handler;
-				handler = getApplicationContext().getBean(handlerName);
-			}
-			return handler;
-
+			return this.getHandlerMap().get(bestPatternMatch);
 		}
 		// No handler found...
 		return null;
 	}
 
+	/**
+	 * Returns the compiled form of the registered patterns, compiling them if
+	 * they have not yet been compiled.
+	 * 
+	 * @return
+	 */
+	private ClientPathTrie getPathTrie() {
+		ClientPathTrie trie = pathTrie;
+		if (trie == null) {
+			synchronized (lookupCache) {
+				trie = pathTrie;
+				if (trie == null) {
+					trie = new ClientPathTrie(
+							new ArrayList<String>(handlerMap.keySet()),
+							getPathMatcher());
+					pathTrie = trie;
+				}
+			}
+		}
+		return trie;
+	}
+
 	private String getHandlerDescription(Object handler) {
 		return "handler "
 				+ (handler instanceof String ? "'" + handler + "'"
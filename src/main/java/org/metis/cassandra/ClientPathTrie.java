@@ -0,0 +1,208 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.metis.cassandra;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import org.springframework.util.AntPathMatcher;
+import org.springframework.util.PathMatcher;
+import org.springframework.util.StringUtils;
+
+/**
+ * A compiled form of the ClientMapper's registered path patterns. The patterns
+ * are placed in a prefix trie that is keyed by their leading literal segments,
+ * so that a lookup only considers those patterns whose literal prefix matches
+ * the given path. The remaining wildcard segments of each pattern are
+ * precompiled, which allows most of the candidates to be rejected without
+ * running the PathMatcher. The candidates that survive are confirmed by the
+ * PathMatcher, so the outcome is the same as matching the path against every
+ * registered pattern.
+ */
+class ClientPathTrie {
+
+	private static final String SEPARATOR = "/";
+
+	// marks a segment that matches zero or more segments
+	private static final Object ANY_SEGMENTS = new Object();
+
+	// marks a segment that matches any one segment
+	private static final Object ANY_SEGMENT = new Object();
+
+	private final PathMatcher pathMatcher;
+
+	private final Node root = new Node();
+
+	// the trie can only be used with the ant-style matcher and its default
+	// separator; otherwise, all the patterns are candidates
+	private final boolean pruning;
+
+	ClientPathTrie(Collection<String> patterns, PathMatcher pathMatcher) {
+		this.pathMatcher = pathMatcher;
+		this.pruning = pathMatcher.getClass() == AntPathMatcher.class;
+		for (String pattern : patterns) {
+			add(pattern);
+		}
+	}
+
+	private void add(String pattern) {
+		if (!pruning) {
+			root.add(new Compiled(pattern, null));
+			return;
+		}
+		String[] segments = tokenize(pattern);
+		Node node = root;
+		int i = 0;
+		for (; i < segments.length && !isWildcard(segments[i]); i++) {
+			Node child = node.children.get(segments[i]);
+			if (child == null) {
+				child = new Node();
+				node.children.put(segments[i], child);
+			}
+			node = child;
+		}
+		// precompile the segments that follow the literal prefix
+		Object[] rest = new Object[segments.length - i];
+		for (int j = 0; j < rest.length; j++) {
+			rest[j] = compile(segments[i + j]);
+		}
+		node.add(new Compiled(pattern, rest));
+	}
+
+	/**
+	 * Returns the registered patterns that match the given path.
+	 * 
+	 * @param path
+	 * @return
+	 */
+	List<String> getMatches(String path) {
+		List<String> matches = new ArrayList<String>();
+		if (!pruning) {
+			for (Compiled compiled : root.patterns) {
+				if (pathMatcher.match(compiled.pattern, path)) {
+					matches.add(compiled.pattern);
+				}
+			}
+			return matches;
+		}
+		String[] segments = tokenize(path);
+		Node node = root;
+		for (int i = 0; node != null; i++) {
+			for (Compiled compiled : node.patterns) {
+				if (compiled.matches(segments, i)
+						&& pathMatcher.match(compiled.pattern, path)) {
+					matches.add(compiled.pattern);
+				}
+			}
+			node = (i < segments.length) ? node.children.get(segments[i])
+					: null;
+		}
+		return matches;
+	}
+
+	private static String[] tokenize(String path) {
+		return StringUtils.tokenizeToStringArray(path, SEPARATOR);
+	}
+
+	private static boolean isWildcard(String segment) {
+		return segment.indexOf('*') >= 0 || segment.indexOf('?') >= 0
+				|| segment.indexOf('{') >= 0;
+	}
+
+	/*
+	 * Compiles a segment into either a literal String, one of the two
+	 * wildcard markers, or a regex Pattern. URI template segments are treated
+	 * as matching any one segment and left to the PathMatcher.
+	 */
+	private static Object compile(String segment) {
+		if (segment.equals("**")) {
+			return ANY_SEGMENTS;
+		} else if (segment.equals("*") || segment.indexOf('{') >= 0) {
+			return ANY_SEGMENT;
+		} else if (!isWildcard(segment)) {
+			return segment;
+		}
+		StringBuilder sb = new StringBuilder();
+		int start = 0;
+		for (int i = 0; i < segment.length(); i++) {
+			char c = segment.charAt(i);
+			if (c == '*' || c == '?') {
+				sb.append(Pattern.quote(segment.substring(start, i)));
+				sb.append(c == '*' ? ".*" : ".");
+				start = i + 1;
+			}
+		}
+		sb.append(Pattern.quote(segment.substring(start)));
+		return Pattern.compile(sb.toString());
+	}
+
+	private static final class Node {
+		private final Map<String, Node> children = new HashMap<String, Node>();
+		private final List<Compiled> patterns = new ArrayList<Compiled>();
+
+		private void add(Compiled compiled) {
+			patterns.add(compiled);
+		}
+	}
+
+	private static final class Compiled {
+		private final String pattern;
+		private final Object[] segments;
+
+		private Compiled(String pattern, Object[] segments) {
+			this.pattern = pattern;
+			this.segments = segments;
+		}
+
+		/*
+		 * A relaxed test of the path's segments, starting at the given
+		 * offset, against this pattern's compiled segments. It never rejects
+		 * a path that the PathMatcher would accept.
+		 */
+		private boolean matches(String[] path, int offset) {
+			return matches(path, offset, 0);
+		}
+
+		private boolean matches(String[] path, int p, int s) {
+			for (; s < segments.length; s++, p++) {
+				Object segment = segments[s];
+				if (segment == ANY_SEGMENTS) {
+					for (int i = p; i <= path.length; i++) {
+						if (matches(path, i, s + 1)) {
+							return true;
+						}
+					}
+					return false;
+				} else if (p >= path.length) {
+					// a trailing '*' also matches a trailing separator
+					return segment == ANY_SEGMENT && s == segments.length - 1;
+				} else if (segment == ANY_SEGMENT) {
+					continue;
+				} else if (segment instanceof String) {
+					if (!segment.equals(path[p])) {
+						return false;
+					}
+				} else if (!((Pattern) segment).matcher(path[p]).matches()) {
+					return false;
+				}
+			}
+			return p == path.length;
+		}
+	}
+
+}
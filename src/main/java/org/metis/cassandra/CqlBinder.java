@@ -0,0 +1,390 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.metis.cassandra;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.text.DateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+import org.metis.utils.Utils;
+
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.DataType;
+import com.datastax.driver.core.LocalDate;
+
+/**
+ * Binds a parameterized token's String value to each of the token's
+ * positions in a BoundStatement. A binder is compiled once for a token's CQL
+ * type, so that binding a value does not have to switch on the type, box the
+ * parsed value, or iterate over a List of boxed positions. A binder also
+ * parses the elements of the token's collection (if any).
+ */
+abstract class CqlBinder {
+
+	// the positions of the token in the bound statement
+	protected final int[] positions;
+
+	CqlBinder(List<Integer> positions) {
+		this.positions = new int[positions.size()];
+		for (int i = 0; i < this.positions.length; i++) {
+			this.positions[i] = positions.get(i);
+		}
+	}
+
+	/**
+	 * Parses the given value and binds it to each of this binder's positions
+	 * in the given statement.
+	 */
+	abstract void bind(BoundStatement bs, String value) throws Exception;
+
+	/**
+	 * Parses the given collection element.
+	 */
+	abstract Object parse(String value) throws Exception;
+
+	/**
+	 * Returns true if parse() returns the given value as is; in which case a
+	 * collection of Strings can be bound without being copied.
+	 */
+	boolean isIdentity() {
+		return false;
+	}
+
+	/**
+	 * @return the positions
+	 */
+	int[] getPositions() {
+		return positions;
+	}
+
+	/**
+	 * Returns the binder for the given CQL type. A type that is none of the
+	 * below is bound as a String.
+	 */
+	static CqlBinder getBinder(DataType.Name type, List<Integer> positions) {
+		if (type == null) {
+			return new StringBinder(positions);
+		}
+		switch (type) {
+		case BLOB:
+			return new BlobBinder(positions);
+		case DECIMAL:
+			return new DecimalBinder(positions);
+		case VARINT:
+			return new VarintBinder(positions);
+		case BOOLEAN:
+			return new BooleanBinder(positions);
+		case INET:
+			return new InetBinder(positions);
+		case INT:
+			return new IntBinder(positions);
+		case SMALLINT:
+			return new ShortBinder(positions);
+		case TINYINT:
+			return new ByteBinder(positions);
+		case BIGINT:
+		case COUNTER:
+		case TIME:
+			return new LongBinder(positions);
+		case FLOAT:
+			return new FloatBinder(positions);
+		case DOUBLE:
+			return new DoubleBinder(positions);
+		case DATE:
+			return new DateBinder(positions);
+		case TIMESTAMP:
+			return new TimestampBinder(positions);
+		case TIMEUUID:
+		case UUID:
+			return new UUIDBinder(positions);
+		default:
+			return new StringBinder(positions);
+		}
+	}
+
+	private static final class BlobBinder extends CqlBinder {
+		BlobBinder(List<Integer> positions) {
+			super(positions);
+		}
+
+		void bind(BoundStatement bs, String value) {
+			ByteBuffer bb = parse(value);
+			for (int pos : positions) {
+				bs.setBytes(pos, bb);
+			}
+		}
+
+		ByteBuffer parse(String value) {
+			return ByteBuffer.wrap(value.getBytes());
+		}
+	}
+
+	private static final class DecimalBinder extends CqlBinder {
+		DecimalBinder(List<Integer> positions) {
+			super(positions);
+		}
+
+		void bind(BoundStatement bs, String value) {
+			BigDecimal bd = parse(value);
+			for (int pos : positions) {
+				bs.setDecimal(pos, bd);
+			}
+		}
+
+		BigDecimal parse(String value) {
+			return new BigDecimal(value);
+		}
+	}
+
+	private static final class VarintBinder extends CqlBinder {
+		VarintBinder(List<Integer> positions) {
+			super(positions);
+		}
+
+		void bind(BoundStatement bs, String value) {
+			BigInteger bi = parse(value);
+			for (int pos : positions) {
+				bs.setVarint(pos, bi);
+			}
+		}
+
+		BigInteger parse(String value) {
+			return new BigInteger(value);
+		}
+	}
+
+	private static final class BooleanBinder extends CqlBinder {
+		BooleanBinder(List<Integer> positions) {
+			super(positions);
+		}
+
+		void bind(BoundStatement bs, String value) {
+			String trimmed = value.trim();
+			if (!trimmed.equalsIgnoreCase("true")
+					&& !trimmed.equalsIgnoreCase("false")) {
+				CqlToken.LOG
+						.error("this value is set to neither 'true' nor 'false' :"
+								+ value);
+				throw new NumberFormatException(
+						"this value is set to neither 'true' nor 'false' :"
+								+ value);
+			}
+			boolean b = Boolean.parseBoolean(value);
+			for (int pos : positions) {
+				bs.setBool(pos, b);
+			}
+		}
+
+		Boolean parse(String value) {
+			return Boolean.valueOf(value);
+		}
+	}
+
+	private static final class InetBinder extends CqlBinder {
+		InetBinder(List<Integer> positions) {
+			super(positions);
+		}
+
+		void bind(BoundStatement bs, String value) throws Exception {
+			InetAddress inet = parse(value);
+			for (int pos : positions) {
+				bs.setInet(pos, inet);
+			}
+		}
+
+		InetAddress parse(String value) throws Exception {
+			return InetAddress.getByName(value);
+		}
+	}
+
+	private static final class IntBinder extends CqlBinder {
+		IntBinder(List<Integer> positions) {
+			super(positions);
+		}
+
+		void bind(BoundStatement bs, String value) {
+			int i = Integer.parseInt(value);
+			for (int pos : positions) {
+				bs.setInt(pos, i);
+			}
+		}
+
+		Integer parse(String value) {
+			return Integer.valueOf(value);
+		}
+	}
+
+	private static final class ShortBinder extends CqlBinder {
+		ShortBinder(List<Integer> positions) {
+			super(positions);
+		}
+
+		void bind(BoundStatement bs, String value) {
+			short s = Short.parseShort(value);
+			for (int pos : positions) {
+				bs.setShort(pos, s);
+			}
+		}
+
+		Short parse(String value) {
+			return Short.valueOf(value);
+		}
+	}
+
+	private static final class ByteBinder extends CqlBinder {
+		ByteBinder(List<Integer> positions) {
+			super(positions);
+		}
+
+		void bind(BoundStatement bs, String value) {
+			byte b = Byte.parseByte(value);
+			for (int pos : positions) {
+				bs.setByte(pos, b);
+			}
+		}
+
+		Byte parse(String value) {
+			return Byte.valueOf(value);
+		}
+	}
+
+	private static final class LongBinder extends CqlBinder {
+		LongBinder(List<Integer> positions) {
+			super(positions);
+		}
+
+		void bind(BoundStatement bs, String value) {
+			long l = Long.parseLong(value);
+			for (int pos : positions) {
+				bs.setLong(pos, l);
+			}
+		}
+
+		Long parse(String value) {
+			return Long.valueOf(value);
+		}
+	}
+
+	private static final class FloatBinder extends CqlBinder {
+		FloatBinder(List<Integer> positions) {
+			super(positions);
+		}
+
+		void bind(BoundStatement bs, String value) {
+			float f = Float.parseFloat(value);
+			for (int pos : positions) {
+				bs.setFloat(pos, f);
+			}
+		}
+
+		Float parse(String value) {
+			return Float.valueOf(value);
+		}
+	}
+
+	private static final class DoubleBinder extends CqlBinder {
+		DoubleBinder(List<Integer> positions) {
+			super(positions);
+		}
+
+		void bind(BoundStatement bs, String value) {
+			double d = Double.parseDouble(value);
+			for (int pos : positions) {
+				bs.setDouble(pos, d);
+			}
+		}
+
+		Double parse(String value) {
+			return Double.valueOf(value);
+		}
+	}
+
+	private static final class DateBinder extends CqlBinder {
+		DateBinder(List<Integer> positions) {
+			super(positions);
+		}
+
+		void bind(BoundStatement bs, String value) {
+			LocalDate lDate = parse(value);
+			for (int pos : positions) {
+				bs.setDate(pos, lDate);
+			}
+		}
+
+		LocalDate parse(String value) {
+			return Utils.getLocalDate(value);
+		}
+	}
+
+	private static final class TimestampBinder extends CqlBinder {
+		TimestampBinder(List<Integer> positions) {
+			super(positions);
+		}
+
+		void bind(BoundStatement bs, String value) throws Exception {
+			Date date = parse(value);
+			for (int pos : positions) {
+				bs.setTimestamp(pos, date);
+			}
+		}
+
+		// DateFormat is not thread-safe, so one is created per parse
+		Date parse(String value) throws Exception {
+			return DateFormat.getDateInstance().parse(value);
+		}
+	}
+
+	private static final class UUIDBinder extends CqlBinder {
+		UUIDBinder(List<Integer> positions) {
+			super(positions);
+		}
+
+		void bind(BoundStatement bs, String value) {
+			UUID uuid = parse(value);
+			for (int pos : positions) {
+				bs.setUUID(pos, uuid);
+			}
+		}
+
+		UUID parse(String value) {
+			return UUID.fromString(value);
+		}
+	}
+
+	private static final class StringBinder extends CqlBinder {
+		StringBinder(List<Integer> positions) {
+			super(positions);
+		}
+
+		void bind(BoundStatement bs, String value) {
+			for (int pos : positions) {
+				bs.setString(pos, value);
+			}
+		}
+
+		String parse(String value) {
+			return value;
+		}
+
+		boolean isIdentity() {
+			return true;
+		}
+	}
+
+}
@@ -0,0 +1,535 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.metis.cassandra;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.camel.Message;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.Session;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+
+/**
+ * Loads a CSV or JSON Lines file into Cassandra. The file is split into
+ * chunks, on line boundaries, and each chunk is memory-mapped and parsed by
+ * one of threads threads. Each record is matched, by its key set, to one of
+ * the Client's INSERT statements and executed asynchronously, with no more
+ * than concurrency statements in flight across all the threads.
+ * <p>
+ * The first line of a CSV file is its header, which gives the keys of the
+ * records' fields. A field may be quoted, as per RFC 4180, but a record may
+ * not span lines. Each line of a JSON Lines file is a JSON object.
+ * <p>
+ * Progress is logged every PROGRESS_INTERVAL milliseconds. A record that
+ * cannot be parsed, matched or written is counted as failed and the first
+ * MAX_FAILURES of them are reported by line number.
+ */
+final class CqlBulkLoader {
+
+	private static final Logger LOG = LoggerFactory
+			.getLogger(CqlBulkLoader.class);
+
+	private static final long PROGRESS_INTERVAL = 5000L;
+	static final int MAX_FAILURES = 100;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final ObjectMapper MAPPER = CqlCodec.JSON.getMapper();
+
+	/**
+	 * The formats of the files that can be loaded.
+	 */
+	enum Format {
+		CSV, JSONL;
+
+		/**
+		 * Returns the format given by name (e.g., "csv"), else by the given
+		 * file's extension; a file that is not a ".csv" is taken to be JSON
+		 * Lines.
+		 */
+		static Format forFile(String name, File file) {
+			if (name != null && !name.trim().isEmpty()) {
+				return Format.valueOf(name.trim().toUpperCase());
+			}
+			return file.getName().toLowerCase().endsWith(".csv") ? CSV
+					: JSONL;
+		}
+	}
+
+	private final Client client;
+	private final File file;
+	private final Format format;
+	private final Message inMsg;
+	private final int threads;
+	private final int concurrency;
+	private final long chunkSize;
+	// a permit for each statement that may be in flight
+	private final Semaphore permits;
+	private final ConcurrentMap<Set<String>, CqlStmnt> stmnts = new ConcurrentHashMap<Set<String>, CqlStmnt>();
+	private final AtomicLong records = new AtomicLong();
+	private final AtomicLong failures = new AtomicLong();
+	private final AtomicLong bytes = new AtomicLong();
+	private volatile long size;
+	private List<String> header;
+	private Map<Integer, String> failedLines = Collections.emptyMap();
+
+	CqlBulkLoader(Client client, File file, Format format, Message inMsg,
+			int threads, int concurrency, long chunkSize) {
+		this.client = client;
+		this.file = file;
+		this.format = format;
+		this.inMsg = inMsg;
+		this.threads = threads;
+		this.concurrency = concurrency;
+		this.chunkSize = chunkSize;
+		this.permits = new Semaphore(concurrency);
+	}
+
+	/**
+	 * Loads the file and returns a summary of the load. Throws an exception
+	 * if the file cannot be read; the failure of a record does not fail the
+	 * load.
+	 */
+	Map<String, Object> load() throws Exception {
+		long start = System.currentTimeMillis();
+		Session session = client.getSession();
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			size = channel.size();
+			long dataStart = skipBom(channel);
+			// the header line of a CSV file is not a record
+			int firstLine = 1;
+			if (format == Format.CSV) {
+				long headerEnd = getLineEnd(channel, dataStart, size);
+				header = new ArrayList<String>();
+				for (String key : parseCsv(trimLine(read(channel, dataStart,
+						headerEnd)))) {
+					header.add(key.trim());
+				}
+				dataStart = headerEnd;
+				firstLine = 2;
+			}
+			bytes.set(dataStart);
+			List<Chunk> chunks = getChunks(channel, dataStart, size,
+					chunkSize);
+			LOG.info(client.getBeanName() + ":load: loading {} ({} bytes) "
+					+ "as {} in {} chunks", file, size, format, chunks.size());
+			load(channel, chunks, session);
+			failedLines = getFailedLines(chunks, firstLine);
+		} finally {
+			raf.close();
+		}
+		Map<String, Object> summary = new LinkedHashMap<String, Object>();
+		summary.put("file", file.getPath());
+		summary.put("records", records.get());
+		summary.put("failed", failures.get());
+		summary.put("bytes", size);
+		summary.put("millis", System.currentTimeMillis() - start);
+		LOG.info(client.getBeanName() + ":load: loaded {}", summary);
+		return summary;
+	}
+
+	/**
+	 * Parses and writes the given chunks on a pool of threads and waits for
+	 * all of their statements to complete.
+	 */
+	private void load(final FileChannel channel, List<Chunk> chunks,
+			final Session session) throws Exception {
+		final AtomicInteger threadCount = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(
+				Math.max(1, Math.min(threads, chunks.size())),
+				new ThreadFactory() {
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, client.getBeanName()
+								+ "-bulk-load-"
+								+ threadCount.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		CompletionService<Void> completion = new ExecutorCompletionService<Void>(
+				executor);
+		try {
+			for (final Chunk chunk : chunks) {
+				completion.submit(new Callable<Void>() {
+					public Void call() throws Exception {
+						load(channel, chunk, session);
+						return null;
+					}
+				});
+			}
+			int done = 0;
+			while (done < chunks.size()) {
+				Future<Void> future = completion.poll(PROGRESS_INTERVAL,
+						TimeUnit.MILLISECONDS);
+				if (future == null) {
+					LOG.info(client.getBeanName() + ":load: {} of {} bytes, "
+							+ "{} records, {} failed", bytes.get(), size,
+							records.get(), failures.get());
+					continue;
+				}
+				try {
+					future.get();
+				} catch (ExecutionException exc) {
+					Throwable cause = exc.getCause();
+					throw (cause instanceof Exception) ? (Exception) cause : exc;
+				}
+				done++;
+			}
+		} finally {
+			executor.shutdownNow();
+			// wait for the statements that are still in flight
+			permits.acquireUninterruptibly(concurrency);
+			permits.release(concurrency);
+			for (CqlStmnt cqlStmnt : new HashSet<CqlStmnt>(stmnts.values())) {
+				client.invalidateCached(cqlStmnt, null);
+			}
+		}
+	}
+
+	/**
+	 * Maps the given chunk of the file and writes each of its records.
+	 */
+	private void load(FileChannel channel, Chunk chunk, Session session)
+			throws Exception {
+		MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY,
+				chunk.start, chunk.end - chunk.start);
+		int limit = buffer.limit();
+		byte[] line = new byte[1024];
+		int lineStart = 0;
+		int lineNo = 0;
+		for (int i = 0; i <= limit; i++) {
+			if (i < limit && buffer.get(i) != '\n') {
+				continue;
+			}
+			if (i == limit && lineStart == limit) {
+				break;
+			}
+			int length = i - lineStart;
+			if (length > 0 && buffer.get(lineStart + length - 1) == '\r') {
+				length--;
+			}
+			if (length > 0) {
+				if (line.length < length) {
+					line = new byte[Math.max(length, line.length * 2)];
+				}
+				buffer.position(lineStart);
+				buffer.get(line, 0, length);
+				write(chunk, lineNo, line, length, session);
+			}
+			bytes.addAndGet(i + 1 - lineStart);
+			lineNo++;
+			lineStart = i + 1;
+		}
+		chunk.lines = lineNo;
+	}
+
+	/**
+	 * Parses the given record, which is on the given line of the given
+	 * chunk, and writes it.
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private void write(final Chunk chunk, final int lineNo, byte[] line,
+			int length, Session session) throws InterruptedException {
+		records.incrementAndGet();
+		Map<String, Object> map = null;
+		try {
+			map = parse(line, length);
+		} catch (Exception exc) {
+			fail(chunk, lineNo, "unable to parse record: " + exc.getMessage());
+			return;
+		}
+		CqlStmnt cqlStmnt = getStmnt(map.keySet());
+		if (cqlStmnt == null) {
+			fail(chunk, lineNo, "this key set could not be mapped to an "
+					+ "INSERT statement: " + map.keySet());
+			return;
+		}
+
+		permits.acquire();
+		ResultSetFuture future = null;
+		try {
+			future = client.executeLimitedAsync(cqlStmnt, map, inMsg,
+					session, true, true);
+		} catch (RuntimeException exc) {
+			permits.release();
+			fail(chunk, lineNo, exc.toString());
+			return;
+		}
+		if (future == null) {
+			permits.release();
+			fail(chunk, lineNo, "unable to bind CQL statement");
+			return;
+		}
+		Futures.addCallback(future, new FutureCallback<ResultSet>() {
+			public void onSuccess(ResultSet rs) {
+				permits.release();
+			}
+
+			public void onFailure(Throwable t) {
+				fail(chunk, lineNo, t.toString());
+				permits.release();
+			}
+		});
+	}
+
+	@SuppressWarnings("unchecked")
+	private Map<String, Object> parse(byte[] line, int length)
+			throws Exception {
+		if (format == Format.JSONL) {
+			return MAPPER.readValue(line, 0, length, Map.class);
+		}
+		List<String> fields = parseCsv(new String(line, 0, length, UTF8));
+		if (fields.size() != header.size()) {
+			throw new Exception("record has " + fields.size()
+					+ " fields, but the header has " + header.size());
+		}
+		Map<String, Object> map = new HashMap<String, Object>();
+		for (int i = 0; i < fields.size(); i++) {
+			map.put(header.get(i), fields.get(i));
+		}
+		return map;
+	}
+
+	/**
+	 * Returns the INSERT statement that matches the given key set, or null
+	 * if there is none.
+	 */
+	private CqlStmnt getStmnt(Set<String> keys) {
+		CqlStmnt cqlStmnt = stmnts.get(keys);
+		if (cqlStmnt == null) {
+			cqlStmnt = client.getInsertStmnt(keys);
+			if (cqlStmnt != null) {
+				stmnts.putIfAbsent(new HashSet<String>(keys), cqlStmnt);
+			}
+		}
+		return cqlStmnt;
+	}
+
+	private void fail(Chunk chunk, int lineNo, String reason) {
+		failures.incrementAndGet();
+		if (chunk.failures.size() < MAX_FAILURES) {
+			chunk.failures.put(lineNo, reason);
+		}
+	}
+
+	/**
+	 * Splits the file, from the given position on, into chunks of about
+	 * chunkSize bytes that end on line boundaries. The given size is that of
+	 * the file.
+	 */
+	static List<Chunk> getChunks(FileChannel channel, long start, long size,
+			long chunkSize) throws IOException {
+		List<Chunk> chunks = new ArrayList<Chunk>();
+		while (start < size) {
+			long end = (size - start <= chunkSize) ? size : getLineEnd(
+					channel, start + chunkSize - 1, size);
+			chunks.add(new Chunk(start, end));
+			start = end;
+		}
+		return chunks;
+	}
+
+	/**
+	 * Returns the position just past the end of the line that the given
+	 * position is on; or the size of the file, if the line is its last.
+	 */
+	static long getLineEnd(FileChannel channel, long position, long size)
+			throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(8192);
+		while (position < size) {
+			buffer.clear();
+			int n = channel.read(buffer, position);
+			if (n <= 0) {
+				break;
+			}
+			for (int i = 0; i < n; i++) {
+				if (buffer.get(i) == '\n') {
+					return position + i + 1;
+				}
+			}
+			position += n;
+		}
+		return size;
+	}
+
+	// returns the position of the first byte past a UTF-8 byte order mark
+	private long skipBom(FileChannel channel) throws IOException {
+		byte[] bom = read(channel, 0, Math.min(3, size));
+		return (bom.length == 3 && (bom[0] & 0xff) == 0xef
+				&& (bom[1] & 0xff) == 0xbb && (bom[2] & 0xff) == 0xbf) ? 3 : 0;
+	}
+
+	private byte[] read(FileChannel channel, long start, long end)
+			throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate((int) (end - start));
+		while (buffer.hasRemaining()
+				&& channel.read(buffer, start + buffer.position()) > 0) {
+		}
+		return buffer.array();
+	}
+
+	// strips the line terminator from the given line
+	private static String trimLine(byte[] line) {
+		String str = new String(line, UTF8);
+		int end = str.length();
+		while (end > 0 && Character.isISOControl(str.charAt(end - 1))) {
+			end--;
+		}
+		return str.substring(0, end);
+	}
+
+	/**
+	 * Splits the given CSV line into its fields. A field that is enclosed in
+	 * double quotes may contain commas and doubled double quotes.
+	 */
+	static List<String> parseCsv(String line) {
+		List<String> fields = new ArrayList<String>();
+		StringBuilder field = new StringBuilder();
+		boolean quoted = false;
+		for (int i = 0; i < line.length(); i++) {
+			char c = line.charAt(i);
+			if (quoted) {
+				if (c != '"') {
+					field.append(c);
+				} else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+					field.append('"');
+					i++;
+				} else {
+					quoted = false;
+				}
+			} else if (c == '"') {
+				quoted = true;
+			} else if (c == ',') {
+				fields.add(field.toString());
+				field.setLength(0);
+			} else {
+				field.append(c);
+			}
+		}
+		fields.add(field.toString());
+		return fields;
+	}
+
+	/**
+	 * Returns the first MAX_FAILURES failed records, keyed by their line
+	 * numbers in the file.
+	 */
+	static Map<Integer, String> getFailedLines(List<Chunk> chunks,
+			int firstLine) {
+		Map<Integer, String> failedLines = new TreeMap<Integer, String>();
+		int line = firstLine;
+		for (Chunk chunk : chunks) {
+			for (Map.Entry<Integer, String> entry : chunk.failures.entrySet()) {
+				if (failedLines.size() >= MAX_FAILURES) {
+					return failedLines;
+				}
+				failedLines.put(line + entry.getKey(), entry.getValue());
+			}
+			line += chunk.lines;
+		}
+		return failedLines;
+	}
+
+	/**
+	 * @return the records that failed, keyed by their line numbers
+	 */
+	Map<Integer, String> getFailedLines() {
+		return failedLines;
+	}
+
+	/**
+	 * Returns the progress of the load, so far: its file and the number of
+	 * records read, records failed and bytes read.
+	 */
+	Map<String, Object> getProgress() {
+		Map<String, Object> progress = new LinkedHashMap<String, Object>();
+		progress.put("file", file.getPath());
+		progress.put("records", records.get());
+		progress.put("failed", failures.get());
+		progress.put("bytes", bytes.get());
+		return progress;
+	}
+
+	/**
+	 * @return the number of records read so far
+	 */
+	long getRecords() {
+		return records.get();
+	}
+
+	/**
+	 * @return the number of records that failed so far
+	 */
+	long getFailures() {
+		return failures.get();
+	}
+
+	/**
+	 * @return the number of bytes read so far
+	 */
+	long getBytes() {
+		return bytes.get();
+	}
+
+	static final class Chunk {
+		final long start;
+		final long end;
+		// the number of lines in the chunk, once it has been loaded
+		int lines;
+		// the chunk's failed records, by line within the chunk
+		final Map<Integer, String> failures = new ConcurrentSkipListMap<Integer, String>();
+
+		Chunk(long start, long end) {
+			this.start = start;
+			this.end = end;
+		}
+	}
+
+}
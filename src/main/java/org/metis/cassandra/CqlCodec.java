@@ -0,0 +1,98 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.metis.cassandra;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+/**
+ * The formats in which a Client can receive its input Maps and return its
+ * result rows. Each codec is a Jackson data format; so, the binary codecs
+ * (Smile and CBOR) share the same parsing and generating paths as JSON and
+ * differ only in their factory.
+ */
+public enum CqlCodec {
+
+	JSON("application/json", new JsonFactory()),
+
+	SMILE("application/x-jackson-smile", new SmileFactory()),
+
+	CBOR("application/cbor", new CBORFactory());
+
+	// the name of the endpoint (URI) option used for selecting a codec
+	public static final String CODEC_OPTION = "codec";
+
+	private final String contentType;
+	private final ObjectMapper mapper;
+
+	private CqlCodec(String contentType, JsonFactory factory) {
+		this.contentType = contentType;
+		this.mapper = new ObjectMapper(factory);
+	}
+
+	/**
+	 * @return the media type of this codec's payloads
+	 */
+	public String getContentType() {
+		return contentType;
+	}
+
+	/**
+	 * @return the thread-safe mapper used for reading and writing this
+	 *         codec's payloads
+	 */
+	public ObjectMapper getMapper() {
+		return mapper;
+	}
+
+	/**
+	 * @return true if this codec's payloads are binary and not text
+	 */
+	public boolean isBinary() {
+		return this != JSON;
+	}
+
+	/**
+	 * Returns the codec for the given codec name (e.g., "smile") or media type
+	 * (e.g., "application/x-jackson-smile; charset=UTF-8"), or null if there is
+	 * no such codec.
+	 * 
+	 * @param value
+	 * @return
+	 */
+	public static CqlCodec forName(String value) {
+		if (value == null) {
+			return null;
+		}
+		String name = value.trim();
+		int i = name.indexOf(';');
+		if (i >= 0) {
+			name = name.substring(0, i).trim();
+		}
+		for (CqlCodec codec : values()) {
+			if (codec.name().equalsIgnoreCase(name)
+					|| codec.getContentType().equalsIgnoreCase(name)) {
+				return codec;
+			}
+		}
+		// e.g., "application/smile"
+		if (name.toLowerCase().endsWith("smile")) {
+			return SMILE;
+		}
+		return null;
+	}
+
+}
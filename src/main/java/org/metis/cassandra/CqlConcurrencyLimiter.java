@@ -0,0 +1,273 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.metis.cassandra;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.exceptions.BusyConnectionException;
+import com.datastax.driver.core.exceptions.NoHostAvailableException;
+import com.datastax.driver.core.exceptions.OperationTimedOutException;
+import com.datastax.driver.core.exceptions.OverloadedException;
+import com.datastax.driver.core.exceptions.ReadTimeoutException;
+import com.datastax.driver.core.exceptions.WriteTimeoutException;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+
+/**
+ * The adaptive concurrency limiter of a Client. A request must be admitted by
+ * the limiter before it is sent and it is released when it completes. The
+ * limit on the number of requests in flight is adjusted, as each request
+ * completes, by the gradient between the no-load round trip time (RTT) and
+ * the smoothed RTT of the recent requests:
+ * 
+ * <pre>
+ * gradient = max(0.5, min(1.0, tolerance * noLoadRtt / smoothedRtt))
+ * limit = limit * gradient + sqrt(limit)
+ * </pre>
+ * 
+ * So, the limit grows while the RTT stays within tolerance of the no-load RTT
+ * and shrinks once requests start to queue up in the driver or on the
+ * coordinators. A request that times out or is rejected as overloaded cuts
+ * the limit by a tenth. The no-load RTT is the least RTT seen over a window of
+ * samples, so that it follows the cluster as it changes.
+ * <p>
+ * A request that is not admitted right away is either rejected or, if the
+ * queueTimeout is greater than 0, waits up to that many milliseconds for a
+ * request to complete.
+ */
+final class CqlConcurrencyLimiter {
+
+	private static final Logger LOG = LoggerFactory
+			.getLogger(CqlConcurrencyLimiter.class);
+
+	// the number of samples after which the no-load RTT is re-taken
+	private static final int NO_LOAD_WINDOW = 1000;
+	// the weight of a new sample in the smoothed RTT and new limit
+	private static final double RTT_SMOOTHING = 0.1;
+	private static final double LIMIT_SMOOTHING = 0.2;
+	private static final double BACKOFF = 0.9;
+
+	private final String name;
+	private final int minLimit;
+	private final int maxLimit;
+	private final double tolerance;
+	private final long queueTimeout;
+	private final AtomicInteger inFlight = new AtomicInteger();
+	// the limit as last computed and as published to the callers
+	private double limit;
+	private volatile int permitted;
+	private double smoothedRtt;
+	private long noLoadRtt = Long.MAX_VALUE;
+	private long windowRtt = Long.MAX_VALUE;
+	private int windowSamples;
+	// the callers that are waiting to be admitted wait on this
+	private final Object admission = new Object();
+	private volatile int waiters;
+	private final AtomicLong rejections = new AtomicLong();
+	// run whenever a request is released; e.g., to send the requests that
+	// the Client has deferred, rather than waited, for want of admission
+	private volatile Runnable releaseListener;
+
+	CqlConcurrencyLimiter(String name, int initialLimit, int minLimit,
+			int maxLimit, double tolerance, long queueTimeout) {
+		this.name = name;
+		this.minLimit = minLimit;
+		this.maxLimit = maxLimit;
+		this.tolerance = tolerance;
+		this.queueTimeout = queueTimeout;
+		this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+		this.permitted = (int) limit;
+	}
+
+	/**
+	 * Admits a request; waiting up to queueTimeout milliseconds, if need be,
+	 * or for as long as it takes if queue is true. Throws a
+	 * RejectedExecutionException if the request is not admitted.
+	 */
+	void acquire(boolean queue) throws InterruptedException {
+		if (tryAcquire()) {
+			return;
+		}
+		if (queue || queueTimeout > 0) {
+			long deadline = queue ? Long.MAX_VALUE : System
+					.currentTimeMillis() + queueTimeout;
+			synchronized (admission) {
+				waiters++;
+				try {
+					while (true) {
+						if (tryAcquire()) {
+							return;
+						}
+						long wait = deadline - System.currentTimeMillis();
+						if (wait <= 0) {
+							break;
+						}
+						admission.wait(wait);
+					}
+				} finally {
+					waiters--;
+				}
+			}
+		}
+		rejections.incrementAndGet();
+		throw new RejectedExecutionException(name
+				+ ":acquire: concurrency limit of " + permitted
+				+ " requests in flight has been reached");
+	}
+
+	/**
+	 * Admits a request if the limit has not been reached; never waits and
+	 * never counts as a rejection.
+	 */
+	boolean tryAcquire() {
+		int current = inFlight.get();
+		while (current < permitted) {
+			if (inFlight.compareAndSet(current, current + 1)) {
+				return true;
+			}
+			current = inFlight.get();
+		}
+		return false;
+	}
+
+	/**
+	 * Releases a request that was sent at the given System.nanoTime() when
+	 * the given future completes. If there is no future, then the request is
+	 * released right away.
+	 */
+	void releaseOnCompletion(ResultSetFuture future, final long start) {
+		if (future == null) {
+			release(-1L, false);
+			return;
+		}
+		Futures.addCallback(future, new FutureCallback<ResultSet>() {
+			public void onSuccess(ResultSet resultSet) {
+				release(System.nanoTime() - start, false);
+			}
+
+			public void onFailure(Throwable t) {
+				if (t instanceof CancellationException) {
+					release(-1L, false);
+				} else {
+					release(System.nanoTime() - start, isDropped(t));
+				}
+			}
+		});
+	}
+
+	/**
+	 * Releases a request that took the given RTT, in nanoseconds, to
+	 * complete; a negative RTT means the request is not to be sampled. The
+	 * request was dropped if it timed out or was rejected as overloaded.
+	 */
+	void release(long rtt, boolean dropped) {
+		int current = inFlight.getAndDecrement();
+		if (rtt >= 0 || dropped) {
+			sample(rtt, current, dropped);
+		}
+		if (waiters > 0) {
+			synchronized (admission) {
+				admission.notifyAll();
+			}
+		}
+		Runnable listener = releaseListener;
+		if (listener != null) {
+			listener.run();
+		}
+	}
+
+	private synchronized void sample(long rtt, int current, boolean dropped) {
+		double newLimit = limit;
+		if (dropped) {
+			newLimit = limit * BACKOFF;
+		} else {
+			smoothedRtt = (smoothedRtt == 0) ? rtt : smoothedRtt
+					* (1 - RTT_SMOOTHING) + rtt * RTT_SMOOTHING;
+			noLoadRtt = Math.min(noLoadRtt, rtt);
+			windowRtt = Math.min(windowRtt, rtt);
+			if (++windowSamples >= NO_LOAD_WINDOW) {
+				noLoadRtt = windowRtt;
+				windowRtt = Long.MAX_VALUE;
+				windowSamples = 0;
+			}
+			// a client that is using less than half of its limit says
+			// nothing about whether the limit can grow
+			if (current < limit / 2) {
+				return;
+			}
+			double gradient = Math.max(0.5, Math.min(1.0, tolerance
+					* noLoadRtt / smoothedRtt));
+			newLimit = limit * gradient + Math.sqrt(limit);
+			newLimit = limit * (1 - LIMIT_SMOOTHING) + newLimit
+					* LIMIT_SMOOTHING;
+		}
+		limit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+		if ((int) limit != permitted) {
+			LOG.trace(name + ":sample: concurrency limit is now {}",
+					(int) limit);
+			permitted = (int) limit;
+		}
+	}
+
+	/**
+	 * Returns true if the given failure means that the request was dropped
+	 * because the cluster, or the driver, could not keep up.
+	 */
+	static boolean isDropped(Throwable t) {
+		return t instanceof OperationTimedOutException
+				|| t instanceof OverloadedException
+				|| t instanceof ReadTimeoutException
+				|| t instanceof WriteTimeoutException
+				|| t instanceof BusyConnectionException
+				|| t instanceof NoHostAvailableException;
+	}
+
+	/**
+	 * @param releaseListener
+	 *            the releaseListener to set
+	 */
+	void setReleaseListener(Runnable releaseListener) {
+		this.releaseListener = releaseListener;
+	}
+
+	/**
+	 * @return the number of requests that may currently be in flight
+	 */
+	int getLimit() {
+		return permitted;
+	}
+
+	/**
+	 * @return the number of requests in flight
+	 */
+	int getInFlight() {
+		return inFlight.get();
+	}
+
+	/**
+	 * @return the number of requests that were not admitted
+	 */
+	long getRejections() {
+		return rejections.get();
+	}
+
+}
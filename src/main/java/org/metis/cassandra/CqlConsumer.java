@@ -0,0 +1,317 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.metis.cassandra;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.Message;
+import org.apache.camel.Processor;
+import org.apache.camel.impl.DefaultMessage;
+import org.apache.camel.impl.ScheduledBatchPollingConsumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Row;
+
+import static org.metis.utils.Constants.*;
+
+/**
+ * A scheduled polling consumer that incrementally reads a table via one of
+ * its Client's SELECT statements. Each poll picks up where the previous poll
+ * left off by way of the driver's paging state, which is checkpointed after
+ * the rows of a page have been processed. Rows are emitted one per exchange,
+ * or if requested, pages are emitted as Lists of Maps. When the end of the
+ * result set is reached, the next poll starts over from the beginning.
+ * 
+ * The checkpoint is held only in memory; it is not persisted. So, when the
+ * consumer is restarted (e.g., with its CamelContext or JVM), it reads from
+ * the beginning again, unless the "pagingState" option gives it the paging
+ * state to resume from. An application that must resume where it left off
+ * should save getCheckpoint(), or the paging state header of the last
+ * exchange that it processed, and pass it back through that option.
+ * 
+ * The consumer is configured through the endpoint's URI options, for
+ * example:
+ * 
+ * <pre>
+ * cql:user?delay=5000&maxMessagesPerPoll=100&param.username=joe
+ * </pre>
+ * 
+ * where the "param." options are the key:value pairs used for selecting and
+ * binding the SELECT statement.
+ */
+public class CqlConsumer extends ScheduledBatchPollingConsumer {
+
+	private static final Logger LOG = LoggerFactory
+			.getLogger(CqlConsumer.class);
+
+	// the URI options used by this consumer
+	public static final String DELAY_OPT = "delay";
+	public static final String INITIAL_DELAY_OPT = "initialDelay";
+	public static final String MAX_MESSAGES_OPT = "maxMessagesPerPoll";
+	public static final String EMIT_PAGES_OPT = "emitPages";
+	public static final String PAGING_STATE_OPT = "pagingState";
+	public static final String PARAM_OPT_PREFIX = "param.";
+
+	// marks the exchange whose completion advances the checkpoint
+	private static final String CHECKPOINT_PROP = "org.metis.cassandra.checkpoint";
+
+	private CqlEndpoint cqlEndpoint;
+	private boolean emitPages;
+	private Map<String, Object> params = new HashMap<String, Object>();
+
+	// the paging state from which the next page is read. null means start
+	// from the beginning
+	private volatile String checkpoint;
+
+	// rows of the current page that have yet to be emitted
+	private Queue<Map<String, Object>> pending = new LinkedList<Map<String, Object>>();
+	private String pendingCheckpoint;
+	// whether an exchange of the current page has failed
+	private boolean pageFailed;
+
+	public CqlConsumer(CqlEndpoint endpoint, Processor processor) {
+		super(endpoint, processor);
+		this.cqlEndpoint = endpoint;
+		configure(endpoint.getParameters());
+	}
+
+	private void configure(Map<String, Object> parameters) {
+		if (parameters == null) {
+			return;
+		}
+		for (String key : parameters.keySet()) {
+			String value = String.valueOf(parameters.get(key));
+			if (key.equals(DELAY_OPT)) {
+				setDelay(Long.valueOf(value));
+			} else if (key.equals(INITIAL_DELAY_OPT)) {
+				setInitialDelay(Long.valueOf(value));
+			} else if (key.equals(MAX_MESSAGES_OPT)) {
+				setMaxMessagesPerPoll(Integer.valueOf(value));
+			} else if (key.equals(EMIT_PAGES_OPT)) {
+				setEmitPages(Boolean.valueOf(value));
+			} else if (key.equals(PAGING_STATE_OPT)) {
+				setCheckpoint(value);
+			} else if (key.startsWith(PARAM_OPT_PREFIX)) {
+				params.put(key.substring(PARAM_OPT_PREFIX.length()), value);
+			}
+		}
+	}
+
+	@Override
+	protected void doStart() throws Exception {
+		CqlStmnt cqlStmnt = getCqlStmnt();
+		if (cqlStmnt != null && !cqlStmnt.isPagingState()) {
+			LOG.warn(getClient().getBeanName()
+					+ ":CqlConsumer: statement {} does not use the paging "
+					+ "state, every poll will read the first page",
+					cqlStmnt.getBeanName());
+		}
+		super.doStart();
+	}
+
+	@Override
+	protected int poll() throws Exception {
+		// must reset for each poll
+		shutdownRunningTask = null;
+		pendingExchanges = 0;
+
+		Queue<Object> exchanges = new LinkedList<Object>();
+		if (isEmitPages()) {
+			// read up to maxMessagesPerPoll pages
+			int maxPages = Math.max(1, getMaxMessagesPerPoll());
+			String pState = getCheckpoint();
+			for (int i = 0; i < maxPages && isPollAllowed(); i++) {
+				Message msg = readPage(pState);
+				if (msg == null) {
+					break;
+				}
+				List<Map<String, Object>> page = new ArrayList<Map<String, Object>>();
+				loadRows(msg, page);
+				pState = (String) msg.getHeader(CASSANDRA_PAGING_STATE);
+				exchanges.add(createExchange(page, pState, true));
+				// stop at the end of the result set
+				if (pState == null) {
+					break;
+				}
+			}
+		} else {
+			// fetch another page only after the last one has been emitted
+			if (pending.isEmpty()) {
+				Message msg = readPage(getCheckpoint());
+				if (msg != null) {
+					loadRows(msg, pending);
+					pendingCheckpoint = (String) msg
+							.getHeader(CASSANDRA_PAGING_STATE);
+					// a page without rows produces no exchange that could
+					// advance the checkpoint, so it is advanced here
+					if (pending.isEmpty()) {
+						setCheckpoint(pendingCheckpoint);
+					}
+				}
+			}
+			int max = (getMaxMessagesPerPoll() > 0) ? getMaxMessagesPerPoll()
+					: pending.size();
+			while (!pending.isEmpty() && exchanges.size() < max) {
+				Map<String, Object> row = pending.poll();
+				exchanges.add(createExchange(row, pendingCheckpoint,
+						pending.isEmpty()));
+			}
+		}
+		return processBatch(exchanges);
+	}
+
+	public int processBatch(Queue<Object> exchanges) throws Exception {
+		int total = exchanges.size();
+		// once a page fails, the pages that follow it in this batch must not
+		// advance the checkpoint past it either
+		boolean failed = false;
+		for (int index = 0; index < total && isBatchAllowed(); index++) {
+			Exchange exchange = (Exchange) exchanges.poll();
+			exchange.setProperty(Exchange.BATCH_INDEX, index);
+			exchange.setProperty(Exchange.BATCH_SIZE, total);
+			exchange.setProperty(Exchange.BATCH_COMPLETE, index == total - 1);
+			pendingExchanges = total - index - 1;
+			try {
+				getProcessor().process(exchange);
+			} catch (Exception exc) {
+				exchange.setException(exc);
+			}
+			if (exchange.getException() != null) {
+				getExceptionHandler().handleException(
+						"Error processing exchange", exchange,
+						exchange.getException());
+				failed = true;
+				pageFailed = true;
+			}
+			// the last exchange of a page advances the checkpoint, but only
+			// if none of the page's exchanges failed; otherwise, the page is
+			// read again by the next poll
+			if (exchange.getProperty(CHECKPOINT_PROP, false, Boolean.class)) {
+				if (failed || pageFailed) {
+					LOG.warn(getClient().getBeanName()
+							+ ":CqlConsumer: page failed, it will be read "
+							+ "again from checkpoint {}", getCheckpoint());
+				} else {
+					setCheckpoint(exchange.getIn().getHeader(
+							CASSANDRA_PAGING_STATE, String.class));
+					if (getCheckpoint() == null) {
+						LOG.debug(getClient().getBeanName()
+								+ ":CqlConsumer: reached end of result set");
+					}
+				}
+				pageFailed = false;
+			}
+		}
+		return total;
+	}
+
+	/**
+	 * Read the page that starts at the given paging state. Returns the
+	 * message that holds the page's result set as its body and the page's
+	 * successor in its paging state header.
+	 */
+	Message readPage(String pState) throws Exception {
+		CqlStmnt cqlStmnt = getCqlStmnt();
+		if (cqlStmnt == null) {
+			throw new Exception(getClient().getBeanName()
+					+ ":CqlConsumer: a SELECT statement could not be found "
+					+ "for this key set " + params.keySet());
+		}
+		Message msg = new DefaultMessage();
+		if (pState != null) {
+			msg.setHeader(CASSANDRA_PAGING_STATE, pState);
+		}
+		ResultSet resultSet = getClient().executeLimited(cqlStmnt,
+				new HashMap<String, Object>(params), msg,
+				getClient().getSession(), true);
+		if (resultSet == null) {
+			return null;
+		}
+		msg.setBody(resultSet);
+		return msg;
+	}
+
+	/**
+	 * Transfer the rows of the message's page to the given collection
+	 */
+	void loadRows(Message msg, Collection<Map<String, Object>> rows) {
+		ResultSet resultSet = (ResultSet) msg.getBody();
+		CqlRowDecoder decoder = getCqlStmnt().getRowDecoder(
+				resultSet.getColumnDefinitions());
+		Row row = null;
+		while (resultSet.getAvailableWithoutFetching() > 0
+				&& (row = resultSet.one()) != null) {
+			rows.add(decoder.decode(row));
+		}
+	}
+
+	private Exchange createExchange(Object body, String pState,
+			boolean checkpoint) {
+		Exchange exchange = getEndpoint().createExchange();
+		exchange.getIn().setBody(body);
+		if (pState != null) {
+			exchange.getIn().setHeader(CASSANDRA_PAGING_STATE, pState);
+		}
+		exchange.setProperty(CHECKPOINT_PROP, checkpoint);
+		return exchange;
+	}
+
+	private CqlStmnt getCqlStmnt() {
+		return getClient().getSelectStmnt(params.keySet());
+	}
+
+	private Client getClient() {
+		return cqlEndpoint.getClient();
+	}
+
+	/**
+	 * @return the emitPages
+	 */
+	public boolean isEmitPages() {
+		return emitPages;
+	}
+
+	/**
+	 * @param emitPages
+	 *            the emitPages to set
+	 */
+	public void setEmitPages(boolean emitPages) {
+		this.emitPages = emitPages;
+	}
+
+	/**
+	 * @return the paging state from which the next poll reads
+	 */
+	public String getCheckpoint() {
+		return checkpoint;
+	}
+
+	/**
+	 * @param checkpoint
+	 *            the paging state from which the next poll reads
+	 */
+	public void setCheckpoint(String checkpoint) {
+		this.checkpoint = checkpoint;
+	}
+
+}
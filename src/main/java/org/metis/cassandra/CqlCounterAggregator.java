@@ -0,0 +1,348 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.metis.cassandra;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.datastax.driver.core.Session;
+
+/**
+ * The counter aggregator of a Client. The deltas of a counter UPDATE are not
+ * executed, but are instead added to the running totals of the row that the
+ * UPDATE targets, as identified by the row's primary key values. Every
+ * flushInterval milliseconds, a flusher thread takes the
+ * net delta of each row and executes it as one UPDATE; rows whose net delta is
+ * zero are not written at all.
+ * <p>
+ * A row's totals are striped across several cells, by thread, so that writers
+ * of the same hot row do not contend on one memory location. A row that has
+ * not been incremented for RETIRE_AFTER flushes is retired; the writer that
+ * races with the retirement moves what it added to the row's successor, so no
+ * delta is lost or counted twice.
+ */
+final class CqlCounterAggregator implements Runnable {
+
+	private static final Logger LOG = LoggerFactory
+			.getLogger(CqlCounterAggregator.class);
+
+	// the number of idle flushes after which a row is retired
+	private static final int RETIRE_AFTER = 10;
+	// the number of cells per row and counter, which is a power of two
+	private static final int STRIPES = Integer.highestOneBit(Math.min(64,
+			Runtime.getRuntime().availableProcessors() * 2 - 1));
+	// the cells of different stripes are spaced a cache line apart
+	private static final int PAD = 8;
+
+	private final Client client;
+	private final ScheduledExecutorService flusher;
+	private final ConcurrentMap<CqlStmnt, ConcurrentMap<String, Totals>> rows = new ConcurrentHashMap<CqlStmnt, ConcurrentMap<String, Totals>>();
+	private volatile boolean closed;
+	// deltas are added under the read lock and the aggregator is closed under
+	// the write lock; so, the final flush sees every delta that was added
+	private final ReadWriteLock closing = new ReentrantReadWriteLock();
+	private final AtomicLong increments = new AtomicLong();
+	private final AtomicLong updates = new AtomicLong();
+	private final AtomicLong failures = new AtomicLong();
+
+	CqlCounterAggregator(final Client client, long flushInterval) {
+		this.client = client;
+		this.flusher = Executors
+				.newSingleThreadScheduledExecutor(new ThreadFactory() {
+					public Thread newThread(Runnable runnable) {
+						Thread thread = new Thread(runnable, client
+								.getBeanName() + "-counter-flusher");
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		this.flusher.scheduleWithFixedDelay(this, flushInterval,
+				flushInterval, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Parses the counter deltas of the given Map, for the given counter
+	 * UPDATE, and the row that the Map targets. Throws an exception if a delta
+	 * is missing or is not a whole number. Nothing is added to the totals
+	 * until the returned increment is handed to add().
+	 */
+	Increment parse(CqlStmnt cqlStmnt, Map<Object, Object> map,
+			Session session) throws Exception {
+		List<String> counterKeys = cqlStmnt.getCounterKeys();
+		long[] deltas = new long[counterKeys.size()];
+		Map<String, Object> keyParams = new HashMap<String, Object>();
+		for (Map.Entry<Object, Object> entry : map.entrySet()) {
+			keyParams.put(String.valueOf(entry.getKey()), entry.getValue());
+		}
+		for (int i = 0; i < deltas.length; i++) {
+			Object delta = keyParams.remove(counterKeys.get(i));
+			if (delta == null) {
+				throw new Exception(client.getBeanName()
+						+ ":parse: missing counter param: "
+						+ counterKeys.get(i));
+			}
+			deltas[i] = (delta instanceof Number) ? ((Number) delta)
+					.longValue() : Long.parseLong(delta.toString().trim());
+		}
+		// the row is identified by its parsed primary key values; or, if
+		// those cannot be derived, by the params that identify it
+		String row = cqlStmnt.getRow(session, keyParams);
+		row = (row != null) ? "r" + row : "p"
+				+ CqlStmnt.getParamsKey(keyParams);
+		return new Increment(cqlStmnt, row, keyParams, deltas);
+	}
+
+	/**
+	 * Adds the given increments to the totals of their rows. Throws an
+	 * exception, having added none of them, if the aggregator has been
+	 * closed.
+	 */
+	void add(List<Increment> toAdd) throws Exception {
+		closing.readLock().lock();
+		try {
+			if (closed) {
+				throw new Exception(client.getBeanName()
+						+ ":add: counter aggregator is closed");
+			}
+			for (Increment increment : toAdd) {
+				add(increment);
+			}
+		} finally {
+			closing.readLock().unlock();
+		}
+	}
+
+	private void add(Increment increment) {
+		CqlStmnt cqlStmnt = increment.cqlStmnt;
+		ConcurrentMap<String, Totals> stmntRows = rows.get(cqlStmnt);
+		if (stmntRows == null) {
+			rows.putIfAbsent(cqlStmnt,
+					new ConcurrentHashMap<String, Totals>());
+			stmntRows = rows.get(cqlStmnt);
+		}
+		String row = increment.row;
+		long[] deltas = increment.deltas;
+		while (true) {
+			Totals totals = stmntRows.get(row);
+			if (totals == null) {
+				stmntRows.putIfAbsent(row, new Totals(increment.keyParams,
+						deltas.length));
+				continue;
+			}
+			totals.add(deltas);
+			if (stmntRows.get(row) == totals) {
+				break;
+			}
+			// the row was retired, possibly before the flusher took what was
+			// just added; so move whatever is left to the row's successor
+			deltas = totals.drain();
+			if (isZero(deltas)) {
+				break;
+			}
+		}
+		increments.incrementAndGet();
+	}
+
+	/**
+	 * Closes the aggregator to new deltas and flushes the totals that it
+	 * holds.
+	 */
+	void close(long timeout) {
+		// wait for the deltas that are being added
+		closing.writeLock().lock();
+		try {
+			closed = true;
+		} finally {
+			closing.writeLock().unlock();
+		}
+		flusher.shutdown();
+		try {
+			if (!flusher.awaitTermination(timeout, TimeUnit.MILLISECONDS)) {
+				LOG.warn(client.getBeanName() + ":close: counter flusher "
+						+ "did not terminate");
+			}
+		} catch (InterruptedException ignore) {
+			Thread.currentThread().interrupt();
+		}
+		// pick up what was added while the last flush was in progress
+		run();
+	}
+
+	public synchronized void run() {
+		Session session = null;
+		try {
+			session = client.getSession();
+		} catch (Exception exc) {
+			LOG.error(client.getBeanName() + ":run: unable to get session, "
+					+ "counter totals are held until the next flush, "
+					+ "msg = {}", exc.getMessage());
+			return;
+		}
+		for (Map.Entry<CqlStmnt, ConcurrentMap<String, Totals>> entry : rows
+				.entrySet()) {
+			try {
+				flush(entry.getKey(), entry.getValue(), session);
+			} catch (RuntimeException exc) {
+				LOG.error(client.getBeanName() + ":run: caught this "
+						+ "exception while flushing {}", exc.toString());
+			}
+		}
+	}
+
+	/**
+	 * Executes one UPDATE, with the net deltas, for each of the given
+	 * statement's rows that has been incremented since the last flush.
+	 */
+	private void flush(CqlStmnt cqlStmnt,
+			ConcurrentMap<String, Totals> stmntRows, Session session) {
+		List<String> counterKeys = cqlStmnt.getCounterKeys();
+		List<Map<Object, Object>> listMap = new ArrayList<Map<Object, Object>>();
+		for (Map.Entry<String, Totals> entry : stmntRows.entrySet()) {
+			Totals totals = entry.getValue();
+			long[] deltas = totals.drain();
+			if (isZero(deltas)) {
+				if (++totals.idleFlushes < RETIRE_AFTER) {
+					continue;
+				}
+				// retire the row and take what was added in the meantime
+				stmntRows.remove(entry.getKey(), totals);
+				deltas = totals.drain();
+				if (isZero(deltas)) {
+					continue;
+				}
+			}
+			totals.idleFlushes = 0;
+			Map<Object, Object> map = new HashMap<Object, Object>(
+					totals.keyParams);
+			for (int i = 0; i < deltas.length; i++) {
+				map.put(counterKeys.get(i), deltas[i]);
+			}
+			listMap.add(map);
+		}
+		if (listMap.isEmpty()) {
+			return;
+		}
+		LOG.trace(client.getBeanName() + ":flush: flushing {} rows",
+				listMap.size());
+		// counter updates are not idempotent, so a failed update is not
+		// retried
+		failures.addAndGet(client.executeBehind(cqlStmnt, listMap, session));
+		updates.addAndGet(listMap.size());
+	}
+
+	private static boolean isZero(long[] deltas) {
+		for (long delta : deltas) {
+			if (delta != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return the number of counter UPDATEs that were aggregated
+	 */
+	long getIncrements() {
+		return increments.get();
+	}
+
+	/**
+	 * @return the number of aggregated UPDATEs that were executed
+	 */
+	long getUpdates() {
+		return updates.get();
+	}
+
+	/**
+	 * @return the number of aggregated UPDATEs that failed
+	 */
+	long getFailures() {
+		return failures.get();
+	}
+
+	/**
+	 * The parsed deltas of one counter UPDATE
+	 */
+	static final class Increment {
+		private final CqlStmnt cqlStmnt;
+		private final String row;
+		private final Map<String, Object> keyParams;
+		private final long[] deltas;
+
+		Increment(CqlStmnt cqlStmnt, String row,
+				Map<String, Object> keyParams, long[] deltas) {
+			this.cqlStmnt = cqlStmnt;
+			this.row = row;
+			this.keyParams = keyParams;
+			this.deltas = deltas;
+		}
+	}
+
+	/**
+	 * The running totals of one row.
+	 */
+	private static final class Totals {
+		private final Map<String, Object> keyParams;
+		private final int counters;
+		private final AtomicLongArray cells;
+		// only touched by the flusher
+		private int idleFlushes;
+
+		Totals(Map<String, Object> keyParams, int counters) {
+			this.keyParams = keyParams;
+			this.counters = counters;
+			this.cells = new AtomicLongArray(STRIPES * counters * PAD);
+		}
+
+		void add(long[] deltas) {
+			int base = (int) (Thread.currentThread().getId() & (STRIPES - 1))
+					* counters * PAD;
+			for (int i = 0; i < deltas.length; i++) {
+				if (deltas[i] != 0) {
+					cells.addAndGet(base + i * PAD, deltas[i]);
+				}
+			}
+		}
+
+		/**
+		 * Takes, and resets, the totals.
+		 */
+		long[] drain() {
+			long[] deltas = new long[counters];
+			for (int stripe = 0; stripe < STRIPES; stripe++) {
+				int base = stripe * counters * PAD;
+				for (int i = 0; i < counters; i++) {
+					deltas[i] += cells.getAndSet(base + i * PAD, 0L);
+				}
+			}
+			return deltas;
+		}
+	}
+
+}
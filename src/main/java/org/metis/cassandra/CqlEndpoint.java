@@ -52,24 +52,25 @@ public class CqlEndpoint extends DefaultEndpoint {
 	}
 
 	/**
-	 * Consumers are currently not supported.
-	 * 
-	 * TODO: Implement polling consumer that fires off events when database
-	 * change occurs
+	 * Create and return a new polling Consumer bound to this CqlEndpoint.
 	 */
 	public Consumer createConsumer(Processor processor) throws Exception {
-		throw new UnsupportedOperationException(
-				"You cannot receive messages from this endpoint:"
-						+ getEndpointUri());
+		CqlConsumer consumer = new CqlConsumer(this, processor);
+		configureConsumer(consumer);
+		return consumer;
 	}
 
 	public boolean isSingleton() {
 		return true;
 	}
 
+	/**
+	 * The endpoint is asynchronous only if its Client has been placed in async
+	 * mode.
+	 */
 	@Override
 	public boolean isSynchronous() {
-		return true;
+		return getClient() == null || !getClient().isAsync();
 	}
 
 	/**
@@ -0,0 +1,397 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.metis.cassandra;
+
+import java.util.Arrays;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.Statement;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+/**
+ * Hedges the reads of one CqlStmnt. If a read has not been answered within
+ * the statement's hedge delay, a duplicate of the read is sent; whichever of
+ * the two answers first is taken and the other is cancelled. The hedge delay
+ * is the given percentile of the statement's recent read latencies, but no
+ * less than minDelay milliseconds. No read is hedged until enough latencies
+ * have been sampled.
+ * <p>
+ * Hedges are paid for out of a budget: each read earns budget percent of a
+ * hedge, so that no more than budget percent of the reads are duplicated,
+ * even when the whole cluster slows down. Only idempotent statements are
+ * hedged.
+ * <p>
+ * Note that the duplicate is routed by the cluster's load balancing policy,
+ * which cannot be told to avoid the host of the original read. With a token
+ * aware policy over replicas that are shuffled, it most often lands on a
+ * different replica.
+ * <p>
+ * The original read is sent by the caller, which has already been given
+ * leave to send it. The hedge is an extra read, so it is sent through the
+ * given HedgeSender, which holds it to the same limits as any other read of
+ * the Client (e.g., its maxInFlight and concurrency limiter); a hedge that
+ * the sender does not admit right away is not sent. As both reads share the
+ * statement, the statement must not be reused until both are done with it;
+ * see getSettled().
+ */
+final class CqlHedger {
+
+	private static final Logger LOG = LoggerFactory.getLogger(CqlHedger.class);
+
+	// the number of latencies sampled and how often (in samples) the delay
+	// is recomputed
+	private static final int SAMPLES = 1024;
+	private static final int RECOMPUTE_EVERY = 128;
+	// a hedge costs 100 credits; no more than MAX_CREDITS may be saved up
+	private static final long HEDGE_COST = 100L;
+	private static final long MAX_CREDITS = 10 * HEDGE_COST;
+
+	// fires the hedges of all the statements
+	private static final ScheduledThreadPoolExecutor TIMER = new ScheduledThreadPoolExecutor(
+			1, new ThreadFactory() {
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "cql-hedge-timer");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+	static {
+		TIMER.setRemoveOnCancelPolicy(true);
+	}
+
+	private final String name;
+	private final double percentile;
+	private final long minDelay;
+	private final long budget;
+	// the ring of sampled latencies, in microseconds
+	private final AtomicLongArray latencies = new AtomicLongArray(SAMPLES);
+	private final AtomicLong sampled = new AtomicLong();
+	// the current hedge delay, in microseconds; a negative delay means not
+	// enough latencies have been sampled
+	private volatile long delay = -1L;
+	private final AtomicLong credits = new AtomicLong();
+	private final AtomicLong hedges = new AtomicLong();
+	private final AtomicLong hedgeWins = new AtomicLong();
+
+	CqlHedger(String name, double percentile, long minDelay, int budget) {
+		this.name = name;
+		this.percentile = percentile;
+		this.minDelay = TimeUnit.MILLISECONDS.toMicros(minDelay);
+		this.budget = budget;
+	}
+
+	/**
+	 * Sends the hedge of a read, if it can be sent right away, and returns
+	 * its future; else returns null.
+	 */
+	interface HedgeSender {
+		ResultSetFuture trySend(Session session, Statement stmnt);
+	}
+
+	/**
+	 * Same as executeAsync(Session, Statement, HedgeSender), but the hedge is
+	 * sent straight to the session.
+	 */
+	ResultSetFuture executeAsync(Session session, Statement stmnt) {
+		return executeAsync(session, stmnt, null);
+	}
+
+	/**
+	 * Asynchronously executes the given statement, hedging it if it is
+	 * idempotent, the delay is known and the budget allows. The hedge, if
+	 * any, is sent via the given sender.
+	 */
+	ResultSetFuture executeAsync(Session session, Statement stmnt,
+			HedgeSender sender) {
+		earn();
+		long myDelay = delay;
+		if (myDelay < 0 || !Boolean.TRUE.equals(stmnt.isIdempotent())) {
+			ResultSetFuture future = session.executeAsync(stmnt);
+			sample(future, System.nanoTime());
+			return future;
+		}
+		return new HedgedFuture(session, stmnt, sender, myDelay);
+	}
+
+	/**
+	 * Returns a future that completes once none of the reads of the given
+	 * future, which may or may not be hedged, is still using its statement.
+	 * A hedged future completes with its first answer, while the other read
+	 * may still be in flight.
+	 */
+	static ListenableFuture<?> getSettled(ResultSetFuture future) {
+		return (future instanceof HedgedFuture) ? ((HedgedFuture) future).settled
+				: future;
+	}
+
+	// a read earns budget percent of a hedge
+	private void earn() {
+		long current = credits.get();
+		while (current < MAX_CREDITS
+				&& !credits.compareAndSet(current,
+						Math.min(MAX_CREDITS, current + budget))) {
+			current = credits.get();
+		}
+	}
+
+	// pays for a hedge, if there are enough credits
+	private boolean spend() {
+		long current = credits.get();
+		while (current >= HEDGE_COST) {
+			if (credits.compareAndSet(current, current - HEDGE_COST)) {
+				return true;
+			}
+			current = credits.get();
+		}
+		return false;
+	}
+
+	// gives back the credits of a hedge that was not sent
+	private void refund() {
+		long current = credits.get();
+		while (!credits.compareAndSet(current,
+				Math.min(MAX_CREDITS, current + HEDGE_COST))) {
+			current = credits.get();
+		}
+	}
+
+	// samples the latency of the given read when it succeeds
+	private void sample(ResultSetFuture future, final long start) {
+		Futures.addCallback(future, new FutureCallback<ResultSet>() {
+			public void onSuccess(ResultSet resultSet) {
+				record(System.nanoTime() - start);
+			}
+
+			public void onFailure(Throwable t) {
+			}
+		});
+	}
+
+	private void record(long nanos) {
+		long n = sampled.getAndIncrement();
+		latencies.set((int) (n % SAMPLES), TimeUnit.NANOSECONDS
+				.toMicros(nanos));
+		if ((n + 1) % RECOMPUTE_EVERY == 0) {
+			// sorting is left to the timer rather than the driver's I/O
+			// thread
+			TIMER.execute(new Runnable() {
+				public void run() {
+					recompute();
+				}
+			});
+		}
+	}
+
+	private void recompute() {
+		int n = (int) Math.min(sampled.get(), SAMPLES);
+		long[] sorted = new long[n];
+		for (int i = 0; i < n; i++) {
+			sorted[i] = latencies.get(i);
+		}
+		Arrays.sort(sorted);
+		int index = (int) Math.ceil(percentile / 100.0 * n) - 1;
+		delay = Math.max(minDelay, sorted[Math.max(0, Math.min(n - 1, index))]);
+		LOG.trace(name + ":recompute: hedge delay is now {} micros", delay);
+	}
+
+	/**
+	 * @return the current hedge delay in microseconds, or -1 if it is not
+	 *         yet known
+	 */
+	long getDelay() {
+		return delay;
+	}
+
+	/**
+	 * @return the number of hedges that were sent
+	 */
+	long getHedges() {
+		return hedges.get();
+	}
+
+	/**
+	 * @return the number of hedges that answered before the original read
+	 */
+	long getHedgeWins() {
+		return hedgeWins.get();
+	}
+
+	/**
+	 * The future of a hedged read, which is completed by the first of its
+	 * reads to succeed; or, if they all fail, by the last to fail. A read that
+	 * fails before its hedge is sent is not hedged.
+	 */
+	private final class HedgedFuture extends CqlResultSetFuture implements
+			Runnable {
+
+		private final Session session;
+		private final Statement stmnt;
+		private final HedgeSender sender;
+		private final ResultSetFuture primary;
+		private volatile ResultSetFuture hedge;
+		private final ScheduledFuture<?> timer;
+		// the number of reads that have not yet completed
+		private final AtomicInteger pending = new AtomicInteger(1);
+		// the failure of the original read, if it failed
+		private volatile Throwable failure;
+		// completes once no read is using the statement: the reads that
+		// were sent have completed and the hedge can no longer be sent. the
+		// count is of those reads, plus one until the timer is done
+		private final SettableFuture<Void> settled = SettableFuture.create();
+		private final AtomicInteger unsettled = new AtomicInteger(2);
+		private final AtomicBoolean timerDone = new AtomicBoolean();
+
+		HedgedFuture(Session session, Statement stmnt, HedgeSender sender,
+				long delay) {
+			this.session = session;
+			this.stmnt = stmnt;
+			this.sender = sender;
+			this.primary = session.executeAsync(stmnt);
+			listen(primary, System.nanoTime(), false);
+			this.timer = isDone() ? null : TIMER.schedule(this, delay,
+					TimeUnit.MICROSECONDS);
+			if (timer == null) {
+				settleTimer();
+			}
+		}
+
+		// fires the hedge
+		public void run() {
+			try {
+				if (!isDone() && spend()) {
+					sendHedge();
+				}
+			} finally {
+				settleTimer();
+			}
+		}
+
+		private void sendHedge() {
+			pending.incrementAndGet();
+			unsettled.incrementAndGet();
+			ResultSetFuture myHedge = null;
+			try {
+				myHedge = (sender == null) ? session.executeAsync(stmnt)
+						: sender.trySend(session, stmnt);
+			} catch (RuntimeException exc) {
+				LOG.warn(name + ":run: unable to send hedge {}",
+						exc.toString());
+			}
+			if (myHedge == null) {
+				// not sent, so it is not paid for. if the original read
+				// failed in the meantime, then its failure is now taken
+				refund();
+				Throwable myFailure = failure;
+				if (pending.decrementAndGet() == 0 && myFailure != null
+						&& setException(myFailure)) {
+					cancelOthers();
+				}
+				settleRead();
+				return;
+			}
+			hedges.incrementAndGet();
+			hedge = myHedge;
+			listen(myHedge, System.nanoTime(), true);
+			// the read may have been answered, or cancelled, in the meantime
+			if (isDone()) {
+				myHedge.cancel(true);
+			}
+		}
+
+		// called once the hedge can no longer be sent
+		private void settleTimer() {
+			if (timerDone.compareAndSet(false, true)) {
+				settleRead();
+			}
+		}
+
+		private void settleRead() {
+			if (unsettled.decrementAndGet() == 0) {
+				settled.set(null);
+			}
+		}
+
+		private void listen(ResultSetFuture future, final long start,
+				final boolean isHedge) {
+			Futures.addCallback(future, new FutureCallback<ResultSet>() {
+				public void onSuccess(ResultSet resultSet) {
+					try {
+						record(System.nanoTime() - start);
+						if (set(resultSet)) {
+							if (isHedge) {
+								hedgeWins.incrementAndGet();
+							}
+							cancelOthers();
+						}
+					} finally {
+						settleRead();
+					}
+				}
+
+				public void onFailure(Throwable t) {
+					try {
+						// a failure is only taken when the other read, if it
+						// was sent, has also failed
+						failure = t;
+						if (pending.decrementAndGet() == 0 && setException(t)) {
+							cancelOthers();
+						}
+					} finally {
+						settleRead();
+					}
+				}
+			});
+		}
+
+		private void cancelOthers() {
+			// a timer that will now never run cannot send the hedge
+			if (timer != null && timer.cancel(false)) {
+				settleTimer();
+			}
+			if (!primary.isDone()) {
+				primary.cancel(true);
+			}
+			ResultSetFuture myHedge = hedge;
+			if (myHedge != null && !myHedge.isDone()) {
+				myHedge.cancel(true);
+			}
+		}
+
+		@Override
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			if (!super.cancel(mayInterruptIfRunning)) {
+				return false;
+			}
+			cancelOthers();
+			return true;
+		}
+	}
+
+}
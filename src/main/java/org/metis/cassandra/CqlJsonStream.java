@@ -0,0 +1,411 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.metis.cassandra;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.Date;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.datastax.driver.core.ColumnDefinitions;
+import com.datastax.driver.core.DataType;
+import com.datastax.driver.core.LocalDate;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.TupleValue;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.io.SerializedString;
+
+/**
+ * An InputStream that renders a result set as a JSON array of objects, one
+ * object per row. The rows are written straight from the driver's Rows into a
+ * JsonGenerator, without first being transferred to Maps, and the JSON is
+ * produced a chunk at a time as the stream is read; so, the result set's pages
+ * are fetched only as they are needed and the stream can be piped out (e.g.,
+ * to an HTTP response) in constant memory. For a "SELECT JSON ..." statement,
+ * the JSON text produced by Cassandra for each row is spliced into the array
+ * as is.
+ * <p>
+ * The stream may also be rendered in one of the binary codecs (Smile or CBOR),
+ * in which case the same array of objects is written in that codec's format.
+ */
+public class CqlJsonStream extends InputStream {
+
+	private static final Logger LOG = LoggerFactory
+			.getLogger(CqlJsonStream.class);
+
+	// the number of bytes generated before they are handed to the reader
+	private static final int CHUNK_SIZE = 8192;
+
+	private ResultSet resultSet;
+	// whether the stream is allowed to fetch beyond the current page
+	private final boolean canFetch;
+	// whether each row holds the JSON text of a "SELECT JSON ..."
+	private final boolean jsonSelect;
+	// a negative value disables prefetching
+	private final int prefetchThreshold;
+	// the format in which the rows are written
+	private final CqlCodec codec;
+	private final Chunk chunk = new Chunk();
+	private JsonGenerator generator;
+	private SerializedString[] names;
+	private ColumnWriter[] writers;
+	// the position of the next byte to read from the chunk
+	private int pos;
+	private boolean done;
+	private long rowCount;
+
+	public CqlJsonStream(ResultSet resultSet, boolean canFetch,
+			boolean jsonSelect, int prefetchThreshold) {
+		this(resultSet, canFetch, jsonSelect, prefetchThreshold, CqlCodec.JSON);
+	}
+
+	public CqlJsonStream(ResultSet resultSet, boolean canFetch,
+			boolean jsonSelect, int prefetchThreshold, CqlCodec codec) {
+		this.codec = (codec == null) ? CqlCodec.JSON : codec;
+		this.resultSet = resultSet;
+		this.canFetch = canFetch;
+		this.jsonSelect = jsonSelect;
+		this.prefetchThreshold = prefetchThreshold;
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (!ensureAvailable()) {
+			return -1;
+		}
+		return chunk.getBuf()[pos++] & 0xff;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		} else if (!ensureAvailable()) {
+			return -1;
+		}
+		int n = Math.min(len, chunk.size() - pos);
+		System.arraycopy(chunk.getBuf(), pos, b, off, n);
+		pos += n;
+		return n;
+	}
+
+	@Override
+	public int available() {
+		return chunk.size() - pos;
+	}
+
+	@Override
+	public void close() {
+		done = true;
+		resultSet = null;
+		chunk.reset();
+		pos = 0;
+	}
+
+	/**
+	 * @return the codec in which the rows are written
+	 */
+	public CqlCodec getCodec() {
+		return codec;
+	}
+
+	/**
+	 * @return the number of rows written so far
+	 */
+	public long getRowCount() {
+		return rowCount;
+	}
+
+	/*
+	 * Generates the next chunk, if the current one has been read. Returns
+	 * false at the end of the stream.
+	 */
+	private boolean ensureAvailable() throws IOException {
+		while (pos >= chunk.size()) {
+			if (done) {
+				return false;
+			}
+			chunk.reset();
+			pos = 0;
+			fill();
+		}
+		return true;
+	}
+
+	/*
+	 * Writes rows to the chunk until it holds at least CHUNK_SIZE bytes or
+	 * the rows run out
+	 */
+	private void fill() throws IOException {
+		if (generator == null) {
+			// the mapper serializes the collections and tuples
+			generator = codec.getMapper().getFactory().createGenerator(chunk,
+					JsonEncoding.UTF8);
+			generator.writeStartArray();
+		}
+		while (chunk.size() < CHUNK_SIZE) {
+			Row row = nextRow();
+			if (row == null) {
+				generator.writeEndArray();
+				generator.close();
+				resultSet = null;
+				done = true;
+				return;
+			}
+			writeRow(row);
+			rowCount++;
+			// move the generator's buffered output to the chunk
+			generator.flush();
+		}
+	}
+
+	private Row nextRow() {
+		if (resultSet == null) {
+			return null;
+		}
+		// the driver ignores this request if the next page is already being
+		// fetched
+		if (canFetch && prefetchThreshold >= 0 && !resultSet.isFullyFetched()
+				&& resultSet.getAvailableWithoutFetching() <= prefetchThreshold) {
+			resultSet.fetchMoreResults();
+		}
+		if (canFetch || resultSet.getAvailableWithoutFetching() > 0) {
+			return resultSet.one();
+		}
+		return null;
+	}
+
+	private void writeRow(Row row) throws IOException {
+		if (jsonSelect) {
+			// the row's only column holds the row's JSON text, which can only
+			// be spliced into a JSON stream; else it is transcoded
+			if (!codec.isBinary()) {
+				generator.writeRawValue(row.getString(0));
+			} else {
+				JsonParser jp = CqlCodec.JSON.getMapper().getFactory()
+						.createParser(row.getString(0));
+				try {
+					jp.nextToken();
+					generator.copyCurrentStructure(jp);
+				} finally {
+					jp.close();
+				}
+			}
+			return;
+		}
+		if (writers == null) {
+			compile(row.getColumnDefinitions());
+		}
+		generator.writeStartObject();
+		for (int i = 0; i < writers.length; i++) {
+			generator.writeFieldName(names[i]);
+			if (row.isNull(i)) {
+				generator.writeNull();
+			} else {
+				writers[i].write(generator, row, i);
+			}
+		}
+		generator.writeEndObject();
+	}
+
+	/*
+	 * Builds the column names and writers, once, from the result set's
+	 * column definitions
+	 */
+	private void compile(ColumnDefinitions cDefs) {
+		int size = cDefs.size();
+		names = new SerializedString[size];
+		writers = new ColumnWriter[size];
+		for (int i = 0; i < size; i++) {
+			names[i] = new SerializedString(cDefs.getName(i));
+			writers[i] = getWriter(cDefs.getType(i).getName());
+		}
+		LOG.trace("compile: writing {} columns per row", size);
+	}
+
+	/**
+	 * Writes a column's value, by index, from a row to a generator.
+	 */
+	private static abstract class ColumnWriter {
+		abstract void write(JsonGenerator gen, Row row, int i)
+				throws IOException;
+	}
+
+	private static ColumnWriter getWriter(DataType.Name type) {
+		switch (type) {
+		case BLOB:
+			return new ColumnWriter() {
+				void write(JsonGenerator gen, Row row, int i)
+						throws IOException {
+					ByteBuffer bb = row.getBytes(i);
+					byte[] bytes = new byte[bb.remaining()];
+					bb.get(bytes);
+					gen.writeBinary(bytes);
+				}
+			};
+		case DECIMAL:
+			return new ColumnWriter() {
+				void write(JsonGenerator gen, Row row, int i)
+						throws IOException {
+					gen.writeNumber(row.getDecimal(i));
+				}
+			};
+		case VARINT:
+			return new ColumnWriter() {
+				void write(JsonGenerator gen, Row row, int i)
+						throws IOException {
+					gen.writeNumber(row.getVarint(i));
+				}
+			};
+		case BOOLEAN:
+			return new ColumnWriter() {
+				void write(JsonGenerator gen, Row row, int i)
+						throws IOException {
+					gen.writeBoolean(row.getBool(i));
+				}
+			};
+		case INET:
+			return new ColumnWriter() {
+				void write(JsonGenerator gen, Row row, int i)
+						throws IOException {
+					InetAddress inet = row.getInet(i);
+					gen.writeString(inet.getHostAddress());
+				}
+			};
+		case INT:
+			return new ColumnWriter() {
+				void write(JsonGenerator gen, Row row, int i)
+						throws IOException {
+					gen.writeNumber(row.getInt(i));
+				}
+			};
+		case SMALLINT:
+			return new ColumnWriter() {
+				void write(JsonGenerator gen, Row row, int i)
+						throws IOException {
+					gen.writeNumber(row.getShort(i));
+				}
+			};
+		case TINYINT:
+			return new ColumnWriter() {
+				void write(JsonGenerator gen, Row row, int i)
+						throws IOException {
+					gen.writeNumber(row.getByte(i));
+				}
+			};
+		case BIGINT:
+		case COUNTER:
+		case TIME:
+			return new ColumnWriter() {
+				void write(JsonGenerator gen, Row row, int i)
+						throws IOException {
+					gen.writeNumber(row.getLong(i));
+				}
+			};
+		case FLOAT:
+			return new ColumnWriter() {
+				void write(JsonGenerator gen, Row row, int i)
+						throws IOException {
+					gen.writeNumber(row.getFloat(i));
+				}
+			};
+		case DOUBLE:
+			return new ColumnWriter() {
+				void write(JsonGenerator gen, Row row, int i)
+						throws IOException {
+					gen.writeNumber(row.getDouble(i));
+				}
+			};
+		case DATE:
+			return new ColumnWriter() {
+				void write(JsonGenerator gen, Row row, int i)
+						throws IOException {
+					LocalDate date = row.getDate(i);
+					gen.writeString(date.toString());
+				}
+			};
+		case TIMESTAMP:
+			return new ColumnWriter() {
+				// as with the ObjectMapper, a Date is written as its epoch
+				// millis
+				void write(JsonGenerator gen, Row row, int i)
+						throws IOException {
+					Date date = row.getTimestamp(i);
+					gen.writeNumber(date.getTime());
+				}
+			};
+		case TIMEUUID:
+		case UUID:
+			return new ColumnWriter() {
+				void write(JsonGenerator gen, Row row, int i)
+						throws IOException {
+					gen.writeString(row.getUUID(i).toString());
+				}
+			};
+		case SET:
+		case LIST:
+		case MAP:
+			return new ColumnWriter() {
+				void write(JsonGenerator gen, Row row, int i)
+						throws IOException {
+					gen.writeObject(row.getObject(i));
+				}
+			};
+		case TUPLE:
+			return new ColumnWriter() {
+				// a tuple is written as an array of its values
+				void write(JsonGenerator gen, Row row, int i)
+						throws IOException {
+					TupleValue tv = row.getTupleValue(i);
+					int numValues = tv.getType().getComponentTypes().size();
+					gen.writeStartArray();
+					for (int j = 0; j < numValues; j++) {
+						gen.writeObject(tv.getObject(j));
+					}
+					gen.writeEndArray();
+				}
+			};
+		default:
+			return new ColumnWriter() {
+				void write(JsonGenerator gen, Row row, int i)
+						throws IOException {
+					gen.writeString(row.getString(i));
+				}
+			};
+		}
+	}
+
+	/*
+	 * The reusable buffer that the generator writes to and the reader reads
+	 * from
+	 */
+	private static final class Chunk extends ByteArrayOutputStream {
+		Chunk() {
+			super(CHUNK_SIZE * 2);
+		}
+
+		byte[] getBuf() {
+			return buf;
+		}
+	}
+
+}
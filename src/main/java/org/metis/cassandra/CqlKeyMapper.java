@@ -0,0 +1,44 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.metis.cassandra;
+
+import java.util.Map;
+
+import org.apache.camel.Message;
+
+/**
+ * Maps a request for a SELECT statement to the key by which identical,
+ * concurrent requests for that statement are coalesced into one query. Two
+ * requests whose keys are equal share the rows of one query; therefore, a
+ * key must capture everything that determines those rows. An implementation
+ * must be thread-safe.
+ */
+public interface CqlKeyMapper {
+
+	/**
+	 * Returns the key for the given request, or null if the request is not to
+	 * be coalesced with any other.
+	 * 
+	 * @param cqlStmnt
+	 *            the SELECT statement being requested
+	 * @param inParams
+	 *            the request's key:value pairs
+	 * @param inMsg
+	 *            the request's in message
+	 * @return
+	 */
+	public String getKey(CqlStmnt cqlStmnt, Map<String, Object> inParams,
+			Message inMsg);
+
+}
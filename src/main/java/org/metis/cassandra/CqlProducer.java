@@ -13,29 +13,72 @@
  */
 package org.metis.cassandra;
 
+import java.util.concurrent.ExecutorService;
+
+import org.apache.camel.AsyncCallback;
 import org.apache.camel.Exchange;
-import org.apache.camel.impl.DefaultProducer;
+import org.apache.camel.impl.DefaultAsyncProducer;
 
-public class CqlProducer extends DefaultProducer {
+public class CqlProducer extends DefaultAsyncProducer {
 
 	private CqlEndpoint cassandraEndpoint = null;
 
+	// used for completing exchanges when the Client is in async mode
+	private ExecutorService executorService = null;
+
 	public CqlProducer(CqlEndpoint endpoint) {
 		super(endpoint);
 		cassandraEndpoint = endpoint;
 	}
 
 	// this is the method that is called to process an incoming message
-	public void process(Exchange exchange) throws Exception {
+	public boolean process(Exchange exchange, AsyncCallback callback) {
 		// tuck this producer's endpoint in the exchange
 		exchange.setProperty(CqlComponent.CASSY_ENDPOINT_PROP,
 				getCassandraEndpoint());
-		// call into this endpoint's Client
-		getCassandraEndpoint().getClient().process(exchange);
+		Client client = getCassandraEndpoint().getClient();
+		// if the Client is in async mode, then the exchange is completed by
+		// the driver's callback
+		if (client.isAsync() && getExecutorService() != null) {
+			return client.process(exchange, callback, getExecutorService());
+		}
+		// else call into this endpoint's Client and block until done
+		try {
+			client.process(exchange);
+		} catch (Exception exc) {
+			exchange.setException(exc);
+		}
+		callback.done(true);
+		return true;
+	}
+
+	@Override
+	protected void doStart() throws Exception {
+		super.doStart();
+		if (getCassandraEndpoint().getClient().isAsync()
+				&& executorService == null) {
+			executorService = getEndpoint().getCamelContext()
+					.getExecutorServiceManager()
+					.newDefaultThreadPool(this, "CqlProducer");
+		}
+	}
+
+	@Override
+	protected void doStop() throws Exception {
+		if (executorService != null) {
+			getEndpoint().getCamelContext().getExecutorServiceManager()
+					.shutdown(executorService);
+			executorService = null;
+		}
+		super.doStop();
 	}
 
 	protected CqlEndpoint getCassandraEndpoint() {
 		return cassandraEndpoint;
 	}
 
+	protected ExecutorService getExecutorService() {
+		return executorService;
+	}
+
 }
@@ -0,0 +1,269 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.metis.cassandra;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A bounded cache of the rows returned by a SELECT statement, keyed by the
+ * statement's canonicalized params. Entries expire ttl milliseconds after
+ * they were cached and the least recently used entries are evicted when the
+ * cache holds more than maxEntries entries or, if maxBytes is greater than 0,
+ * more than (an estimated) maxBytes bytes of rows.
+ * <p>
+ * Each entry is tagged with the partition (if known) from which its rows were
+ * read, so that a write can invalidate only the entries of the partition that
+ * it wrote to. Each invalidation bumps the cache's generation; rows read
+ * before an invalidation, but put after it, are not cached, since they may
+ * not reflect the write.
+ * <p>
+ * The rows are copied on their way in and out, so that the caller can modify
+ * the rows that it is given. Read-only CqlRows are not copied.
+ */
+final class CqlResultCache {
+
+	// rough per-object overheads used for estimating the size of the rows
+	private static final int OBJECT_OVERHEAD = 16;
+	private static final int ENTRY_OVERHEAD = 32;
+
+	private final long ttl;
+	private final int maxEntries;
+	private final long maxBytes;
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(
+			16, 0.75f, true);
+	private long bytes;
+	private long generation;
+	private long hits;
+	private long misses;
+	private long evictions;
+	private long invalidations;
+
+	CqlResultCache(long ttl, int maxEntries, long maxBytes) {
+		this.ttl = ttl;
+		this.maxEntries = maxEntries;
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Returns a copy of the rows cached under the given key, or null if there
+	 * are none or they have expired.
+	 */
+	List<Map<String, Object>> get(String key) {
+		Entry entry = null;
+		synchronized (this) {
+			entry = entries.get(key);
+			if (entry != null && entry.expires <= System.currentTimeMillis()) {
+				remove(key);
+				entry = null;
+			}
+			if (entry == null) {
+				misses++;
+				return null;
+			}
+			hits++;
+		}
+		return copyRows(entry.rows);
+	}
+
+	/**
+	 * @return the current generation, which is to be handed back to put()
+	 */
+	synchronized long getGeneration() {
+		return generation;
+	}
+
+	/**
+	 * Caches a copy of the given rows under the given key, unless the cache
+	 * has been invalidated since the given generation was taken or the rows
+	 * alone exceed maxBytes. Returns true if the rows were cached.
+	 */
+	boolean put(String key, String partition, List<Map<String, Object>> rows,
+			long gen) {
+		List<Map<String, Object>> copy = copyRows(rows);
+		long size = ENTRY_OVERHEAD + sizeOf(key) + sizeOf(copy);
+		if (maxBytes > 0 && size > maxBytes) {
+			return false;
+		}
+		synchronized (this) {
+			if (gen != generation) {
+				return false;
+			}
+			remove(key);
+			entries.put(key, new Entry(copy, partition, size,
+					System.currentTimeMillis() + ttl));
+			bytes += size;
+			// evict the least recently used entries
+			Iterator<Entry> it = entries.values().iterator();
+			while (it.hasNext()
+					&& (entries.size() > maxEntries || (maxBytes > 0 && bytes > maxBytes))) {
+				bytes -= it.next().size;
+				it.remove();
+				evictions++;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Removes the entries of the given partition and those whose partition
+	 * is not known. A null partition removes all the entries.
+	 */
+	synchronized void invalidate(String partition) {
+		generation++;
+		invalidations++;
+		if (partition == null) {
+			entries.clear();
+			bytes = 0;
+			return;
+		}
+		Iterator<Entry> it = entries.values().iterator();
+		while (it.hasNext()) {
+			Entry entry = it.next();
+			if (entry.partition == null || entry.partition.equals(partition)) {
+				bytes -= entry.size;
+				it.remove();
+			}
+		}
+	}
+
+	synchronized int size() {
+		return entries.size();
+	}
+
+	synchronized long getBytes() {
+		return bytes;
+	}
+
+	synchronized long getHits() {
+		return hits;
+	}
+
+	synchronized long getMisses() {
+		return misses;
+	}
+
+	synchronized long getEvictions() {
+		return evictions;
+	}
+
+	synchronized long getInvalidations() {
+		return invalidations;
+	}
+
+	private void remove(String key) {
+		Entry entry = entries.remove(key);
+		if (entry != null) {
+			bytes -= entry.size;
+		}
+	}
+
+	/**
+	 * Returns a copy of the given rows. Each row's collections and
+	 * ByteBuffers are also copied; their elements, like the row's other
+	 * values, are not. A CqlRow is copied into a CqlRow of the same schema.
+	 */
+	static List<Map<String, Object>> copyRows(List<Map<String, Object>> rows) {
+		List<Map<String, Object>> copy = new ArrayList<Map<String, Object>>(
+				rows.size());
+		for (Map<String, Object> row : rows) {
+			if (row instanceof CqlRow) {
+				copy.add(((CqlRow) row).copy());
+				continue;
+			}
+			Map<String, Object> rowCopy = new HashMap<String, Object>(row);
+			for (Map.Entry<String, Object> entry : rowCopy.entrySet()) {
+				entry.setValue(copyValue(entry.getValue()));
+			}
+			copy.add(rowCopy);
+		}
+		return copy;
+	}
+
+	/**
+	 * Returns a copy of the given value if it is a collection or ByteBuffer,
+	 * which the reader of a row could modify; else the value itself.
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	static Object copyValue(Object value) {
+		if (value instanceof List) {
+			return new ArrayList((List) value);
+		} else if (value instanceof Set) {
+			return new HashSet((Set) value);
+		} else if (value instanceof Map) {
+			return new HashMap((Map) value);
+		} else if (value instanceof ByteBuffer) {
+			ByteBuffer buffer = ((ByteBuffer) value).duplicate();
+			ByteBuffer bufferCopy = ByteBuffer.allocate(buffer.remaining());
+			bufferCopy.put(buffer);
+			bufferCopy.flip();
+			return bufferCopy;
+		}
+		return value;
+	}
+
+	/**
+	 * Returns a rough estimate of the number of bytes held by the given
+	 * value.
+	 */
+	@SuppressWarnings("rawtypes")
+	static long sizeOf(Object value) {
+		if (value == null) {
+			return 0;
+		} else if (value instanceof String) {
+			return OBJECT_OVERHEAD + 2L * ((String) value).length();
+		} else if (value instanceof ByteBuffer) {
+			return OBJECT_OVERHEAD + ((ByteBuffer) value).remaining();
+		} else if (value instanceof Map) {
+			long size = OBJECT_OVERHEAD;
+			for (Object obj : ((Map) value).entrySet()) {
+				Map.Entry entry = (Map.Entry) obj;
+				size += ENTRY_OVERHEAD + sizeOf(entry.getKey())
+						+ sizeOf(entry.getValue());
+			}
+			return size;
+		} else if (value instanceof Collection) {
+			long size = OBJECT_OVERHEAD;
+			for (Object obj : (Collection) value) {
+				size += 8 + sizeOf(obj);
+			}
+			return size;
+		}
+		return OBJECT_OVERHEAD + 8;
+	}
+
+	private static final class Entry {
+		private final List<Map<String, Object>> rows;
+		private final String partition;
+		private final long size;
+		private final long expires;
+
+		Entry(List<Map<String, Object>> rows, String partition, long size,
+				long expires) {
+			this.rows = rows;
+			this.partition = partition;
+			this.size = size;
+			this.expires = expires;
+		}
+	}
+
+}
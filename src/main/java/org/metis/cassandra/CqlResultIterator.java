@@ -0,0 +1,147 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.metis.cassandra;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Row;
+
+/**
+ * A lazy Iterator over the rows of a SELECT's result set, where each row is
+ * returned as a Map. Rows are transferred to Maps only as they are requested
+ * and the driver fetches the result set's pages as they are needed; thus, a
+ * route (e.g., a streaming splitter) can work its way through a very large
+ * result set in constant memory.
+ * 
+ * If the CQL statement is using the paging state, then the iterator stops at
+ * the end of the current page, else it walks the entire result set. The
+ * iterator releases the result set when it is either exhausted or closed.
+ * 
+ * If a prefetch threshold is given, then the next page is fetched in the
+ * background as soon as the number of unread rows in the current page drops
+ * to that threshold; this way, the reader seldom has to wait on the network.
+ */
+public class CqlResultIterator implements Iterator<Map<String, Object>>,
+		Iterable<Map<String, Object>>, Closeable {
+
+	private static final Logger LOG = LoggerFactory
+			.getLogger(CqlResultIterator.class);
+
+	private ResultSet resultSet;
+	private CqlRowDecoder decoder;
+	// whether the iterator is allowed to fetch beyond the current page
+	private boolean canFetch;
+	// a negative value disables prefetching
+	private int prefetchThreshold = -1;
+	private Row nextRow;
+	private long rowCount;
+
+	public CqlResultIterator(ResultSet resultSet, boolean canFetch) {
+		this.resultSet = resultSet;
+		this.decoder = new CqlRowDecoder(resultSet.getColumnDefinitions());
+		this.canFetch = canFetch;
+	}
+
+	public CqlResultIterator(ResultSet resultSet, boolean canFetch,
+			int prefetchThreshold) {
+		this(resultSet, canFetch);
+		this.prefetchThreshold = prefetchThreshold;
+	}
+
+	/**
+	 * Decodes the rows with the given decoder, which is typically the CQL
+	 * statement's cached decoder, rather than building a decoder of its own.
+	 */
+	CqlResultIterator(ResultSet resultSet, boolean canFetch,
+			int prefetchThreshold, CqlRowDecoder decoder) {
+		this.resultSet = resultSet;
+		this.decoder = decoder;
+		this.canFetch = canFetch;
+		this.prefetchThreshold = prefetchThreshold;
+	}
+
+	public boolean hasNext() {
+		if (nextRow == null && resultSet != null) {
+			// the driver ignores this request if the next page is already
+			// being fetched
+			if (canFetch && prefetchThreshold >= 0
+					&& !resultSet.isFullyFetched()
+					&& resultSet.getAvailableWithoutFetching() <= prefetchThreshold) {
+				resultSet.fetchMoreResults();
+			}
+			if (canFetch || resultSet.getAvailableWithoutFetching() > 0) {
+				nextRow = resultSet.one();
+			}
+			if (nextRow == null) {
+				close();
+			}
+		}
+		return nextRow != null;
+	}
+
+	public Map<String, Object> next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		Row row = nextRow;
+		nextRow = null;
+		rowCount++;
+		return decoder.decode(row);
+	}
+
+	public void remove() {
+		throw new UnsupportedOperationException("remove");
+	}
+
+	/**
+	 * The iterator can only be walked once
+	 */
+	public Iterator<Map<String, Object>> iterator() {
+		return this;
+	}
+
+	/**
+	 * Releases the result set. Any rows that have not been read are
+	 * discarded.
+	 */
+	public void close() {
+		if (resultSet != null) {
+			LOG.trace("close: closing after this many rows {}", rowCount);
+			resultSet = null;
+			nextRow = null;
+		}
+	}
+
+	/**
+	 * @return the number of rows that have been returned
+	 */
+	public long getRowCount() {
+		return rowCount;
+	}
+
+	/**
+	 * @return true if the iterator has been exhausted or closed
+	 */
+	public boolean isClosed() {
+		return resultSet == null;
+	}
+
+}
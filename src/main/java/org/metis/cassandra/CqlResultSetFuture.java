@@ -0,0 +1,65 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.metis.cassandra;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.exceptions.DriverException;
+import com.datastax.driver.core.exceptions.DriverInternalError;
+import com.google.common.util.concurrent.AbstractFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+/**
+ * A ResultSetFuture that is completed by this package, rather than by the
+ * driver; e.g., the future of a hedged read or of a statement that is waiting
+ * to be sent. Its failures are rethrown the way the driver rethrows them.
+ */
+abstract class CqlResultSetFuture extends AbstractFuture<ResultSet> implements
+		ResultSetFuture {
+
+	public ResultSet getUninterruptibly() {
+		try {
+			return Uninterruptibles.getUninterruptibly(this);
+		} catch (ExecutionException exc) {
+			throw propagate(exc);
+		}
+	}
+
+	public ResultSet getUninterruptibly(long timeout, TimeUnit unit)
+			throws TimeoutException {
+		try {
+			return Uninterruptibles.getUninterruptibly(this, timeout, unit);
+		} catch (ExecutionException exc) {
+			throw propagate(exc);
+		}
+	}
+
+	// rethrows the cause of the given exception the way the driver does
+	private static RuntimeException propagate(ExecutionException exc) {
+		Throwable cause = exc.getCause();
+		if (cause instanceof DriverException) {
+			throw ((DriverException) cause).copy();
+		} else if (cause instanceof RuntimeException) {
+			throw (RuntimeException) cause;
+		} else if (cause instanceof Error) {
+			throw (Error) cause;
+		}
+		throw new DriverInternalError("Unexpected exception thrown", cause);
+	}
+
+}
@@ -0,0 +1,172 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.metis.cassandra;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A compact, read-only Map view of a result set's row. The row's values are
+ * held in a flat array and the column names, along with their indexes, are
+ * held in a Schema that is shared by all of the rows of a result set;
+ * therefore, a row does not carry its own hash table, entries or key
+ * Strings. Attempts to modify the row result in an
+ * UnsupportedOperationException.
+ */
+public final class CqlRow extends AbstractMap<String, Object> {
+
+	private final Schema schema;
+	private final Object[] values;
+	private Set<Map.Entry<String, Object>> entrySet;
+
+	CqlRow(Schema schema, Object[] values) {
+		this.schema = schema;
+		this.values = values;
+	}
+
+	@Override
+	public int size() {
+		return schema.size();
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return schema.indexOf(key) >= 0;
+	}
+
+	@Override
+	public Object get(Object key) {
+		int i = schema.indexOf(key);
+		return (i >= 0) ? values[i] : null;
+	}
+
+	/**
+	 * @return the value of the column at the given index
+	 */
+	public Object get(int i) {
+		return values[i];
+	}
+
+	/**
+	 * Returns a copy of this row, of the same schema, whose collection and
+	 * ByteBuffer values are also copied; so, a reader of the copy cannot
+	 * modify the values of this row.
+	 */
+	CqlRow copy() {
+		Object[] valuesCopy = new Object[values.length];
+		for (int i = 0; i < values.length; i++) {
+			valuesCopy[i] = CqlResultCache.copyValue(values[i]);
+		}
+		return new CqlRow(schema, valuesCopy);
+	}
+
+	/**
+	 * @return the names of the row's columns, in column order
+	 */
+	public Set<String> keySet() {
+		return schema.getKeySet();
+	}
+
+	@Override
+	public Set<Map.Entry<String, Object>> entrySet() {
+		if (entrySet == null) {
+			entrySet = new AbstractSet<Map.Entry<String, Object>>() {
+				public int size() {
+					return schema.size();
+				}
+
+				public Iterator<Map.Entry<String, Object>> iterator() {
+					return new Iterator<Map.Entry<String, Object>>() {
+						private int i;
+
+						public boolean hasNext() {
+							return i < schema.size();
+						}
+
+						public Map.Entry<String, Object> next() {
+							if (i >= schema.size()) {
+								throw new NoSuchElementException();
+							}
+							Map.Entry<String, Object> entry = new AbstractMap.SimpleImmutableEntry<String, Object>(
+									schema.keys[i], values[schema.slots[i]]);
+							i++;
+							return entry;
+						}
+
+						public void remove() {
+							throw new UnsupportedOperationException("remove");
+						}
+					};
+				}
+			};
+		}
+		return entrySet;
+	}
+
+	/**
+	 * The column names of a result set and their indexes, which are shared by
+	 * all of the result set's rows. As with a HashMap row, a name that appears
+	 * more than once is a single key, in the position of its first
+	 * appearance, whose value is that of its last column.
+	 */
+	static final class Schema {
+
+		private final Map<String, Integer> indexes;
+		private final Set<String> keySet;
+		// the distinct names, in column order, and the index of each one's
+		// value
+		private final String[] keys;
+		private final int[] slots;
+
+		Schema(String[] names) {
+			Map<String, Integer> map = new HashMap<String, Integer>(
+					(int) (names.length / 0.75f) + 1);
+			for (int i = 0; i < names.length; i++) {
+				// the last of any duplicate names wins
+				map.put(names[i], i);
+			}
+			this.indexes = map;
+			this.keySet = Collections
+					.unmodifiableSet(new LinkedHashSet<String>(
+							Arrays.asList(names)));
+			this.keys = keySet.toArray(new String[keySet.size()]);
+			this.slots = new int[keys.length];
+			for (int i = 0; i < keys.length; i++) {
+				slots[i] = indexes.get(keys[i]);
+			}
+		}
+
+		int size() {
+			return keys.length;
+		}
+
+		int indexOf(Object name) {
+			Integer i = indexes.get(name);
+			return (i != null) ? i : -1;
+		}
+
+		Set<String> getKeySet() {
+			return keySet;
+		}
+	}
+
+}
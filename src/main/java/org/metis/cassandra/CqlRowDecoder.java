@@ -0,0 +1,253 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.metis.cassandra;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.datastax.driver.core.ColumnDefinitions;
+import com.datastax.driver.core.DataType;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.TupleValue;
+
+/**
+ * A plan for transferring the rows of a result set to Maps. The plan is built
+ * once from the result set's column definitions and holds, for each column,
+ * the column's name and a reader that fetches the column's value by index;
+ * therefore, decoding a row neither looks up its columns by name nor switches
+ * on their types. The values are the same as those returned by
+ * CqlToken.getObjectFromRow().
+ */
+final class CqlRowDecoder {
+
+	private final ColumnDefinitions cDefs;
+	private final String[] names;
+	private final DataType.Name[] types;
+	private final ColumnReader[] readers;
+	// shared by the compact rows created by this plan
+	private final CqlRow.Schema schema;
+
+	CqlRowDecoder(ColumnDefinitions cDefs) {
+		this.cDefs = cDefs;
+		int size = cDefs.size();
+		names = new String[size];
+		types = new DataType.Name[size];
+		readers = new ColumnReader[size];
+		for (int i = 0; i < size; i++) {
+			// the names are shared by all the Maps created by this plan
+			names[i] = cDefs.getName(i).intern();
+			types[i] = cDefs.getType(i).getName();
+			readers[i] = getReader(types[i]);
+		}
+		schema = new CqlRow.Schema(names);
+	}
+
+	/**
+	 * Returns the given decoder if it applies to the given column
+	 * definitions; otherwise, a new decoder is returned.
+	 * 
+	 * @param decoder
+	 *            may be null
+	 * @param cDefs
+	 * @return
+	 */
+	static CqlRowDecoder getDecoder(CqlRowDecoder decoder,
+			ColumnDefinitions cDefs) {
+		return (decoder != null && decoder.isFor(cDefs)) ? decoder
+				: new CqlRowDecoder(cDefs);
+	}
+
+	/**
+	 * Returns true if this plan applies to the given column definitions; i.e.,
+	 * they have the same column names and types, in the same order.
+	 */
+	boolean isFor(ColumnDefinitions other) {
+		if (other == cDefs) {
+			return true;
+		} else if (other == null || other.size() != names.length) {
+			return false;
+		}
+		for (int i = 0; i < names.length; i++) {
+			if (other.getType(i).getName() != types[i]
+					|| !other.getName(i).equals(names[i])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Transfer the given row to a Map, where each of the row's columns is
+	 * keyed by its name.
+	 */
+	Map<String, Object> decode(Row row) {
+		Map<String, Object> map = new HashMap<String, Object>(
+				(int) (names.length / 0.75f) + 1);
+		for (int i = 0; i < names.length; i++) {
+			map.put(names[i], readers[i].read(row, i));
+		}
+		return map;
+	}
+
+	/**
+	 * Transfer the given row to a compact, read-only Map that shares this
+	 * plan's column names with all the other rows it decodes.
+	 */
+	CqlRow decodeCompact(Row row) {
+		Object[] values = new Object[names.length];
+		for (int i = 0; i < names.length; i++) {
+			values[i] = readers[i].read(row, i);
+		}
+		return new CqlRow(schema, values);
+	}
+
+	/**
+	 * Reads a column's value, by index, from a row.
+	 */
+	private static abstract class ColumnReader {
+		abstract Object read(Row row, int i);
+	}
+
+	private static ColumnReader getReader(DataType.Name type) {
+		switch (type) {
+		case BLOB:
+			return new ColumnReader() {
+				Object read(Row row, int i) {
+					return row.getBytes(i);
+				}
+			};
+		case DECIMAL:
+			return new ColumnReader() {
+				Object read(Row row, int i) {
+					return row.getDecimal(i);
+				}
+			};
+		case VARINT:
+			return new ColumnReader() {
+				Object read(Row row, int i) {
+					return row.getVarint(i);
+				}
+			};
+		case BOOLEAN:
+			return new ColumnReader() {
+				Object read(Row row, int i) {
+					return row.getBool(i);
+				}
+			};
+		case INET:
+			return new ColumnReader() {
+				Object read(Row row, int i) {
+					return row.getInet(i);
+				}
+			};
+		case INT:
+			return new ColumnReader() {
+				Object read(Row row, int i) {
+					return row.getInt(i);
+				}
+			};
+		case SMALLINT:
+			return new ColumnReader() {
+				Object read(Row row, int i) {
+					return row.getShort(i);
+				}
+			};
+		case TINYINT:
+			return new ColumnReader() {
+				Object read(Row row, int i) {
+					return row.getByte(i);
+				}
+			};
+		case BIGINT:
+		case COUNTER:
+		case TIME:
+			return new ColumnReader() {
+				Object read(Row row, int i) {
+					return row.getLong(i);
+				}
+			};
+		case FLOAT:
+			return new ColumnReader() {
+				Object read(Row row, int i) {
+					return row.getFloat(i);
+				}
+			};
+		case DOUBLE:
+			return new ColumnReader() {
+				Object read(Row row, int i) {
+					return row.getDouble(i);
+				}
+			};
+		case DATE:
+			return new ColumnReader() {
+				Object read(Row row, int i) {
+					return row.getDate(i);
+				}
+			};
+		case TIMESTAMP:
+			return new ColumnReader() {
+				Object read(Row row, int i) {
+					return row.getTimestamp(i);
+				}
+			};
+		case TIMEUUID:
+		case UUID:
+			return new ColumnReader() {
+				Object read(Row row, int i) {
+					return row.getUUID(i);
+				}
+			};
+		case SET:
+			return new ColumnReader() {
+				Object read(Row row, int i) {
+					return row.getSet(i, String.class);
+				}
+			};
+		case LIST:
+			return new ColumnReader() {
+				Object read(Row row, int i) {
+					return row.getList(i, String.class);
+				}
+			};
+		case MAP:
+			return new ColumnReader() {
+				Object read(Row row, int i) {
+					return row.getMap(i, String.class, String.class);
+				}
+			};
+		case TUPLE:
+			return new ColumnReader() {
+				Object read(Row row, int i) {
+					// A tuple is returned as a List of Objects
+					TupleValue tv = row.getTupleValue(i);
+					int numValues = tv.getType().getComponentTypes().size();
+					List<Object> tupleObjs = new ArrayList<Object>(numValues);
+					for (int j = 0; j < numValues; j++) {
+						tupleObjs.add(tv.getObject(j));
+					}
+					return tupleObjs;
+				}
+			};
+		default:
+			return new ColumnReader() {
+				Object read(Row row, int i) {
+					return row.getString(i);
+				}
+			};
+		}
+	}
+
+}
@@ -0,0 +1,323 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.metis.cassandra;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.datastax.driver.core.Host;
+import com.datastax.driver.core.Metadata;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.Token;
+import com.datastax.driver.core.TokenRange;
+
+/**
+ * An Iterator over the rows of a full table scan. The ring is split into
+ * token ranges, via the cluster's metadata, and each range is read by its own
+ * task on the given executor; therefore, the scan runs in parallel and scales
+ * with the size of the cluster. The driver pages through each range and the
+ * rows are handed to the reader, as Maps, as they arrive. Rows from different
+ * ranges are interleaved, so there is no ordering across ranges.
+ * 
+ * The tasks are throttled by a bounded queue; i.e., they wait when the reader
+ * falls behind. The scan is stopped when the iterator is exhausted or closed;
+ * a reader that stops short of the end must close() the iterator, else the
+ * tasks hold on to the shared executor's threads. As a safeguard, a scan
+ * whose rows have not been read for the statement's scanIdleTimeout is
+ * deemed abandoned and stopped, and its reader, should it return, gets an
+ * IllegalStateException.
+ */
+public class CqlScanIterator implements Iterator<Map<String, Object>>,
+		Iterable<Map<String, Object>>, Closeable {
+
+	private static final Logger LOG = LoggerFactory
+			.getLogger(CqlScanIterator.class);
+
+	// marks the end of the scan
+	private static final Object END = new Object();
+
+	private final CqlStmnt cqlStmnt;
+	private final Map<String, Object> params;
+	private final Session session;
+	private final BlockingQueue<Object> queue;
+	private final List<Future<?>> tasks = new ArrayList<Future<?>>();
+	private final AtomicInteger remaining;
+	private final long idleTimeout;
+	// when the reader last took a row off the queue
+	private volatile long lastTaken = System.currentTimeMillis();
+	private volatile boolean closed;
+	private volatile boolean abandoned;
+	private Object next;
+	private long rowCount;
+
+	public CqlScanIterator(CqlStmnt cqlStmnt, Map<String, Object> params,
+			Session session, ExecutorService executor, int queueSize) {
+		this.cqlStmnt = cqlStmnt;
+		this.params = params;
+		this.session = session;
+		this.queue = new ArrayBlockingQueue<Object>(Math.max(1, queueSize));
+		this.idleTimeout = cqlStmnt.getScanIdleTimeout();
+
+		List<Token[]> ranges = getRanges(session, cqlStmnt.getScanSplits());
+		LOG.debug(cqlStmnt.getBeanName() + ":scan: scanning {} token ranges",
+				ranges.size());
+		remaining = new AtomicInteger(ranges.size());
+		if (ranges.isEmpty()) {
+			queue.add(END);
+		}
+		// a task may stop the scan while the others are being submitted
+		synchronized (this) {
+			for (Token[] range : ranges) {
+				tasks.add(executor.submit(new RangeScan(range[0], range[1])));
+			}
+		}
+	}
+
+	/**
+	 * Returns the ring's token ranges, each as a {start, end} pair, where each
+	 * range has been split into the given number of splits. The end is null
+	 * for a range that ends at the ring's minimum token. The ranges are
+	 * interleaved by replica, so that the ranges that are read concurrently
+	 * are spread across the cluster's nodes.
+	 */
+	static List<Token[]> getRanges(Session session, int splits) {
+		Metadata metadata = session.getCluster().getMetadata();
+		String keyspace = session.getLoggedKeyspace();
+		Map<Host, List<Token[]>> byReplica = new LinkedHashMap<Host, List<Token[]>>();
+		for (TokenRange range : metadata.getTokenRanges()) {
+			Host replica = null;
+			if (keyspace != null) {
+				Set<Host> replicas = metadata.getReplicas(keyspace, range);
+				if (!replicas.isEmpty()) {
+					replica = replicas.iterator().next();
+				}
+			}
+			List<Token[]> list = byReplica.get(replica);
+			if (list == null) {
+				list = new ArrayList<Token[]>();
+				byReplica.put(replica, list);
+			}
+			for (TokenRange unwrapped : range.unwrap()) {
+				// an unwrapped range that ends at or below its start ends at
+				// the minimum token, which cannot be used as an upper bound
+				if (unwrapped.getEnd().compareTo(unwrapped.getStart()) <= 0) {
+					list.add(new Token[] { unwrapped.getStart(), null });
+					continue;
+				}
+				List<TokenRange> split = (splits > 1) ? unwrapped
+						.splitEvenly(splits) : Collections
+						.singletonList(unwrapped);
+				for (TokenRange s : split) {
+					list.add(new Token[] { s.getStart(), s.getEnd() });
+				}
+			}
+		}
+		// round-robin through the replicas
+		List<Token[]> ranges = new ArrayList<Token[]>();
+		boolean added = true;
+		for (int i = 0; added; i++) {
+			added = false;
+			for (List<Token[]> list : byReplica.values()) {
+				if (i < list.size()) {
+					ranges.add(list.get(i));
+					added = true;
+				}
+			}
+		}
+		return ranges;
+	}
+
+	public boolean hasNext() {
+		if (abandoned) {
+			throw new IllegalStateException(cqlStmnt.getBeanName()
+					+ ":scan: the scan was abandoned after not being read "
+					+ "for " + idleTimeout + " milliseconds");
+		}
+		if (next == null && !closed) {
+			try {
+				next = queue.take();
+				lastTaken = System.currentTimeMillis();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				close();
+				return false;
+			}
+			if (next == END) {
+				close();
+			}
+		}
+		return next != null && !closed;
+	}
+
+	@SuppressWarnings("unchecked")
+	public Map<String, Object> next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		Object obj = next;
+		next = null;
+		if (obj instanceof Exception) {
+			close();
+			throw new IllegalStateException(cqlStmnt.getBeanName()
+					+ ":scan: a token range scan failed", (Exception) obj);
+		}
+		rowCount++;
+		return (Map<String, Object>) obj;
+	}
+
+	public void remove() {
+		throw new UnsupportedOperationException("remove");
+	}
+
+	/**
+	 * The iterator can only be walked once
+	 */
+	public Iterator<Map<String, Object>> iterator() {
+		return this;
+	}
+
+	/**
+	 * Stops the scan. Any rows that have not been read are discarded.
+	 */
+	public void close() {
+		if (!closed) {
+			LOG.trace(cqlStmnt.getBeanName()
+					+ ":scan: closing after this many rows {}", rowCount);
+			stop();
+			next = null;
+		}
+	}
+
+	// stops the range tasks; called by the reader or by a range task
+	private synchronized void stop() {
+		closed = true;
+		for (Future<?> task : tasks) {
+			task.cancel(false);
+		}
+		queue.clear();
+	}
+
+	/**
+	 * @return the number of rows that have been returned
+	 */
+	public long getRowCount() {
+		return rowCount;
+	}
+
+	/**
+	 * @return true if the scan has been exhausted or closed
+	 */
+	public boolean isClosed() {
+		return closed;
+	}
+
+	/**
+	 * Hand the given object to the reader; waits while the queue is full. If
+	 * the reader has not taken anything for longer than the idle timeout,
+	 * then the scan is deemed abandoned and is stopped.
+	 */
+	private void put(Object obj) throws InterruptedException {
+		while (!closed) {
+			if (queue.offer(obj, 100L, TimeUnit.MILLISECONDS)) {
+				return;
+			}
+			if (idleTimeout > 0
+					&& System.currentTimeMillis() - lastTaken > idleTimeout) {
+				LOG.warn(cqlStmnt.getBeanName()
+						+ ":scan: not read for {} milliseconds, stopping the "
+						+ "scan; the iterator should have been closed",
+						idleTimeout);
+				abandoned = true;
+				stop();
+			}
+		}
+	}
+
+	/**
+	 * Reads one token range
+	 */
+	private class RangeScan implements Runnable {
+
+		private final Token start;
+		private final Token end;
+
+		RangeScan(Token start, Token end) {
+			this.start = start;
+			this.end = end;
+		}
+
+		public void run() {
+			try {
+				if (closed) {
+					return;
+				}
+				Statement stmnt = cqlStmnt.getScanStatement(params, session,
+						start, end);
+				if (stmnt == null) {
+					throw new Exception("unable to bind scan statement");
+				}
+				ResultSet resultSet = session.execute(stmnt);
+				CqlRowDecoder decoder = cqlStmnt.getRowDecoder(resultSet
+						.getColumnDefinitions());
+				int threshold = cqlStmnt.getPrefetchThreshold();
+				for (Row row : resultSet) {
+					if (closed) {
+						return;
+					}
+					if (threshold >= 0
+							&& !resultSet.isFullyFetched()
+							&& resultSet.getAvailableWithoutFetching() <= threshold) {
+						resultSet.fetchMoreResults();
+					}
+					put(decoder.decode(row));
+				}
+			} catch (Exception exc) {
+				LOG.error(cqlStmnt.getBeanName()
+						+ ":scan: range ({}, {}] failed with this exception {}",
+						start, end, exc.toString());
+				try {
+					put(exc);
+				} catch (InterruptedException ignore) {
+				}
+			} finally {
+				if (remaining.decrementAndGet() == 0) {
+					try {
+						put(END);
+					} catch (InterruptedException ignore) {
+					}
+				}
+			}
+		}
+	}
+
+}
@@ -14,24 +14,47 @@
 package org.metis.cassandra;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Set;
 import java.util.List;
-import java.util.Stack;
+import java.util.TreeMap;
+import java.util.Queue;
 import java.util.concurrent.ConcurrentHashMap;
-
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.datastax.driver.core.ColumnDefinitions;
 import com.datastax.driver.core.ConsistencyLevel;
+import com.datastax.driver.core.DataType;
 import com.datastax.driver.core.PagingState;
 import com.datastax.driver.core.Session;
 import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
 import com.datastax.driver.core.PreparedStatement;
 import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.ColumnMetadata;
+import com.datastax.driver.core.KeyspaceMetadata;
+import com.datastax.driver.core.Metadata;
 import com.datastax.driver.core.SimpleStatement;
 import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.TableMetadata;
+import com.datastax.driver.core.Token;
 import com.datastax.driver.core.policies.RetryPolicy;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
 
 import org.apache.camel.Message;
+import org.apache.camel.impl.DefaultMessage;
 import org.metis.utils.Utils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -96,11 +119,105 @@ public class CqlStmnt implements InitializingBean, BeanNameAware {
 
 	// A Map of bound and simple statement pools, where each pool pertains to a
 	// particular Cassandra session.
-	private Map<Session, CqlStmntPool> stmntPool = new ConcurrentHashMap<Session, CqlStmntPool>();
+	private ConcurrentMap<Session, CqlStmntPool> stmntPool = new ConcurrentHashMap<Session, CqlStmntPool>();
 
 	// governs the statement stack sizes in each CqlStmntPool
 	private int stackSize = 25;
 
+	// the plan for decoding the rows returned by this statement; it is
+	// replaced if the statement's result set metadata changes
+	private volatile CqlRowDecoder rowDecoder;
+
+	// the number of times a statement was, or was not, taken from a pool
+	private final AtomicLong poolHits = new AtomicLong();
+	private final AtomicLong poolMisses = new AtomicLong();
+
+	// when the number of unread rows in a page drops to this threshold, the
+	// next page is fetched in the background. a negative value disables
+	// prefetching
+	private int prefetchThreshold = -1;
+	// whether a paging-state read fetches the page that follows the one it
+	// returns, for the next exchange to take, and how long (in milliseconds)
+	// an unclaimed page is held
+	private boolean prefetchPages;
+	private long prefetchTtl = 5000L;
+
+	// bounds the number of prefetched pages held by each CqlStmntPool
+	private static final int MAX_PREFETCHED = 64;
+
+	// the partition key column(s) used for scanning the table by token
+	// range; e.g., "videoid" or "videoid, tag". only used by SELECT
+	private String scanKey;
+
+	// the number of splits for each of the ring's token ranges
+	private int scanSplits = 1;
+
+	// how long (in milliseconds) a scan's rows may go unread before the scan
+	// is deemed abandoned and stopped. 0 or less never stops it
+	private long scanIdleTimeout = 60000L;
+
+	// used for locating where the token range is added to a scan statement
+	private static final Pattern WHERE_CLAUSE = Pattern.compile(
+			"\\swhere\\s", Pattern.CASE_INSENSITIVE);
+	private static final Pattern SCAN_TAIL = Pattern.compile(
+			"\\s(per\\s+partition\\s+limit|limit|allow\\s+filtering)\\b",
+			Pattern.CASE_INSENSITIVE);
+
+	// the result cache settings; a SELECT's rows are only cached if its
+	// cacheTtl is greater than 0
+	private long cacheTtl;
+	private int cacheMaxEntries = 1000;
+	private long cacheMaxBytes;
+
+	// when true, identical concurrent requests for this SELECT share one
+	// query. the requests are identical if their keys are equal; the key is
+	// given by the coalesceKeyMapper, else by the requests' params
+	private boolean coalesce;
+	private CqlKeyMapper coalesceKeyMapper;
+	// how long (in milliseconds) a request waits for the query it joined
+	private long coalesceTimeout = 10000L;
+	private final AtomicLong coalesceHits = new AtomicLong();
+	private final AtomicLong coalesceMisses = new AtomicLong();
+
+	// when true, a read of this (idempotent) SELECT that has not been
+	// answered within the hedgePercentile of its recent latencies, but no
+	// less than hedgeMinDelay milliseconds, is duplicated. no more than
+	// hedgeBudget percent of the reads are duplicated
+	private boolean hedge;
+	private double hedgePercentile = 95.0;
+	private long hedgeMinDelay = 1L;
+	private int hedgeBudget = 5;
+	private CqlHedger hedger;
+
+	// the (unqualified) table and, if any, the keyspace that this statement
+	// accesses
+	private String table;
+	private String tableKeyspace;
+
+	// the keys of the counter delta params, derived on first use
+	private volatile List<String> counterKeys;
+
+	// the columns that this statement restricts by equality (or, for an
+	// INSERT, sets), mapped to the keys of their params
+	private Map<String, String> columnKeys = Collections.emptyMap();
+
+	// whether this write is a lightweight transaction; i.e., it has an IF
+	// clause (e.g., "IF NOT EXISTS")
+	private boolean conditional;
+
+	// used for locating the table and the columns' params
+	private static final Pattern TABLE_NAME = Pattern
+			.compile(
+					"^(?:select\\s.*?\\sfrom|delete\\s.*?from|update|insert\\s+into)\\s+([^\\s(;]+)",
+					Pattern.CASE_INSENSITIVE);
+	private static final Pattern EQUALS_PARAM = Pattern.compile(
+			"([\\w\"]+)\\s*=\\s*`([^`]+)`", Pattern.CASE_INSENSITIVE);
+	private static final Pattern IF_CLAUSE = Pattern.compile("\\sif\\s",
+			Pattern.CASE_INSENSITIVE);
+	private static final Pattern INSERT_COLUMNS = Pattern.compile(
+			"^insert\\s+into\\s+[^\\s(]+\\s*\\(([^)]*)\\)\\s*values\\s*\\((.*)\\)",
+			Pattern.CASE_INSENSITIVE);
+
 	public CqlStmnt() {
 	}
 
@@ -488,6 +605,40 @@ public class CqlStmnt implements InitializingBean, BeanNameAware {
 		}
 		// finish this statement's initialization based on the derived tokens
 		init(tList);
+
+		// find the table and the params that restrict its columns, which are
+		// used for invalidating cached results
+		initColumnKeys();
+		conditional = !isSelect()
+				&& IF_CLAUSE.matcher(getStatement()).find();
+
+		// validate the scan mode
+		if (getScanKey() != null) {
+			if (!isSelect()) {
+				throw new IllegalArgumentException(getBeanName()
+						+ ": scanKey is only allowed for SELECT statements");
+			}
+			LOG.debug(getBeanName() + ":afterPropertiesSet: scan statement = ["
+					+ getScanStr(true) + "]");
+		}
+		if (isHedge()) {
+			if (!isSelect()) {
+				throw new IllegalArgumentException(getBeanName()
+						+ ": hedge is only allowed for SELECT statements");
+			}
+			// a read that is not idempotent is never hedged; the cluster's
+			// default idempotence applies if idempotent was not given
+			if (getMyIdempotent() != null && !isIdempotent()) {
+				throw new IllegalArgumentException(getBeanName()
+						+ ": hedge is only allowed for idempotent statements");
+			} else if (getMyIdempotent() == null) {
+				LOG.warn(getBeanName() + ":afterPropertiesSet: hedge is set, "
+						+ "but idempotent is not; the statement is only "
+						+ "hedged if the cluster's default idempotence is true");
+			}
+			hedger = new CqlHedger(getBeanName(), getHedgePercentile(),
+					getHedgeMinDelay(), getHedgeBudget());
+		}
 		// return new CqlStmnt(cql, tList);
 	}
 
@@ -500,6 +651,263 @@ public class CqlStmnt implements InitializingBean, BeanNameAware {
 	 */
 	public ResultSet execute(Map<String, Object> inParams, Message inMsg,
 			Session session) {
+		return execute(inParams, inMsg, session, true);
+	}
+
+	/**
+	 * Same as execute(Map, Message, Session), but if pooled is false, then the
+	 * statement is not taken from nor returned to the session's statement
+	 * pool. This is used when the returned result set is to be read beyond
+	 * its first page; when the driver fetches the next page, it reuses the
+	 * statement's bound values, so that statement cannot be shared.
+	 * 
+	 */
+	ResultSet execute(Map<String, Object> inParams, Message inMsg,
+			Session session, boolean pooled) {
+		return execute(inParams, inMsg, session, pooled, null);
+	}
+
+	/**
+	 * Same as execute(Map, Message, Session, boolean), but the hedge of a
+	 * hedged read is sent via the given sender.
+	 */
+	ResultSet execute(Map<String, Object> inParams, Message inMsg,
+			Session session, boolean pooled, CqlHedger.HedgeSender sender) {
+		try {
+			return executeOrFail(inParams, inMsg, session, pooled, sender);
+		} catch (RuntimeException exc) {
+			LOG.error(getBeanName() + ":execute: caught this exception {}", exc
+					.getClass().getName());
+			// Utils.dumpStackTrace(exc.getStackTrace());
+			// if (exc.getCause() != null) {
+			// Utils.dumpStackTrace(exc.getCause().getStackTrace());
+			// }
+			exc.printStackTrace();
+			return null;
+		}
+	}
+
+	/**
+	 * Same as execute(Map, Message, Session, boolean), but the exception of a
+	 * statement that fails is thrown, rather than logged; e.g., so that the
+	 * Client's concurrency limiter can tell whether the statement was
+	 * dropped. Returns null if the statement could not be prepared or bound.
+	 */
+	ResultSet executeOrFail(Map<String, Object> inParams, Message inMsg,
+			Session session, boolean pooled) {
+		return executeOrFail(inParams, inMsg, session, pooled, null);
+	}
+
+	/**
+	 * Same as executeOrFail(Map, Message, Session, boolean), but the hedge of
+	 * a hedged read is sent via the given sender.
+	 */
+	ResultSet executeOrFail(Map<String, Object> inParams, Message inMsg,
+			Session session, boolean pooled, CqlHedger.HedgeSender sender) {
+
+		// see if the requested page has already been fetched
+		ResultSetFuture prefetched = takePrefetched(inParams, inMsg, session);
+		if (prefetched != null) {
+			try {
+				ResultSet resultSet = prefetched.getUninterruptibly();
+				savePagingState(resultSet, inMsg);
+				prefetch(inParams, inMsg, session, resultSet);
+				return resultSet;
+			} catch (Exception exc) {
+				LOG.warn(getBeanName() + ":execute: prefetch failed with "
+						+ "this exception {}, fetching page again", exc
+						.getClass().getName());
+			}
+		}
+
+		// get a bound or simple statement that is ready to be executed
+		Statement stmnt = getStatement(inParams, inMsg, session, pooled);
+		if (stmnt == null) {
+			return null;
+		}
+
+		// execute the statement
+		ResultSetFuture hedged = null;
+		try {
+			ResultSet resultSet = null;
+			if (hedger != null) {
+				hedged = hedger.executeAsync(session, stmnt, sender);
+				resultSet = hedged.getUninterruptibly();
+			} else {
+				resultSet = session.execute(stmnt);
+			}
+			// save off the new current paging state
+			savePagingState(resultSet, inMsg);
+			// and get a head start on the next page
+			prefetch(inParams, inMsg, session, resultSet);
+			return resultSet;
+		} finally {
+			if (pooled) {
+				if (hedged != null) {
+					returnOnSettled(session, stmnt, hedged);
+				} else {
+					returnStatement(session, stmnt);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Called by the Client bean to asynchronously execute this CQL statement
+	 * with the given params. The returned future is completed by one of the
+	 * driver's I/O threads; therefore, whoever listens on the future must not
+	 * perform any blocking operations (e.g., fetching the next page of a
+	 * result set) from within that I/O thread.
+	 * 
+	 * Returns null if the statement could not be prepared or bound, which is
+	 * consistent with execute().
+	 * 
+	 */
+	public ResultSetFuture executeAsync(Map<String, Object> inParams,
+			Message inMsg, Session session) {
+		return executeAsync(inParams, inMsg, session, true);
+	}
+
+	/**
+	 * Same as executeAsync(Map, Message, Session), but if pooled is false,
+	 * then the statement is not taken from nor returned to the session's
+	 * statement pool.
+	 */
+	ResultSetFuture executeAsync(Map<String, Object> inParams,
+			Message inMsg, Session session, boolean pooled) {
+		return executeAsync(inParams, inMsg, session, pooled, null);
+	}
+
+	/**
+	 * Same as executeAsync(Map, Message, Session, boolean), but the hedge of
+	 * a hedged read is sent via the given sender.
+	 */
+	ResultSetFuture executeAsync(final Map<String, Object> inParams,
+			final Message inMsg, final Session session, final boolean pooled,
+			CqlHedger.HedgeSender sender) {
+
+		// see if the requested page has already been fetched or is being
+		// fetched
+		ResultSetFuture future = takePrefetched(inParams, inMsg, session);
+		if (future != null) {
+			Futures.addCallback(future, new FutureCallback<ResultSet>() {
+				public void onSuccess(ResultSet resultSet) {
+					savePagingState(resultSet, inMsg);
+					prefetch(inParams, inMsg, session, resultSet);
+				}
+
+				public void onFailure(Throwable t) {
+					LOG.error(getBeanName()
+							+ ":executeAsync: prefetch failed with this "
+							+ "exception {}", t.getClass().getName());
+				}
+			});
+			return future;
+		}
+
+		// get a bound or simple statement that is ready to be executed
+		final Statement stmnt = getStatement(inParams, inMsg, session,
+				pooled);
+		if (stmnt == null) {
+			return null;
+		}
+
+		try {
+			future = (hedger != null) ? hedger.executeAsync(session, stmnt,
+					sender) : session.executeAsync(stmnt);
+		} catch (RuntimeException exc) {
+			LOG.error(getBeanName() + ":executeAsync: caught this exception {}",
+					exc.getClass().getName());
+			returnStatement(session, stmnt);
+			throw exc;
+		}
+
+		// this callback is registered before any of the caller's callbacks,
+		// so the paging state will have been saved by the time the caller
+		// gets the result set
+		Futures.addCallback(future, new FutureCallback<ResultSet>() {
+			public void onSuccess(ResultSet resultSet) {
+				savePagingState(resultSet, inMsg);
+				prefetch(inParams, inMsg, session, resultSet);
+			}
+
+			public void onFailure(Throwable t) {
+				LOG.error(getBeanName()
+						+ ":executeAsync: statement failed with this "
+						+ "exception {}", t.getClass().getName());
+			}
+		});
+		// the statement cannot be returned to its pool until the driver is
+		// done with it
+		if (pooled) {
+			returnOnSettled(session, stmnt, future);
+		}
+		return future;
+	}
+
+	/**
+	 * Returns the given statement to the given session's statement pool once
+	 * none of the reads of the given future, which may be hedged, is still
+	 * using it.
+	 */
+	private void returnOnSettled(final Session session, final Statement stmnt,
+			ResultSetFuture future) {
+		Futures.addCallback(CqlHedger.getSettled(future),
+				new FutureCallback<Object>() {
+					public void onSuccess(Object ignore) {
+						returnStatement(session, stmnt);
+					}
+
+					public void onFailure(Throwable t) {
+						returnStatement(session, stmnt);
+					}
+				});
+	}
+
+	/**
+	 * Returns a bound or simple statement, taken from the given session's
+	 * statement pool, that has had its properties set and its params bound.
+	 * Returns null if the statement could not be acquired or the given params
+	 * are not valid for this statement. The caller is responsible for
+	 * returning the statement to the pool via returnStatement(). If pooled is
+	 * false, then a new statement, which is not to be returned to the pool,
+	 * is created.
+	 * 
+	 * @param inParams
+	 * @param inMsg
+	 * @param session
+	 * @param pooled
+	 * @return
+	 */
+	Statement getStatement(Map<String, Object> inParams, Message inMsg,
+			Session session, boolean pooled) {
+		return getStatement(inParams, inMsg, session, pooled, null, null);
+	}
+
+	/**
+	 * Returns a statement for scanning the given token range (start, end].
+	 * The statement is this statement with the token range appended to its
+	 * WHERE clause. A null end denotes a range that ends at the minimum token
+	 * of the ring; i.e., the range is open ended. Scan statements are never
+	 * pooled and they do not use the paging state.
+	 * 
+	 * @param inParams
+	 * @param session
+	 * @param start
+	 * @param end
+	 * @return
+	 */
+	Statement getScanStatement(Map<String, Object> inParams, Session session,
+			Token start, Token end) {
+		return getStatement(inParams, new DefaultMessage(), session, false,
+				start, end);
+	}
+
+	private Statement getStatement(Map<String, Object> inParams,
+			Message inMsg, Session session, boolean pooled, Token start,
+			Token end) {
+
+		boolean scan = (start != null);
 
 		Map<String, Object> params = (inParams == null) ? new HashMap<String, Object>()
 				: inParams;
@@ -528,21 +936,29 @@ public class CqlStmnt implements InitializingBean, BeanNameAware {
 		// grab the statement pool pertaining to the session. if one does not
 		// exist, create one. for more info on why these pools are necessary,
 		// refer to the comments found at CqlStmntPool
-		CqlStmntPool cqlStmntPool = null;
-		synchronized (stmntPool) {
-			cqlStmntPool = stmntPool.get(session);
-			if (cqlStmntPool == null) {
-				cqlStmntPool = new CqlStmntPool();
-				stmntPool.put(session, cqlStmntPool);
-			}
-		}
+		CqlStmntPool cqlStmntPool = getCqlStmntPool(session);
 
 		// if this CQL statement is a prepared statement, ensure that it has
-		// been prepared for this session's pool
-		synchronized (cqlStmntPool) {
-			if (isPrepared() && cqlStmntPool.getPreparedStatement() == null) {
-				cqlStmntPool.setPreparedStatement(session
-						.prepare(getPreparedStr()));
+		// been prepared for this session's pool. the pool is only locked
+		// while the statement has yet to be prepared
+		if ((isPrepared() && cqlStmntPool.getPreparedStatement() == null)
+				|| (scan && end != null && cqlStmntPool.getScanStatement() == null)
+				|| (scan && end == null && cqlStmntPool.getScanTailStatement() == null)) {
+			synchronized (cqlStmntPool) {
+				if (isPrepared() && cqlStmntPool.getPreparedStatement() == null) {
+					cqlStmntPool.setPreparedStatement(session
+							.prepare(getPreparedStr()));
+				}
+				// scan statements are always prepared
+				if (scan && end != null
+						&& cqlStmntPool.getScanStatement() == null) {
+					cqlStmntPool.setScanStatement(session
+							.prepare(getScanStr(true)));
+				} else if (scan && end == null
+						&& cqlStmntPool.getScanTailStatement() == null) {
+					cqlStmntPool.setScanTailStatement(session
+							.prepare(getScanStr(false)));
+				}
 			}
 		}
 
@@ -611,13 +1027,19 @@ public class CqlStmnt implements InitializingBean, BeanNameAware {
 		}
 
 		Statement stmnt = null;
-		ResultSet resultSet = null;
-		// execute the statement
 		try {
 			// get either a bound or simple statement from the session's
 			// statement pool
-			stmnt = (isPrepared()) ? cqlStmntPool.getBoundStatement()
-					: cqlStmntPool.getSimpleStatement();
+			if (scan) {
+				stmnt = (end != null) ? cqlStmntPool.getScanStatement().bind()
+						: cqlStmntPool.getScanTailStatement().bind();
+			} else if (pooled) {
+				stmnt = (isPrepared()) ? cqlStmntPool.getBoundStatement()
+						: cqlStmntPool.getSimpleStatement();
+			} else {
+				stmnt = (isPrepared()) ? cqlStmntPool.getPreparedStatement()
+						.bind() : new SimpleStatement(getStatement());
+			}
 			if (stmnt == null) {
 				LOG.error(getBeanName()
 						+ ":execute: ERROR, getBoundStatement() or "
@@ -633,7 +1055,10 @@ public class CqlStmnt implements InitializingBean, BeanNameAware {
 
 			// check for paging. the current paging state (if any) should be in
 			// the inMsg
-			if (isPagingState() && isSelect()) {
+			if (scan) {
+				// each token range is paged through by the driver
+				stmnt.setPagingState(null);
+			} else if (isPagingState() && isSelect()) {
 				String pState = (String) inMsg
 						.getHeader(CASSANDRA_PAGING_STATE);
 				LOG.debug(getBeanName()
@@ -670,6 +1095,9 @@ public class CqlStmnt implements InitializingBean, BeanNameAware {
 										+ "corresponding parameterized token "
 										+ "in this statement {}",
 								params.get(key), getStatement());
+						if (pooled) {
+							cqlStmntPool.returnStatement(stmnt);
+						}
 						return null;
 					} else {
 						try {
@@ -682,6 +1110,9 @@ public class CqlStmnt implements InitializingBean, BeanNameAware {
 											+ "caught this exception {} for this param {}",
 									exc.getClass().getName(), key);
 							Utils.dumpStackTrace(exc.getStackTrace());
+							if (pooled) {
+								cqlStmntPool.returnStatement(stmnt);
+							}
 							return null;
 						}
 					}
@@ -691,161 +1122,704 @@ public class CqlStmnt implements InitializingBean, BeanNameAware {
 						+ ":execute: executing this simple statement {} ",
 						getStatement());
 			}
-			resultSet = session.execute(stmnt);
 
-			// save off the new current paging state
-			if (isSelect() && isPagingState()) {
-				inMsg.setHeader(CASSANDRA_PAGING_STATE, resultSet
-						.getExecutionInfo().getPagingState().toString());
+			// the token range's bounds follow this statement's params
+			if (scan) {
+				BoundStatement bs = (BoundStatement) stmnt;
+				int pos = bs.preparedStatement().getVariables().size()
+						- ((end != null) ? 2 : 1);
+				bs.setToken(pos, start);
+				if (end != null) {
+					bs.setToken(pos + 1, end);
+				}
 			}
-
 		} catch (Exception exc) {
 			LOG.error(getBeanName() + ":execute: caught this exception {}", exc
 					.getClass().getName());
-			// Utils.dumpStackTrace(exc.getStackTrace());
-			// if (exc.getCause() != null) {
-			// Utils.dumpStackTrace(exc.getCause().getStackTrace());
-			// }
 			exc.printStackTrace();
+			if (pooled) {
+				cqlStmntPool.returnStatement(stmnt);
+			}
+			return null;
 		}
-		cqlStmntPool.returnStatement(stmnt);
-		return resultSet;
+		return stmnt;
 	}
 
 	/**
-	 * Returns a String representation of this statement.
+	 * Returns true if this is a SELECT statement that scans its table by
+	 * token range.
 	 */
-	public String toString() {
-		return (isPrepared()) ? getPreparedStr() : getStatement();
+	public boolean isScan() {
+		return isSelect() && getScanKey() != null;
 	}
 
 	/**
-	 * Used for validating CQL statement for select
+	 * Returns this statement with a token range restriction added to its
+	 * WHERE clause; i.e., "token(scanKey) > ? AND token(scanKey) <= ?". If
+	 * bounded is false, then only the lower bound is added. The restriction
+	 * is placed before any LIMIT or ALLOW FILTERING clause.
 	 * 
-	 * @param cql
+	 * @param bounded
 	 * @return
-	 * @throws IllegalArgumentException
 	 */
-	private static String valCql4Select(String cql)
-			throws IllegalArgumentException {
-		if (cql != null && cql.length() > 0) {
-			String[] tokens = cql.split(DELIM);
-			if (tokens.length < 2) {
-				throw new IllegalArgumentException(
-						"valSql4Insert: invalid CQL statement - insufficent "
-								+ "number of tokens");
-			} else if (!tokens[0].equalsIgnoreCase(SELECT_STR)) {
-				throw new IllegalArgumentException(
-						"valCql4Select: invalid CQL statement - does not start with 'select'");
-			}
-		} else {
-			throw new IllegalArgumentException(
-					"valCql4Select: invalid CQL statement - empty or null statement");
+	String getScanStr(boolean bounded) {
+		String cql = isPrepared() ? getPreparedStr() : getStatement();
+		String token = "token(" + getScanKey() + ")";
+		String range = token + " > ?"
+				+ (bounded ? " AND " + token + " <= ?" : EMPTY_STR);
+		Matcher tail = SCAN_TAIL.matcher(cql);
+		int insertAt = tail.find() ? tail.start() : cql.length();
+		if (cql.indexOf('?', insertAt) >= 0) {
+			throw new IllegalArgumentException(getBeanName()
+					+ ": a scan statement may not have parameters after "
+					+ "its WHERE clause: " + cql);
 		}
-		return cql.trim();
+		String connector = WHERE_CLAUSE.matcher(cql).find() ? " AND "
+				: " WHERE ";
+		return (cql.substring(0, insertAt).trim() + connector + range
+				+ SPACE_STR + cql.substring(insertAt).trim()).trim();
 	}
 
 	/**
-	 * Used for validating CQL statement for insert
+	 * Returns true if this statement prefetches, for the next exchange, the
+	 * page that follows the one it returns.
+	 */
+	boolean isPrefetch() {
+		return isSelect() && isPagingState() && isPrefetchPages();
+	}
+
+	/**
+	 * If this statement prefetches, then start fetching, in the background,
+	 * the page that follows the given result set's page. The fetched page is
+	 * handed out by takePrefetched() when the next request for it (i.e., same
+	 * params and paging state) arrives. This method must not block, as it
+	 * may be called from one of the driver's I/O threads.
 	 * 
-	 * @param cql
-	 * @return
-	 * @throws IllegalArgumentException
+	 * @param inParams
+	 * @param inMsg
+	 *            holds the paging state of the given result set
+	 * @param session
+	 * @param resultSet
 	 */
-	private static String valCql4Insert(String cql)
-			throws IllegalArgumentException {
-		if (cql != null && cql.length() > 0) {
-			String[] tokens = cql.split(DELIM);
-			if (tokens.length < 3) {
-				throw new IllegalArgumentException(
-						"valSql4Insert: invalid CQL statement - insufficent "
-								+ "number of tokens for insert statement");
-			} else if (!tokens[0].equalsIgnoreCase(INSERT_STR)) {
-				throw new IllegalArgumentException(
-						"valCql4Insert: invalid CQL statement - does not start with 'insert'");
-			} else if (!tokens[1].equalsIgnoreCase(INTO_STR)) {
-				throw new IllegalArgumentException(
-						"valCql4Insert: invalid CQL statement - second cql keyword for insert must be 'into'");
-			}
-		} else {
-			throw new IllegalArgumentException(
-					"valCql4Insert: invalid CQL statement - empty or null statement");
+	void prefetch(Map<String, Object> inParams, Message inMsg,
+			Session session, ResultSet resultSet) {
+		if (!isPrefetch() || resultSet == null) {
+			return;
+		}
+		PagingState pState = resultSet.getExecutionInfo().getPagingState();
+		CqlStmntPool cqlStmntPool = stmntPool.get(session);
+		if (pState == null || cqlStmntPool == null) {
+			return;
+		}
+		// the statement is not pooled, as it is not known when, if ever, the
+		// prefetched page will be taken
+		Statement stmnt = getStatement(inParams, inMsg, session, false);
+		if (stmnt == null) {
+			return;
+		}
+		try {
+			LOG.trace(getBeanName() + ":prefetch: prefetching page {}",
+					pState.toString());
+			cqlStmntPool.putPrefetched(
+					getPrefetchKey(inParams, pState.toString()),
+					session.executeAsync(stmnt), getPrefetchTtl());
+		} catch (RuntimeException exc) {
+			LOG.warn(getBeanName() + ":prefetch: caught this exception {}",
+					exc.getClass().getName());
 		}
-		return cql.trim();
 	}
 
 	/**
-	 * Used for validating CQL statement for update
-	 * 
-	 * @param cql
-	 * @return
-	 * @throws IllegalArgumentException
+	 * Returns, if any, the prefetched page that corresponds to the given
+	 * params and the paging state held by the given message.
 	 */
-	private static String valCql4Update(String cql)
-			throws IllegalArgumentException {
-		if (cql != null && cql.length() > 0) {
-			String[] tokens = cql.split(DELIM);
-			if (tokens.length < 2) {
-				throw new IllegalArgumentException(
-						"valCql4Update: invalid CQL statement - insufficent "
-								+ "number of tokens");
-			} else if (!tokens[0].equalsIgnoreCase(UPDATE_STR)) {
-				throw new IllegalArgumentException(
-						"valCql4Update: invalid CQL statement - must start with "
-								+ "'update'");
+	ResultSetFuture takePrefetched(Map<String, Object> inParams,
+			Message inMsg, Session session) {
+		if (!isPrefetch() || session == null) {
+			return null;
+		}
+		String pState = (String) inMsg.getHeader(CASSANDRA_PAGING_STATE);
+		CqlStmntPool cqlStmntPool = stmntPool.get(session);
+		if (pState == null || cqlStmntPool == null) {
+			return null;
+		}
+		ResultSetFuture future = cqlStmntPool.takePrefetched(
+				getPrefetchKey(inParams, pState), getPrefetchTtl());
+		if (future != null) {
+			LOG.trace(getBeanName() + ":takePrefetched: using prefetched "
+					+ "page {}", pState);
+		}
+		return future;
+	}
+
+	private String getPrefetchKey(Map<String, Object> inParams, String pState) {
+		StringBuilder sb = new StringBuilder();
+		appendKey(sb, pState);
+		return sb.append(getParamsKey(inParams)).toString();
+	}
+
+	/**
+	 * Returns a key that is unique to the given params. The params are sorted
+	 * by name, so that equal Maps yield equal keys, and each name and value is
+	 * prefixed by its length; unlike Map.toString(), names or values that
+	 * contain ", " or "=" cannot make two different Maps yield the same key.
+	 */
+	static String getParamsKey(Map<String, Object> inParams) {
+		StringBuilder sb = new StringBuilder();
+		if (inParams != null) {
+			for (Map.Entry<String, Object> entry : new TreeMap<String, Object>(
+					inParams).entrySet()) {
+				appendKey(sb, entry.getKey());
+				appendKey(sb, entry.getValue());
 			}
-		} else {
-			throw new IllegalArgumentException(
-					"valCql4Update: invalid CQL statement - empty or null "
-							+ "statement");
 		}
-		return cql.trim();
+		return sb.toString();
+	}
+
+	private static void appendKey(StringBuilder sb, Object value) {
+		if (value == null) {
+			// cannot be mistaken for the length of a value
+			sb.append('-');
+			return;
+		}
+		String str = value.toString();
+		sb.append(str.length()).append(':').append(str);
 	}
 
 	/**
-	 * Used for validating CQL statement for DELETE
-	 * 
-	 * @param cql
-	 * @return
-	 * @throws IllegalArgumentException
+	 * Derives, from the statement, the table that this statement accesses
+	 * and the columns whose values are given by params; i.e., the columns of
+	 * the WHERE clause that are restricted by equality (e.g., "userid =
+	 * `uuid:userid`") or, for an INSERT, the columns that are set by params.
 	 */
-	private static String valCql4Delete(String cql)
-			throws IllegalArgumentException {
-		if (cql != null && cql.length() > 0) {
-			String[] tokens = cql.split(DELIM);
-			if (tokens.length < 2) {
-				throw new IllegalArgumentException(
-						"valSql4Delete: invalid CQL statement - insufficent "
-								+ "number of tokens");
-			} else if (!tokens[0].equalsIgnoreCase(DELETE_STR)) {
-				throw new IllegalArgumentException(
-						"valSql4Delete: invalid CQL statement - must start "
-								+ "with 'delete'");
+	private void initColumnKeys() {
+		Matcher matcher = TABLE_NAME.matcher(getStatement());
+		if (!matcher.find()) {
+			LOG.debug(getBeanName() + ":initColumnKeys: table not found");
+			return;
+		}
+		String name = matcher.group(1);
+		int dot = name.lastIndexOf('.');
+		if (dot > 0) {
+			tableKeyspace = unquote(name.substring(0, dot));
+			name = name.substring(dot + 1);
+		}
+		table = unquote(name);
+
+		Map<String, String> myColumnKeys = new HashMap<String, String>();
+		if (isInsert()) {
+			matcher = INSERT_COLUMNS.matcher(getStatement());
+			if (matcher.find()) {
+				String[] columns = matcher.group(1).split(",");
+				String[] values = matcher.group(2).split(",");
+				for (int i = 0; i < columns.length && i < values.length; i++) {
+					String value = values[i].trim();
+					if (value.startsWith(BACK_QUOTE_STR)
+							&& value.endsWith(BACK_QUOTE_STR)
+							&& value.length() > 1) {
+						myColumnKeys.put(unquote(columns[i]),
+								getParamKey(value.substring(1,
+										value.length() - 1)));
+					}
+				}
 			}
 		} else {
-			throw new IllegalArgumentException(
-					"valSql4Delete: invalid CQL statement - empty or null "
-							+ "statement");
+			Matcher where = WHERE_CLAUSE.matcher(getStatement());
+			if (where.find()) {
+				String clause = getStatement().substring(where.end());
+				Matcher ifClause = IF_CLAUSE.matcher(clause);
+				if (ifClause.find()) {
+					clause = clause.substring(0, ifClause.start());
+				}
+				matcher = EQUALS_PARAM.matcher(clause);
+				while (matcher.find()) {
+					myColumnKeys.put(unquote(matcher.group(1)),
+							getParamKey(matcher.group(2)));
+				}
+			}
 		}
-		return cql.trim();
+		columnKeys = myColumnKeys;
+		LOG.debug(getBeanName() + ":initColumnKeys: table = " + table
+				+ ", columns = " + columnKeys);
+	}
+
+	// returns the key of the given param token; e.g., "list:text:tags"
+	// yields "tags"
+	private static String getParamKey(String paramToken) {
+		String[] tks = paramToken.split(COLON_STR);
+		return tks[tks.length - 1].trim();
+	}
+
+	// quoted CQL names are case sensitive; unquoted ones are not
+	private static String unquote(String name) {
+		name = name.trim();
+		if (name.length() > 1 && name.startsWith("\"")
+				&& name.endsWith("\"")) {
+			return name.substring(1, name.length() - 1);
+		}
+		return name.toLowerCase();
 	}
 
 	/**
-	 * Remove spaces from preparedStr fields. Also ensure preparedStr field is
-	 * surrounded by spaces. Care is taken not to modify anything within single
-	 * quotes.
-	 * 
-	 * @param cql
-	 * @return
+	 * Returns true if this statement is a conditional write (lightweight
+	 * transaction); e.g., "INSERT ... IF NOT EXISTS" or "UPDATE ... IF ...".
+	 * Such a write must not be batched, as a batch would apply all of its
+	 * conditions, or none, and would hide each write's [applied] result.
 	 */
-	private static String removeSpaces(String cql) {
-		char[] cqlChar = cql.toCharArray();
-		char[] cqlChar2 = new char[cqlChar.length * 2];
-		char cstate = SPACE_CHR;
-		char pstate = SPACE_CHR;
-		int index = 0;
-		for (char c : cqlChar) {
-			if (cstate == BACK_QUOTE_CHR) {
+	boolean isConditional() {
+		return conditional;
+	}
+
+	/**
+	 * Returns true if any of this statement's params is a counter delta;
+	 * e.g., "rating_counter = rating_counter + `counter:count`".
+	 */
+	boolean hasCounters() {
+		return !getCounterKeys().isEmpty();
+	}
+
+	/**
+	 * Returns the keys of this statement's counter delta params.
+	 */
+	List<String> getCounterKeys() {
+		List<String> keys = counterKeys;
+		if (keys == null) {
+			keys = new ArrayList<String>();
+			for (CqlToken token : getKeyTokens().values()) {
+				if (token.getCqlType() == DataType.Name.COUNTER) {
+					keys.add(token.getKey());
+				}
+			}
+			counterKeys = keys;
+		}
+		return keys;
+	}
+
+	/**
+	 * Returns true if the results of this statement are to be cached. Only
+	 * SELECTs that have a cacheTtl and do not page or scan are cached.
+	 */
+	boolean isCached() {
+		return isSelect() && getCacheTtl() > 0 && !isPagingState()
+				&& !isScan();
+	}
+
+	/**
+	 * Returns the key under which the rows for the given params are cached.
+	 * See getParamsKey().
+	 */
+	String getResultKey(Map<String, Object> inParams) {
+		return getParamsKey(inParams);
+	}
+
+	/**
+	 * Returns a copy of the rows cached, for the given session, under the
+	 * given params, or null if there are none.
+	 */
+	List<Map<String, Object>> getCached(Session session,
+			Map<String, Object> inParams) {
+		List<Map<String, Object>> rows = getCqlStmntPool(session)
+				.getResultCache().get(getResultKey(inParams));
+		if (rows != null) {
+			LOG.trace(getBeanName() + ":getCached: cache hit");
+		}
+		return rows;
+	}
+
+	/**
+	 * Returns the given session's cache generation, which is to be taken
+	 * before the statement is executed and handed back to putCached().
+	 */
+	long getCacheGeneration(Session session) {
+		return getCqlStmntPool(session).getResultCache().getGeneration();
+	}
+
+	/**
+	 * Caches, for the given session, the rows returned for the given params.
+	 */
+	void putCached(Session session, Map<String, Object> inParams,
+			List<Map<String, Object>> rows, long generation) {
+		getCqlStmntPool(session).getResultCache().put(getResultKey(inParams),
+				getPartition(session, inParams), rows, generation);
+	}
+
+	/**
+	 * Invalidates the cached rows, for the given session, of the given
+	 * partition. A null partition invalidates all of the cached rows.
+	 */
+	void invalidateCached(Session session, String partition) {
+		CqlStmntPool cqlStmntPool = stmntPool.get(session);
+		if (cqlStmntPool != null && cqlStmntPool.resultCache != null) {
+			LOG.trace(getBeanName() + ":invalidateCached: partition = {}",
+					partition);
+			cqlStmntPool.resultCache.invalidate(partition);
+		}
+	}
+
+	/**
+	 * Returns true if identical concurrent requests for this statement are to
+	 * share one query. Only SELECTs that do not page or scan are coalesced.
+	 */
+	boolean isCoalescing() {
+		return isSelect() && isCoalesce() && !isPagingState() && !isScan();
+	}
+
+	/**
+	 * Returns the key under which the given request is coalesced, or null if
+	 * it is not to be coalesced.
+	 */
+	String getCoalesceKey(Map<String, Object> inParams, Message inMsg) {
+		return (getCoalesceKeyMapper() != null) ? getCoalesceKeyMapper()
+				.getKey(this, inParams, inMsg) : getResultKey(inParams);
+	}
+
+	/**
+	 * Registers the given future as the query, for the given session, of the
+	 * requests with the given key. If an identical request's query is already
+	 * in flight, then its future is returned instead and the given future is
+	 * not registered. The caller of a registered future must complete it and
+	 * then leave via leaveInFlight().
+	 */
+	ListenableFuture<List<Map<String, Object>>> joinInFlight(Session session,
+			String key, SettableFuture<List<Map<String, Object>>> flight) {
+		ListenableFuture<List<Map<String, Object>>> inFlight = getCqlStmntPool(
+				session).inFlight.putIfAbsent(key, flight);
+		if (inFlight != null) {
+			coalesceHits.incrementAndGet();
+			LOG.trace(getBeanName() + ":joinInFlight: joined query {}", key);
+		} else {
+			coalesceMisses.incrementAndGet();
+		}
+		return inFlight;
+	}
+
+	/**
+	 * Unregisters the given future, so that subsequent requests issue a new
+	 * query.
+	 */
+	void leaveInFlight(Session session, String key,
+			SettableFuture<List<Map<String, Object>>> flight) {
+		getCqlStmntPool(session).inFlight.remove(key, flight);
+	}
+
+	/**
+	 * Returns the canonical form of the partition key values given by the
+	 * given params, or null if the partition cannot be derived; i.e., the
+	 * statement does not restrict, or set, every column of its table's
+	 * partition key to a param.
+	 */
+	String getPartition(Session session, Map<String, Object> inParams) {
+		return getKeyValues(getCqlStmntPool(session).getPartitionKey(session),
+				inParams);
+	}
+
+	/**
+	 * Returns the canonical form of the primary key values given by the
+	 * given params, which identifies the row that is written by this
+	 * statement, or null if the row cannot be derived.
+	 */
+	String getRow(Session session, Map<String, Object> inParams) {
+		return getKeyValues(getCqlStmntPool(session).getPrimaryKey(session),
+				inParams);
+	}
+
+	private String getKeyValues(List<String> columns,
+			Map<String, Object> inParams) {
+		if (columns.isEmpty() || inParams == null) {
+			return null;
+		}
+		// each value is length-prefixed, so that values that hold a
+		// separator cannot make two different rows yield the same key
+		StringBuilder values = new StringBuilder();
+		for (String column : columns) {
+			String key = columnKeys.get(column);
+			Object value = (key == null) ? null : inParams.get(key);
+			CqlToken token = (key == null) ? null : getKeyTokens().get(key);
+			if (value == null || token == null || token.isCollection()) {
+				return null;
+			}
+			// the values are parsed, so that, for example, a UUID or number
+			// given in different forms yields the same partition
+			try {
+				appendKey(values, String.valueOf(token.getBinder().parse(
+						value.toString())));
+			} catch (Exception exc) {
+				return null;
+			}
+		}
+		return values.toString();
+	}
+
+	/**
+	 * Returns the statement pool pertaining to the given session, creating it
+	 * if it does not yet exist.
+	 */
+	private CqlStmntPool getCqlStmntPool(Session session) {
+		CqlStmntPool cqlStmntPool = stmntPool.get(session);
+		if (cqlStmntPool == null) {
+			CqlStmntPool newPool = new CqlStmntPool();
+			cqlStmntPool = stmntPool.putIfAbsent(session, newPool);
+			if (cqlStmntPool == null) {
+				cqlStmntPool = newPool;
+			}
+		}
+		return cqlStmntPool;
+	}
+
+	/**
+	 * Asynchronously prepares this statement, and its scan statements (if
+	 * any), for the given session, so that the first execution of this
+	 * statement does not have to wait on a prepare round trip. The returned
+	 * future completes when all of the statements have been prepared; it
+	 * completes immediately if there is nothing left to prepare.
+	 * 
+	 * @param session
+	 * @return
+	 */
+	ListenableFuture<List<PreparedStatement>> prepareAsync(Session session) {
+		final CqlStmntPool cqlStmntPool = getCqlStmntPool(session);
+		List<ListenableFuture<PreparedStatement>> futures = new ArrayList<ListenableFuture<PreparedStatement>>();
+		if (isPrepared() && cqlStmntPool.getPreparedStatement() == null) {
+			ListenableFuture<PreparedStatement> future = session
+					.prepareAsync(getPreparedStr());
+			Futures.addCallback(future, new PrepareCallback() {
+				void set(PreparedStatement ps) {
+					if (cqlStmntPool.getPreparedStatement() == null) {
+						cqlStmntPool.setPreparedStatement(ps);
+					}
+				}
+			});
+			futures.add(future);
+		}
+		if (isScan() && cqlStmntPool.getScanStatement() == null) {
+			ListenableFuture<PreparedStatement> future = session
+					.prepareAsync(getScanStr(true));
+			Futures.addCallback(future, new PrepareCallback() {
+				void set(PreparedStatement ps) {
+					if (cqlStmntPool.getScanStatement() == null) {
+						cqlStmntPool.setScanStatement(ps);
+					}
+				}
+			});
+			futures.add(future);
+		}
+		if (isScan() && cqlStmntPool.getScanTailStatement() == null) {
+			ListenableFuture<PreparedStatement> future = session
+					.prepareAsync(getScanStr(false));
+			Futures.addCallback(future, new PrepareCallback() {
+				void set(PreparedStatement ps) {
+					if (cqlStmntPool.getScanTailStatement() == null) {
+						cqlStmntPool.setScanTailStatement(ps);
+					}
+				}
+			});
+			futures.add(future);
+		}
+		return Futures.allAsList(futures);
+	}
+
+	/**
+	 * Hands a statement that has been prepared to its pool. A failed prepare
+	 * is only logged, as the statement is prepared again on first use.
+	 */
+	private abstract class PrepareCallback implements
+			FutureCallback<PreparedStatement> {
+
+		abstract void set(PreparedStatement ps);
+
+		public void onSuccess(PreparedStatement ps) {
+			set(ps);
+		}
+
+		public void onFailure(Throwable t) {
+			LOG.warn(getBeanName() + ":prepareAsync: unable to prepare "
+					+ "statement: " + t.getMessage());
+		}
+	}
+
+	/**
+	 * Returns the plan for decoding rows that have the given column
+	 * definitions. The plan is cached, so that it is built once and reused
+	 * for every row and page returned by this statement.
+	 * 
+	 * @param cDefs
+	 * @return
+	 */
+	CqlRowDecoder getRowDecoder(ColumnDefinitions cDefs) {
+		CqlRowDecoder decoder = rowDecoder;
+		CqlRowDecoder newDecoder = CqlRowDecoder.getDecoder(decoder, cDefs);
+		if (newDecoder != decoder) {
+			rowDecoder = newDecoder;
+		}
+		return newDecoder;
+	}
+
+	/**
+	 * Returns the given statement to the given session's statement pool.
+	 * 
+	 * @param session
+	 * @param stmnt
+	 */
+	void returnStatement(Session session, Statement stmnt) {
+		CqlStmntPool cqlStmntPool = stmntPool.get(session);
+		if (cqlStmntPool != null) {
+			cqlStmntPool.returnStatement(stmnt);
+		}
+	}
+
+	/**
+	 * If this is a SELECT that uses the paging state, then save off the result
+	 * set's current paging state in the given in message. The paging state is
+	 * null when the last page has been fetched.
+	 * 
+	 * @param resultSet
+	 * @param inMsg
+	 */
+	void savePagingState(ResultSet resultSet, Message inMsg) {
+		if (isSelect() && isPagingState() && resultSet != null) {
+			PagingState pState = resultSet.getExecutionInfo().getPagingState();
+			if (pState != null) {
+				inMsg.setHeader(CASSANDRA_PAGING_STATE, pState.toString());
+			} else {
+				inMsg.removeHeader(CASSANDRA_PAGING_STATE);
+			}
+		}
+	}
+
+	/**
+	 * Returns a String representation of this statement.
+	 */
+	public String toString() {
+		return (isPrepared()) ? getPreparedStr() : getStatement();
+	}
+
+	/**
+	 * Used for validating CQL statement for select
+	 * 
+	 * @param cql
+	 * @return
+	 * @throws IllegalArgumentException
+	 */
+	private static String valCql4Select(String cql)
+			throws IllegalArgumentException {
+		if (cql != null && cql.length() > 0) {
+			String[] tokens = cql.split(DELIM);
+			if (tokens.length < 2) {
+				throw new IllegalArgumentException(
+						"valSql4Insert: invalid CQL statement - insufficent "
+								+ "number of tokens");
+			} else if (!tokens[0].equalsIgnoreCase(SELECT_STR)) {
+				throw new IllegalArgumentException(
+						"valCql4Select: invalid CQL statement - does not start with 'select'");
+			}
+		} else {
+			throw new IllegalArgumentException(
+					"valCql4Select: invalid CQL statement - empty or null statement");
+		}
+		return cql.trim();
+	}
+
+	/**
+	 * Used for validating CQL statement for insert
+	 * 
+	 * @param cql
+	 * @return
+	 * @throws IllegalArgumentException
+	 */
+	private static String valCql4Insert(String cql)
+			throws IllegalArgumentException {
+		if (cql != null && cql.length() > 0) {
+			String[] tokens = cql.split(DELIM);
+			if (tokens.length < 3) {
+				throw new IllegalArgumentException(
+						"valSql4Insert: invalid CQL statement - insufficent "
+								+ "number of tokens for insert statement");
+			} else if (!tokens[0].equalsIgnoreCase(INSERT_STR)) {
+				throw new IllegalArgumentException(
+						"valCql4Insert: invalid CQL statement - does not start with 'insert'");
+			} else if (!tokens[1].equalsIgnoreCase(INTO_STR)) {
+				throw new IllegalArgumentException(
+						"valCql4Insert: invalid CQL statement - second cql keyword for insert must be 'into'");
+			}
+		} else {
+			throw new IllegalArgumentException(
+					"valCql4Insert: invalid CQL statement - empty or null statement");
+		}
+		return cql.trim();
+	}
+
+	/**
+	 * Used for validating CQL statement for update
+	 * 
+	 * @param cql
+	 * @return
+	 * @throws IllegalArgumentException
+	 */
+	private static String valCql4Update(String cql)
+			throws IllegalArgumentException {
+		if (cql != null && cql.length() > 0) {
+			String[] tokens = cql.split(DELIM);
+			if (tokens.length < 2) {
+				throw new IllegalArgumentException(
+						"valCql4Update: invalid CQL statement - insufficent "
+								+ "number of tokens");
+			} else if (!tokens[0].equalsIgnoreCase(UPDATE_STR)) {
+				throw new IllegalArgumentException(
+						"valCql4Update: invalid CQL statement - must start with "
+								+ "'update'");
+			}
+		} else {
+			throw new IllegalArgumentException(
+					"valCql4Update: invalid CQL statement - empty or null "
+							+ "statement");
+		}
+		return cql.trim();
+	}
+
+	/**
+	 * Used for validating CQL statement for DELETE
+	 * 
+	 * @param cql
+	 * @return
+	 * @throws IllegalArgumentException
+	 */
+	private static String valCql4Delete(String cql)
+			throws IllegalArgumentException {
+		if (cql != null && cql.length() > 0) {
+			String[] tokens = cql.split(DELIM);
+			if (tokens.length < 2) {
+				throw new IllegalArgumentException(
+						"valSql4Delete: invalid CQL statement - insufficent "
+								+ "number of tokens");
+			} else if (!tokens[0].equalsIgnoreCase(DELETE_STR)) {
+				throw new IllegalArgumentException(
+						"valSql4Delete: invalid CQL statement - must start "
+								+ "with 'delete'");
+			}
+		} else {
+			throw new IllegalArgumentException(
+					"valSql4Delete: invalid CQL statement - empty or null "
+							+ "statement");
+		}
+		return cql.trim();
+	}
+
+	/**
+	 * Remove spaces from preparedStr fields. Also ensure preparedStr field is
+	 * surrounded by spaces. Care is taken not to modify anything within single
+	 * quotes.
+	 * 
+	 * @param cql
+	 * @return
+	 */
+	private static String removeSpaces(String cql) {
+		char[] cqlChar = cql.toCharArray();
+		char[] cqlChar2 = new char[cqlChar.length * 2];
+		char cstate = SPACE_CHR;
+		char pstate = SPACE_CHR;
+		int index = 0;
+		for (char c : cqlChar) {
+			if (cstate == BACK_QUOTE_CHR) {
 				// if we're processing a param field, then
 				// skip white space chars
 				if (c != SPACE_CHR && c != TAB_CHR && c != CARRIAGE_RETURN_CHR
@@ -990,233 +1964,614 @@ public class CqlStmnt implements InitializingBean, BeanNameAware {
 			}
 		}
 
-		// place the resulting parameterized tokens into the main
-		// parameterized tokens map
-		for (CqlToken token : keyTokenArray) {
-			if (token != null) {
-				getKeyTokens().put(token.getKey(), token);
-			}
+		// place the resulting parameterized tokens into the main
+		// parameterized tokens map
+		for (CqlToken token : keyTokenArray) {
+			if (token != null) {
+				getKeyTokens().put(token.getKey(), token);
+				token.compile();
+			}
+		}
+
+		// based on first token, mark the statement's type
+		CqlToken tmpToken = getTokens().get(0);
+		if (tmpToken.getValue().equalsIgnoreCase(SELECT_STR)) {
+			setCqlStmntType(Method.SELECT);
+			// is this a SELECT JSON ... statement?
+			setJsonSelect(getTokens().get(1).isJson());
+		} else if (tmpToken.getValue().equalsIgnoreCase(DELETE_STR)) {
+			setCqlStmntType(Method.DELETE);
+
+		} else if (tmpToken.getValue().equalsIgnoreCase(UPDATE_STR)) {
+			setCqlStmntType(Method.UPDATE);
+
+		} else if (tmpToken.getValue().equalsIgnoreCase(INSERT_STR)) {
+			setCqlStmntType(Method.INSERT);
+			// is this a INSERT JSON statement
+			setJsonInsert(getTokens().get(3).isJson());
+
+		} else {
+			throw new IllegalArgumentException("unknown CQL statement: "
+					+ tmpToken.getValue());
+		}
+	}
+
+	/**
+	 * @return the statement
+	 */
+	public String getStatement() {
+		return statement;
+	}
+
+	/**
+	 * @param statement
+	 *            the statement to set
+	 */
+	public void setStatement(String statement) {
+		this.statement = statement;
+	}
+
+	/**
+	 * @return the fetchSize
+	 */
+	public int getFetchSize() {
+		return fetchSize;
+	}
+
+	/**
+	 * @param fetchSize
+	 *            the fetchSize to set
+	 */
+	public void setFetchSize(int fetchSize) {
+		this.fetchSize = fetchSize;
+	}
+
+	/**
+	 * @return the pagingState
+	 */
+	public boolean isPagingState() {
+		return pagingState;
+	}
+
+	/**
+	 * @param pagingState
+	 *            the pagingState to set
+	 */
+	public void setPagingState(boolean pagingState) {
+		this.pagingState = pagingState;
+	}
+
+	/**
+	 * @return the tracing
+	 */
+	public boolean isTracing() {
+		return tracing;
+	}
+
+	/**
+	 * @param tracing
+	 *            the tracing to set
+	 */
+	public void setTracing(boolean tracing) {
+		this.tracing = tracing;
+	}
+
+	/**
+	 * @return the defaultTimestamp
+	 */
+	public long getDefaultTimestamp() {
+		return defaultTimestamp;
+	}
+
+	/**
+	 * @param defaultTimestamp
+	 *            the defaultTimestamp to set
+	 */
+	public void setDefaultTimestamp(long defaultTimestamp) {
+		this.defaultTimestamp = defaultTimestamp;
+	}
+
+	/**
+	 * @return the idempotent
+	 */
+	public boolean isIdempotent() {
+		return idempotent;
+	}
+
+	/**
+	 * @param idempotent
+	 *            the idempotent to set
+	 */
+	public void setIdempotent(boolean idempotent) {
+		this.idempotent = idempotent;
+		this.myIdempotent = new Boolean(idempotent);
+	}
+
+	/**
+	 * @return the retryPolicy
+	 */
+	public RetryPolicy getRetryPolicy() {
+		return retryPolicy;
+	}
+
+	/**
+	 * @param retryPolicy
+	 *            the retryPolicy to set
+	 */
+	public void setRetryPolicy(RetryPolicy retryPolicy) {
+		this.retryPolicy = retryPolicy;
+	}
+
+	/**
+	 * @return the consistencyLevel
+	 */
+	public ConsistencyLevel getConsistencyLevel() {
+		return consistencyLevel;
+	}
+
+	/**
+	 * @param consistencyLevel
+	 *            the consistencyLevel to set
+	 */
+	public void setConsistencyLevel(ConsistencyLevel consistencyLevel) {
+		this.consistencyLevel = consistencyLevel;
+	}
+
+	/**
+	 * @return the serialConsistencyLevel
+	 */
+	public ConsistencyLevel getSerialConsistencyLevel() {
+		return serialConsistencyLevel;
+	}
+
+	/**
+	 * @param serialConsistencyLevel
+	 *            the serialConsistencyLevel to set
+	 */
+	public void setSerialConsistencyLevel(
+			ConsistencyLevel serialConsistencyLevel) {
+		this.serialConsistencyLevel = serialConsistencyLevel;
+	}
+
+	@Override
+	public void setBeanName(String name) {
+		beanName = name;
+	}
+
+	public String getBeanName() {
+		return beanName;
+	}
+
+	/**
+	 * @return the myIdempotent
+	 */
+	public Boolean getMyIdempotent() {
+		return myIdempotent;
+	}
+
+	/**
+	 * @return the stmntPool
+	 */
+	public Map<Session, CqlStmntPool> getStmntPool() {
+		return stmntPool;
+	}
+
+	/**
+	 * The pools are created on first use via putIfAbsent(); so, a Map that is
+	 * not a ConcurrentMap is copied into one.
+	 * 
+	 * @param stmntPool
+	 *            the stmntPool to set
+	 */
+	public void setStmntPool(Map<Session, CqlStmntPool> stmntPool) {
+		if (stmntPool instanceof ConcurrentMap) {
+			this.stmntPool = (ConcurrentMap<Session, CqlStmntPool>) stmntPool;
+		} else {
+			this.stmntPool = new ConcurrentHashMap<Session, CqlStmntPool>(
+					stmntPool);
+		}
+	}
+
+	/**
+	 * @return the isJsonSelect
+	 */
+	public boolean isJsonSelect() {
+		return isJsonSelect;
+	}
+
+	/**
+	 * @param isJsonSelect
+	 *            the isJsonSelect to set
+	 */
+	private void setJsonSelect(boolean isJsonSelect) {
+		this.isJsonSelect = isJsonSelect;
+	}
+
+	/**
+	 * @return the stackSize
+	 */
+	public int getStackSize() {
+		return stackSize;
+	}
+
+	/**
+	 * @param stackSize
+	 *            the stackSize to set
+	 */
+	public void setStackSize(int stackSize) {
+		this.stackSize = stackSize;
+	}
+
+	/**
+	 * @return the number of times a statement was taken from a pool, rather
+	 *         than created
+	 */
+	public long getPoolHits() {
+		return poolHits.get();
+	}
+
+	/**
+	 * @return the number of times a statement had to be created, because its
+	 *         pool was empty
+	 */
+	public long getPoolMisses() {
+		return poolMisses.get();
+	}
+
+	/**
+	 * @return the table that this statement accesses, without its keyspace
+	 */
+	public String getTable() {
+		return table;
+	}
+
+	/**
+	 * @return the columns whose values are given by params, mapped to the
+	 *         keys of those params
+	 */
+	Map<String, String> getColumnKeys() {
+		return columnKeys;
+	}
+
+	/**
+	 * @return the cacheTtl
+	 */
+	public long getCacheTtl() {
+		return cacheTtl;
+	}
+
+	/**
+	 * @param cacheTtl
+	 *            the cacheTtl to set
+	 */
+	public void setCacheTtl(long cacheTtl) {
+		this.cacheTtl = cacheTtl;
+	}
+
+	/**
+	 * @return the cacheMaxEntries
+	 */
+	public int getCacheMaxEntries() {
+		return cacheMaxEntries;
+	}
+
+	/**
+	 * @param cacheMaxEntries
+	 *            the cacheMaxEntries to set
+	 */
+	public void setCacheMaxEntries(int cacheMaxEntries) {
+		this.cacheMaxEntries = cacheMaxEntries;
+	}
+
+	/**
+	 * @return the cacheMaxBytes
+	 */
+	public long getCacheMaxBytes() {
+		return cacheMaxBytes;
+	}
+
+	/**
+	 * @param cacheMaxBytes
+	 *            the cacheMaxBytes to set
+	 */
+	public void setCacheMaxBytes(long cacheMaxBytes) {
+		this.cacheMaxBytes = cacheMaxBytes;
+	}
+
+	/**
+	 * @return the number of requests that were answered by the result cache
+	 */
+	public long getCacheHits() {
+		long hits = 0;
+		for (CqlStmntPool pool : stmntPool.values()) {
+			hits += (pool.resultCache == null) ? 0 : pool.resultCache
+					.getHits();
+		}
+		return hits;
+	}
+
+	/**
+	 * @return the number of requests that could not be answered by the result
+	 *         cache
+	 */
+	public long getCacheMisses() {
+		long misses = 0;
+		for (CqlStmntPool pool : stmntPool.values()) {
+			misses += (pool.resultCache == null) ? 0 : pool.resultCache
+					.getMisses();
 		}
+		return misses;
+	}
 
-		// based on first token, mark the statement's type
-		CqlToken tmpToken = getTokens().get(0);
-		if (tmpToken.getValue().equalsIgnoreCase(SELECT_STR)) {
-			setCqlStmntType(Method.SELECT);
-			// is this a SELECT JSON ... statement?
-			setJsonSelect(getTokens().get(1).isJson());
-		} else if (tmpToken.getValue().equalsIgnoreCase(DELETE_STR)) {
-			setCqlStmntType(Method.DELETE);
+	/**
+	 * @return the number of cached results that were evicted to make room
+	 *         for others
+	 */
+	public long getCacheEvictions() {
+		long evictions = 0;
+		for (CqlStmntPool pool : stmntPool.values()) {
+			evictions += (pool.resultCache == null) ? 0 : pool.resultCache
+					.getEvictions();
+		}
+		return evictions;
+	}
 
-		} else if (tmpToken.getValue().equalsIgnoreCase(UPDATE_STR)) {
-			setCqlStmntType(Method.UPDATE);
+	/**
+	 * @return the number of times that cached results were invalidated by
+	 *         writes
+	 */
+	public long getCacheInvalidations() {
+		long invalidations = 0;
+		for (CqlStmntPool pool : stmntPool.values()) {
+			invalidations += (pool.resultCache == null) ? 0
+					: pool.resultCache.getInvalidations();
+		}
+		return invalidations;
+	}
 
-		} else if (tmpToken.getValue().equalsIgnoreCase(INSERT_STR)) {
-			setCqlStmntType(Method.INSERT);
-			// is this a INSERT JSON statement
-			setJsonInsert(getTokens().get(3).isJson());
+	/**
+	 * @return the coalesce
+	 */
+	public boolean isCoalesce() {
+		return coalesce;
+	}
 
-		} else {
-			throw new IllegalArgumentException("unknown CQL statement: "
-					+ tmpToken.getValue());
-		}
+	/**
+	 * @param coalesce
+	 *            the coalesce to set
+	 */
+	public void setCoalesce(boolean coalesce) {
+		this.coalesce = coalesce;
 	}
 
 	/**
-	 * @return the statement
+	 * @return the coalesceKeyMapper
 	 */
-	public String getStatement() {
-		return statement;
+	public CqlKeyMapper getCoalesceKeyMapper() {
+		return coalesceKeyMapper;
 	}
 
 	/**
-	 * @param statement
-	 *            the statement to set
+	 * @param coalesceKeyMapper
+	 *            the coalesceKeyMapper to set
 	 */
-	public void setStatement(String statement) {
-		this.statement = statement;
+	public void setCoalesceKeyMapper(CqlKeyMapper coalesceKeyMapper) {
+		this.coalesceKeyMapper = coalesceKeyMapper;
 	}
 
 	/**
-	 * @return the fetchSize
+	 * @return the coalesceTimeout
 	 */
-	public int getFetchSize() {
-		return fetchSize;
+	public long getCoalesceTimeout() {
+		return coalesceTimeout;
 	}
 
 	/**
-	 * @param fetchSize
-	 *            the fetchSize to set
+	 * @param coalesceTimeout
+	 *            the coalesceTimeout to set
 	 */
-	public void setFetchSize(int fetchSize) {
-		this.fetchSize = fetchSize;
+	public void setCoalesceTimeout(long coalesceTimeout) {
+		this.coalesceTimeout = coalesceTimeout;
 	}
 
 	/**
-	 * @return the pagingState
+	 * @return the number of requests that shared an identical request's query
 	 */
-	public boolean isPagingState() {
-		return pagingState;
+	public long getCoalesceHits() {
+		return coalesceHits.get();
 	}
 
 	/**
-	 * @param pagingState
-	 *            the pagingState to set
+	 * @return the number of coalesced requests that issued their own query
 	 */
-	public void setPagingState(boolean pagingState) {
-		this.pagingState = pagingState;
+	public long getCoalesceMisses() {
+		return coalesceMisses.get();
 	}
 
 	/**
-	 * @return the tracing
+	 * @return the hedge
 	 */
-	public boolean isTracing() {
-		return tracing;
+	public boolean isHedge() {
+		return hedge;
 	}
 
 	/**
-	 * @param tracing
-	 *            the tracing to set
+	 * @param hedge
+	 *            the hedge to set
 	 */
-	public void setTracing(boolean tracing) {
-		this.tracing = tracing;
+	public void setHedge(boolean hedge) {
+		this.hedge = hedge;
 	}
 
 	/**
-	 * @return the defaultTimestamp
+	 * @return the hedgePercentile
 	 */
-	public long getDefaultTimestamp() {
-		return defaultTimestamp;
+	public double getHedgePercentile() {
+		return hedgePercentile;
 	}
 
 	/**
-	 * @param defaultTimestamp
-	 *            the defaultTimestamp to set
+	 * @param hedgePercentile
+	 *            the hedgePercentile to set
 	 */
-	public void setDefaultTimestamp(long defaultTimestamp) {
-		this.defaultTimestamp = defaultTimestamp;
+	public void setHedgePercentile(double hedgePercentile) {
+		if (hedgePercentile <= 0 || hedgePercentile > 100) {
+			throw new IllegalArgumentException(
+					"hedgePercentile must be greater than 0 and no greater "
+							+ "than 100");
+		}
+		this.hedgePercentile = hedgePercentile;
 	}
 
 	/**
-	 * @return the idempotent
+	 * @return the hedgeMinDelay
 	 */
-	public boolean isIdempotent() {
-		return idempotent;
+	public long getHedgeMinDelay() {
+		return hedgeMinDelay;
 	}
 
 	/**
-	 * @param idempotent
-	 *            the idempotent to set
+	 * @param hedgeMinDelay
+	 *            the hedgeMinDelay to set
 	 */
-	public void setIdempotent(boolean idempotent) {
-		this.idempotent = idempotent;
-		this.myIdempotent = new Boolean(idempotent);
+	public void setHedgeMinDelay(long hedgeMinDelay) {
+		if (hedgeMinDelay < 0) {
+			throw new IllegalArgumentException(
+					"hedgeMinDelay must not be negative");
+		}
+		this.hedgeMinDelay = hedgeMinDelay;
 	}
 
 	/**
-	 * @return the retryPolicy
+	 * @return the hedgeBudget
 	 */
-	public RetryPolicy getRetryPolicy() {
-		return retryPolicy;
+	public int getHedgeBudget() {
+		return hedgeBudget;
 	}
 
 	/**
-	 * @param retryPolicy
-	 *            the retryPolicy to set
+	 * @param hedgeBudget
+	 *            the hedgeBudget to set
 	 */
-	public void setRetryPolicy(RetryPolicy retryPolicy) {
-		this.retryPolicy = retryPolicy;
+	public void setHedgeBudget(int hedgeBudget) {
+		if (hedgeBudget < 0 || hedgeBudget > 100) {
+			throw new IllegalArgumentException(
+					"hedgeBudget must be between 0 and 100");
+		}
+		this.hedgeBudget = hedgeBudget;
 	}
 
 	/**
-	 * @return the consistencyLevel
+	 * @return the current hedge delay in microseconds, or -1 if it is not yet
+	 *         known
 	 */
-	public ConsistencyLevel getConsistencyLevel() {
-		return consistencyLevel;
+	public long getHedgeDelay() {
+		return (hedger == null) ? -1L : hedger.getDelay();
 	}
 
 	/**
-	 * @param consistencyLevel
-	 *            the consistencyLevel to set
+	 * @return the number of reads that were hedged
 	 */
-	public void setConsistencyLevel(ConsistencyLevel consistencyLevel) {
-		this.consistencyLevel = consistencyLevel;
+	public long getHedges() {
+		return (hedger == null) ? 0 : hedger.getHedges();
 	}
 
 	/**
-	 * @return the serialConsistencyLevel
+	 * @return the number of hedges that answered before the original read
 	 */
-	public ConsistencyLevel getSerialConsistencyLevel() {
-		return serialConsistencyLevel;
+	public long getHedgeWins() {
+		return (hedger == null) ? 0 : hedger.getHedgeWins();
 	}
 
 	/**
-	 * @param serialConsistencyLevel
-	 *            the serialConsistencyLevel to set
+	 * @return the prefetchThreshold
 	 */
-	public void setSerialConsistencyLevel(
-			ConsistencyLevel serialConsistencyLevel) {
-		this.serialConsistencyLevel = serialConsistencyLevel;
+	public int getPrefetchThreshold() {
+		return prefetchThreshold;
 	}
 
-	@Override
-	public void setBeanName(String name) {
-		beanName = name;
+	/**
+	 * @param prefetchThreshold
+	 *            the prefetchThreshold to set
+	 */
+	public void setPrefetchThreshold(int prefetchThreshold) {
+		this.prefetchThreshold = prefetchThreshold;
 	}
 
-	public String getBeanName() {
-		return beanName;
+	/**
+	 * @return the prefetchPages
+	 */
+	public boolean isPrefetchPages() {
+		return prefetchPages;
 	}
 
 	/**
-	 * @return the myIdempotent
+	 * @param prefetchPages
+	 *            the prefetchPages to set
 	 */
-	public Boolean getMyIdempotent() {
-		return myIdempotent;
+	public void setPrefetchPages(boolean prefetchPages) {
+		this.prefetchPages = prefetchPages;
 	}
 
 	/**
-	 * @return the stmntPool
+	 * @return the prefetchTtl
 	 */
-	public Map<Session, CqlStmntPool> getStmntPool() {
-		return stmntPool;
+	public long getPrefetchTtl() {
+		return prefetchTtl;
 	}
 
 	/**
-	 * @param stmntPool
-	 *            the stmntPool to set
+	 * @param prefetchTtl
+	 *            the prefetchTtl to set
 	 */
-	public void setStmntPool(Map<Session, CqlStmntPool> stmntPool) {
-		this.stmntPool = stmntPool;
+	public void setPrefetchTtl(long prefetchTtl) {
+		this.prefetchTtl = prefetchTtl;
 	}
 
 	/**
-	 * @return the isJsonSelect
+	 * @return the scanKey
 	 */
-	public boolean isJsonSelect() {
-		return isJsonSelect;
+	public String getScanKey() {
+		return scanKey;
 	}
 
 	/**
-	 * @param isJsonSelect
-	 *            the isJsonSelect to set
+	 * @param scanKey
+	 *            the scanKey to set
 	 */
-	private void setJsonSelect(boolean isJsonSelect) {
-		this.isJsonSelect = isJsonSelect;
+	public void setScanKey(String scanKey) {
+		this.scanKey = (scanKey == null || scanKey.trim().isEmpty()) ? null
+				: scanKey.trim();
 	}
 
 	/**
-	 * @return the stackSize
+	 * @return the scanSplits
 	 */
-	public int getStackSize() {
-		return stackSize;
+	public int getScanSplits() {
+		return scanSplits;
 	}
 
 	/**
-	 * @param stackSize
-	 *            the stackSize to set
+	 * @param scanSplits
+	 *            the scanSplits to set
 	 */
-	public void setStackSize(int stackSize) {
-		this.stackSize = stackSize;
+	public void setScanSplits(int scanSplits) {
+		this.scanSplits = scanSplits;
+	}
+
+	/**
+	 * @return the scanIdleTimeout
+	 */
+	public long getScanIdleTimeout() {
+		return scanIdleTimeout;
+	}
+
+	/**
+	 * @param scanIdleTimeout
+	 *            the scanIdleTimeout to set
+	 */
+	public void setScanIdleTimeout(long scanIdleTimeout) {
+		this.scanIdleTimeout = scanIdleTimeout;
 	}
 
 	/**
@@ -1249,14 +2604,112 @@ public class CqlStmnt implements InitializingBean, BeanNameAware {
 	 */
 	private class CqlStmntPool {
 
-		private Stack<SimpleStatement> simpleStack = new Stack<SimpleStatement>();
-		private Stack<BoundStatement> boundStack = new Stack<BoundStatement>();
+		// the pooled statements. these queues are lock-free and their sizes
+		// are tracked separately, as ConcurrentLinkedQueue.size() is not a
+		// constant-time operation
+		private final Queue<SimpleStatement> simpleQueue = new ConcurrentLinkedQueue<SimpleStatement>();
+		private final Queue<BoundStatement> boundQueue = new ConcurrentLinkedQueue<BoundStatement>();
+		private final AtomicInteger simpleSize = new AtomicInteger();
+		private final AtomicInteger boundSize = new AtomicInteger();
 		// used only if this CQL statement is a prepared statement
-		private PreparedStatement preparedStatement;
+		private volatile PreparedStatement preparedStatement;
+		// used only if this CQL statement scans by token range
+		private volatile PreparedStatement scanStatement;
+		private volatile PreparedStatement scanTailStatement;
+		// pages that have been prefetched, keyed by paging state and params.
+		// the eldest are evicted, and their fetches cancelled, when the map is
+		// full
+		@SuppressWarnings("serial")
+		private Map<String, Prefetched> prefetched = new LinkedHashMap<String, Prefetched>() {
+			protected boolean removeEldestEntry(
+					Map.Entry<String, Prefetched> eldest) {
+				if (size() > MAX_PREFETCHED) {
+					eldest.getValue().future.cancel(true);
+					return true;
+				}
+				return false;
+			}
+		};
+
+		// the queries of coalesced requests that are in flight, by key
+		private final ConcurrentMap<String, ListenableFuture<List<Map<String, Object>>>> inFlight = new ConcurrentHashMap<String, ListenableFuture<List<Map<String, Object>>>>();
+		// the cached results of this SELECT statement, created on first use
+		private volatile CqlResultCache resultCache;
+		// the names of the table's partition key and primary key columns;
+		// empty if they are not known
+		private volatile List<String> partitionKey;
+		private volatile List<String> primaryKey;
 
 		CqlStmntPool() {
 		}
 
+		CqlResultCache getResultCache() {
+			CqlResultCache cache = resultCache;
+			if (cache == null) {
+				synchronized (this) {
+					cache = resultCache;
+					if (cache == null) {
+						cache = new CqlResultCache(getCacheTtl(),
+								getCacheMaxEntries(), getCacheMaxBytes());
+						resultCache = cache;
+					}
+				}
+			}
+			return cache;
+		}
+
+		/**
+		 * Returns the names of the partition key columns of this
+		 * statement's table, as given by the cluster's metadata.
+		 */
+		List<String> getPartitionKey(Session session) {
+			if (partitionKey == null) {
+				loadKeyColumns(session);
+			}
+			return partitionKey;
+		}
+
+		/**
+		 * Returns the names of the partition key and clustering columns of
+		 * this statement's table, as given by the cluster's metadata.
+		 */
+		List<String> getPrimaryKey(Session session) {
+			if (primaryKey == null) {
+				loadKeyColumns(session);
+			}
+			return primaryKey;
+		}
+
+		private void loadKeyColumns(Session session) {
+			List<String> names = new ArrayList<String>();
+			List<String> allNames = new ArrayList<String>();
+			try {
+				// the derived names are exact, so they are quoted for the
+				// metadata lookups
+				String keyspace = (tableKeyspace != null) ? Metadata
+						.quote(tableKeyspace) : session.getLoggedKeyspace();
+				KeyspaceMetadata ksMeta = (keyspace == null || getTable() == null) ? null
+						: session.getCluster().getMetadata()
+								.getKeyspace(keyspace);
+				TableMetadata tMeta = (ksMeta == null) ? null : ksMeta
+						.getTable(Metadata.quote(getTable()));
+				if (tMeta != null) {
+					for (ColumnMetadata column : tMeta.getPartitionKey()) {
+						names.add(column.getName());
+					}
+					for (ColumnMetadata column : tMeta.getPrimaryKey()) {
+						allNames.add(column.getName());
+					}
+				}
+			} catch (RuntimeException exc) {
+				LOG.warn(getBeanName() + ":loadKeyColumns: caught this "
+						+ "exception {}", exc.toString());
+			}
+			LOG.debug(getBeanName() + ":loadKeyColumns: {}", allNames);
+			primaryKey = allNames;
+			partitionKey = names;
+		}
+
 		/**
 		 * Note that a PreparedStatement object allows you to define specific
 		 * defaults for the different properties of a Statement (Consistency
@@ -1264,8 +2717,6 @@ public class CqlStmnt implements InitializingBean, BeanNameAware {
 		 * inherited, as default, by every BoundStatement created from the
 		 * PreparedStatement.
 		 * 
-		 * TODO: can we reuse the BoundStatement and SimpleStatement?
-		 * 
 		 * @return a boundStatement from this prepared statement
 		 */
 		BoundStatement getBoundStatement() {
@@ -1273,11 +2724,13 @@ public class CqlStmnt implements InitializingBean, BeanNameAware {
 				LOG.warn("Attempt to get bound statement from non-prepared statement");
 				return null;
 			}
-			synchronized (boundStack) {
-				if (!boundStack.isEmpty()) {
-					return boundStack.pop();
-				}
+			BoundStatement stmnt = boundQueue.poll();
+			if (stmnt != null) {
+				boundSize.decrementAndGet();
+				poolHits.incrementAndGet();
+				return stmnt;
 			}
+			poolMisses.incrementAndGet();
 			return getPreparedStatement().bind();
 		}
 
@@ -1286,30 +2739,91 @@ public class CqlStmnt implements InitializingBean, BeanNameAware {
 				LOG.warn("Attempt to get simple statement from prepared statement");
 				return null;
 			}
-			synchronized (simpleStack) {
-				if (!simpleStack.isEmpty()) {
-					return simpleStack.pop();
-				}
+			SimpleStatement stmnt = simpleQueue.poll();
+			if (stmnt != null) {
+				simpleSize.decrementAndGet();
+				poolHits.incrementAndGet();
+				return stmnt;
 			}
+			poolMisses.incrementAndGet();
 			return new SimpleStatement(getStatement());
 		}
 
 		void returnStatement(Statement stmnt) {
-			if (stmnt != null) {
-				if (stmnt instanceof BoundStatement) {
-					synchronized (boundStack) {
-						if (boundStack.size() < getStackSize()) {
-							boundStack.push((BoundStatement) stmnt);
-						}
-					}
+			if (stmnt instanceof BoundStatement) {
+				// reserve a slot before offering the statement, so that the
+				// queue never grows beyond the stack size
+				if (boundSize.incrementAndGet() <= getStackSize()) {
+					boundQueue.offer((BoundStatement) stmnt);
 				} else {
-					synchronized (simpleStack) {
-						if (simpleStack.size() < getStackSize()) {
-							simpleStack.push((SimpleStatement) stmnt);
-						}
+					boundSize.decrementAndGet();
+				}
+			} else if (stmnt instanceof SimpleStatement) {
+				if (simpleSize.incrementAndGet() <= getStackSize()) {
+					simpleQueue.offer((SimpleStatement) stmnt);
+				} else {
+					simpleSize.decrementAndGet();
+				}
+			}
+		}
+
+		void putPrefetched(String key, ResultSetFuture future, long ttl) {
+			synchronized (prefetched) {
+				// the pages are in the order they were put, so the expired
+				// ones are at the head
+				Iterator<Prefetched> pages = prefetched.values().iterator();
+				while (pages.hasNext()) {
+					Prefetched page = pages.next();
+					if (!page.isExpired(ttl)) {
+						break;
 					}
+					pages.remove();
+					page.future.cancel(true);
 				}
+				Prefetched replaced = prefetched.put(key, new Prefetched(
+						future));
+				if (replaced != null) {
+					replaced.future.cancel(true);
+				}
+			}
+		}
+
+		/**
+		 * @return the statement used for scanning bounded token ranges
+		 */
+		PreparedStatement getScanStatement() {
+			return scanStatement;
+		}
+
+		void setScanStatement(PreparedStatement scanStatement) {
+			this.scanStatement = scanStatement;
+		}
+
+		/**
+		 * @return the statement used for scanning the token range that ends
+		 *         at the minimum token
+		 */
+		PreparedStatement getScanTailStatement() {
+			return scanTailStatement;
+		}
+
+		void setScanTailStatement(PreparedStatement scanTailStatement) {
+			this.scanTailStatement = scanTailStatement;
+		}
+
+		ResultSetFuture takePrefetched(String key, long ttl) {
+			Prefetched page = null;
+			synchronized (prefetched) {
+				page = prefetched.remove(key);
+			}
+			if (page == null) {
+				return null;
+			}
+			if (page.isExpired(ttl)) {
+				page.future.cancel(true);
+				return null;
 			}
+			return page.future;
 		}
 
 		/**
@@ -1329,4 +2843,20 @@ public class CqlStmnt implements InitializingBean, BeanNameAware {
 
 	}
 
+	/**
+	 * A page that has been, or is being, prefetched
+	 */
+	private static class Prefetched {
+		private final ResultSetFuture future;
+		private final long time = System.currentTimeMillis();
+
+		Prefetched(ResultSetFuture future) {
+			this.future = future;
+		}
+
+		boolean isExpired(long ttl) {
+			return System.currentTimeMillis() - time > ttl;
+		}
+	}
+
 }
@@ -0,0 +1,87 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.metis.cassandra;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A dispatch index over a list of CQL statements, where each statement is
+ * keyed by its set of input param names. It yields the same statement as
+ * CqlStmnt.getMatch(List, Set), but its cost is that of hashing the given key
+ * set, rather than that of matching the key set against every statement in
+ * the list.
+ */
+class CqlStmntIndex {
+
+	private static final Logger LOG = LoggerFactory
+			.getLogger(CqlStmntIndex.class);
+
+	// statements keyed by their key sets. Set's equals() and hashCode() are
+	// defined by the Set's elements, so any Set implementation can be used
+	// for the lookup; e.g., the key set of a payload Map
+	private final Map<Set<String>, CqlStmnt> index = new HashMap<Set<String>, CqlStmnt>();
+
+	// the statement used when no keys are given
+	private CqlStmnt noKeyStmnt;
+
+	CqlStmntIndex(List<CqlStmnt> stmnts) {
+		if (stmnts == null) {
+			return;
+		}
+		// the first statement wins, which is consistent with getMatch
+		for (CqlStmnt stmnt : stmnts) {
+			if (!stmnt.isPrepared()) {
+				if (noKeyStmnt == null) {
+					noKeyStmnt = stmnt;
+				}
+			} else {
+				Set<String> keys = new HashSet<String>(stmnt.getKeyTokens()
+						.keySet());
+				if (!index.containsKey(keys)) {
+					index.put(keys, stmnt);
+				}
+			}
+		}
+		LOG.trace("CqlStmntIndex: indexed {} statements", index.size());
+	}
+
+	/**
+	 * Returns the statement that matches the given key set or null if there
+	 * is no match.
+	 * 
+	 * @param keys
+	 * @return
+	 */
+	CqlStmnt getMatch(Set<?> keys) {
+		if (keys == null || keys.isEmpty()) {
+			return noKeyStmnt;
+		}
+		return index.get(keys);
+	}
+
+	/**
+	 * @return true if there are no statements in this index
+	 */
+	boolean isEmpty() {
+		return noKeyStmnt == null && index.isEmpty();
+	}
+
+}
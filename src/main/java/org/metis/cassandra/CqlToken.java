@@ -31,6 +31,8 @@ import java.net.MalformedURLException;
 import java.net.UnknownHostException;
 
 import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.ColumnDefinitions;
+import com.datastax.driver.core.ColumnDefinitions.Definition;
 import com.datastax.driver.core.DataType;
 import com.datastax.driver.core.Row;
 import com.datastax.driver.core.TupleType;
@@ -66,6 +68,9 @@ public class CqlToken {
 	private DataType.Name collectionType;
 	// this token may be replicated across a single statement
 	private List<Integer> positions = new ArrayList<Integer>();
+	// binds this token's values; it is compiled from the token's type and
+	// positions
+	private volatile CqlBinder binder;
 
 	/**
 	 * Create a parameterized token
@@ -148,6 +153,37 @@ public class CqlToken {
 
 	public void addPosition(Integer pos) {
 		getPositions().add(pos);
+		// the binder has to be compiled again
+		binder = null;
+	}
+
+	/**
+	 * Compiles this token's binder. This is called once all of the token's
+	 * positions are known; i.e., when its statement's properties have been
+	 * set.
+	 */
+	void compile() {
+		if (isKey()) {
+			binder = newBinder();
+		}
+	}
+
+	/**
+	 * @return this token's binder, compiling it if need be
+	 */
+	CqlBinder getBinder() {
+		CqlBinder myBinder = binder;
+		if (myBinder == null) {
+			myBinder = newBinder();
+			binder = myBinder;
+		}
+		return myBinder;
+	}
+
+	// a collection's binder parses the collection's elements
+	private CqlBinder newBinder() {
+		return CqlBinder.getBinder(isCollection() ? getCollectionType()
+				: getCqlType(), getPositions());
 	}
 
 	public String getValue() {
@@ -212,7 +248,7 @@ public class CqlToken {
 			bindSet(bs, (Set) obj);
 		} else {
 			Class classZ = obj.getClass();
-			for (Integer pos : getPositions()) {
+			for (int pos : getBinder().getPositions()) {
 				bs.set(pos, obj, classZ);
 			}
 		}
@@ -343,6 +379,24 @@ public class CqlToken {
 		}
 	}
 
+	/**
+	 * Transfer the given row to a Map, where each of the row's columns is
+	 * keyed by its name.
+	 * 
+	 * @param row
+	 * @param cDefs
+	 * @return
+	 */
+	public static Map<String, Object> getMapFromRow(Row row,
+			ColumnDefinitions cDefs) {
+		Map<String, Object> map = new HashMap<String, Object>();
+		for (Definition cDef : cDefs.asList()) {
+			map.put(cDef.getName(), getObjectFromRow(row, cDef.getName(), cDef
+					.getType().getName()));
+		}
+		return map;
+	}
+
 	/**
 	 * Bind the object to the bound statement.
 	 * 
@@ -355,131 +409,11 @@ public class CqlToken {
 			throw new Exception(
 					"attempting to bind single object for collection");
 		}
-		switch (getCqlType()) {
-		case BLOB:
-			ByteBuffer bb = (ByteBuffer) getObjectValue(value);
-			for (Integer pos : getPositions()) {
-				LOG.trace("bindString: binding {} to position {}",
-						bb.toString(), pos);
-				bs.setBytes(pos, bb);
-			}
-			break;
-		case DECIMAL:
-			BigDecimal bd = (BigDecimal) getObjectValue(value);
-			for (Integer pos : getPositions()) {
-				LOG.trace("bindString: binding {} to position {}",
-						bd.toString(), pos);
-				bs.setDecimal(pos, bd);
-			}
-			break;
-		case VARINT:
-			BigInteger bi = (BigInteger) getObjectValue(value);
-			for (Integer pos : getPositions()) {
-				LOG.trace("bindString: binding {} to position {}",
-						bi.toString(), pos);
-				bs.setVarint(pos, bi);
-			}
-			break;
-		case BOOLEAN:
-			Boolean b = (Boolean) getObjectValue(value);
-			for (Integer pos : getPositions()) {
-				LOG.trace("bindString: binding {} to position {}",
-						b.toString(), pos);
-				bs.setBool(pos, b);
-			}
-			break;
-		case INET:
-			InetAddress inet = (InetAddress) getObjectValue(value);
-			for (Integer pos : getPositions()) {
-				LOG.trace("bindString: binding {} to position {}",
-						inet.toString(), pos);
-				bs.setInet(pos, inet);
-			}
-			break;
-		case INT:
-			Integer integer = (Integer) getObjectValue(value);
-			for (Integer pos : getPositions()) {
-				LOG.trace("bindString: binding {} to position {}",
-						integer.toString(), pos);
-				bs.setInt(pos, integer);
-			}
-			break;
-		case SMALLINT:
-			Short shorty = (Short) getObjectValue(value);
-			for (Integer pos : getPositions()) {
-				LOG.trace("bindString: binding {} to position {}",
-						shorty.toString(), pos);
-				bs.setShort(pos, shorty);
-			}
-			break;
-		case TINYINT:
-			Byte mb = (Byte) getObjectValue(value);
-			for (Integer pos : getPositions()) {
-				LOG.trace("bindString: binding {} to position {}",
-						mb.toString(), pos);
-				bs.setByte(pos, mb);
-			}
-			break;
-		case BIGINT:
-		case COUNTER:
-		case TIME:
-			Long ilong = (Long) getObjectValue(value);
-			for (Integer pos : getPositions()) {
-				LOG.trace("bindString: binding {} to position {}",
-						ilong.toString(), pos);
-				bs.setLong(pos, ilong);
-			}
-			break;
-		case FLOAT:
-			Float iFloat = (Float) getObjectValue(value);
-			for (Integer pos : getPositions()) {
-				LOG.trace("bindString: binding {} to position {}",
-						iFloat.toString(), pos);
-				bs.setFloat(pos, iFloat);
-			}
-			break;
-		case DOUBLE:
-			Double iDouble = (Double) getObjectValue(value);
-			for (Integer pos : getPositions()) {
-				LOG.trace("bindString: binding {} to position {}",
-						iDouble.toString(), pos);
-				bs.setDouble(pos, iDouble);
-			}
-			break;
-		case DATE:
-			LocalDate lDate = (LocalDate) getObjectValue(value);
-			for (Integer pos : getPositions()) {
-				LOG.trace("bindString: binding {} to position {}",
-						lDate.toString(), pos);
-				bs.setDate(pos, lDate);
-			}
-			break;
-		case TIMESTAMP:
-			Date iDate = (Date) getObjectValue(value);
-			for (Integer pos : getPositions()) {
-				LOG.trace("bindString: binding {} to position {}",
-						iDate.toString(), pos);
-				bs.setTimestamp(pos, iDate);
-			}
-			break;
-		case TIMEUUID:
-		case UUID:
-			UUID iUUID = (UUID) getObjectValue(value);
-			for (Integer pos : getPositions()) {
-				LOG.trace("bindString: binding {} to position {}",
-						iUUID.toString(), pos);
-				bs.setUUID(pos, iUUID);
-			}
-			break;
-		default:
-			// if it is none of the above, then it is a String type
-			for (Integer pos : getPositions()) {
-				LOG.trace("bindString: binding {} to position {}",
-						value.toString(), pos);
-				bs.setString(pos, value);
-			}
-			break;
+		if (LOG.isTraceEnabled()) {
+			LOG.trace("bindString: binding {} to positions {}", value,
+					getPositions());
 		}
+		getBinder().bind(bs, value);
 	}
 
 	/**
@@ -498,111 +432,16 @@ public class CqlToken {
 			throw new Exception("invalid bind: attempting to bind Map for "
 					+ getCqlType());
 		}
-		switch (getCollectionType()) {
-		case BLOB: {
-			Map<String, ByteBuffer> map = new HashMap<String, ByteBuffer>();
-			for (String key : inMap.keySet()) {
-				map.put(key, ByteBuffer.wrap(inMap.get(key).getBytes()));
-			}
-			return map;
-		}
-		case DECIMAL: {
-			Map<String, BigDecimal> map = new HashMap<String, BigDecimal>();
-			for (String key : inMap.keySet()) {
-				map.put(key, new BigDecimal(inMap.get(key)));
-			}
-			return map;
-		}
-		case VARINT: {
-			Map<String, BigInteger> map = new HashMap<String, BigInteger>();
-			for (String key : inMap.keySet()) {
-				map.put(key, new BigInteger(inMap.get(key)));
-			}
-			return map;
-		}
-		case BOOLEAN: {
-			Map<String, Boolean> map = new HashMap<String, Boolean>();
-			for (String key : inMap.keySet()) {
-				map.put(key, Boolean.valueOf(inMap.get(key)));
-			}
-			return map;
-		}
-		case INET: {
-			Map<String, InetAddress> map = new HashMap<String, InetAddress>();
-			for (String key : inMap.keySet()) {
-				map.put(key, InetAddress.getByName(inMap.get(key)));
-			}
-			return map;
-		}
-		case INT: {
-			Map<String, Integer> map = new HashMap<String, Integer>();
-			for (String key : inMap.keySet()) {
-				map.put(key, Integer.valueOf(inMap.get(key)));
-			}
-			return map;
-		}
-		case SMALLINT: {
-			Map<String, Short> map = new HashMap<String, Short>();
-			for (String key : inMap.keySet()) {
-				map.put(key, Short.valueOf(inMap.get(key)));
-			}
-			return map;
-		}
-		case TINYINT: {
-			Map<String, Byte> map = new HashMap<String, Byte>();
-			for (String key : inMap.keySet()) {
-				map.put(key, Byte.valueOf(inMap.get(key)));
-			}
-			return map;
-		}
-		case BIGINT:
-		case TIME:
-		case COUNTER: {
-			Map<String, Long> map = new HashMap<String, Long>();
-			for (String key : inMap.keySet()) {
-				map.put(key, Long.valueOf(inMap.get(key)));
-			}
-			return map;
-		}
-		case FLOAT: {
-			Map<String, Float> map = new HashMap<String, Float>();
-			for (String key : inMap.keySet()) {
-				map.put(key, Float.valueOf(inMap.get(key)));
-			}
-			return map;
-		}
-		case DOUBLE: {
-			Map<String, Double> map = new HashMap<String, Double>();
-			for (String key : inMap.keySet()) {
-				map.put(key, Double.valueOf(inMap.get(key)));
-			}
-			return map;
-		}
-		case DATE: {
-			Map<String, LocalDate> map = new HashMap<String, LocalDate>();
-			for (String key : inMap.keySet()) {
-				map.put(key, Utils.getLocalDate(inMap.get(key)));
-			}
-			return map;
-		}
-		case TIMESTAMP: {
-			Map<String, Date> map = new HashMap<String, Date>();
-			for (String key : inMap.keySet()) {
-				map.put(key, DateFormat.getDateInstance().parse(inMap.get(key)));
-			}
-			return map;
-		}
-		case TIMEUUID:
-		case UUID: {
-			Map<String, UUID> map = new HashMap<String, UUID>();
-			for (String key : inMap.keySet()) {
-				map.put(key, UUID.fromString(inMap.get(key)));
-			}
-			return map;
-		}
-		default:
+		CqlBinder binder = getBinder();
+		if (binder.isIdentity()) {
 			return inMap;
 		}
+		Map<String, Object> map = new HashMap<String, Object>(
+				(int) (inMap.size() / 0.75f) + 1);
+		for (Map.Entry<String, String> entry : inMap.entrySet()) {
+			map.put(entry.getKey(), binder.parse(entry.getValue()));
+		}
+		return map;
 	}
 
 	public Set<?> getSet(Set<String> inSet) throws Exception {
@@ -613,111 +452,15 @@ public class CqlToken {
 			throw new Exception("invalid bind: attempting to bind Set for "
 					+ getCqlType());
 		}
-		switch (getCollectionType()) {
-		case BLOB: {
-			Set<ByteBuffer> set = new HashSet<ByteBuffer>();
-			for (String val : inSet) {
-				set.add(ByteBuffer.wrap(val.getBytes()));
-			}
-			return set;
-		}
-		case DECIMAL: {
-			Set<BigDecimal> set = new HashSet<BigDecimal>();
-			for (String val : inSet) {
-				set.add(new BigDecimal(val));
-			}
-			return set;
-		}
-		case VARINT: {
-			Set<BigInteger> set = new HashSet<BigInteger>();
-			for (String val : inSet) {
-				set.add(new BigInteger(val));
-			}
-			return set;
-		}
-		case BOOLEAN: {
-			Set<Boolean> set = new HashSet<Boolean>();
-			for (String val : inSet) {
-				set.add(Boolean.valueOf(val));
-			}
-			return set;
-		}
-		case INET: {
-			Set<InetAddress> set = new HashSet<InetAddress>();
-			for (String val : inSet) {
-				set.add(InetAddress.getByName(val));
-			}
-			return set;
-		}
-		case INT: {
-			Set<Integer> set = new HashSet<Integer>();
-			for (String val : inSet) {
-				set.add(Integer.valueOf(val));
-			}
-			return set;
-		}
-		case SMALLINT: {
-			Set<Short> set = new HashSet<Short>();
-			for (String val : inSet) {
-				set.add(Short.valueOf(val));
-			}
-			return set;
-		}
-		case TINYINT: {
-			Set<Byte> set = new HashSet<Byte>();
-			for (String val : inSet) {
-				set.add(Byte.valueOf(val));
-			}
-			return set;
-		}
-		case BIGINT:
-		case TIME:
-		case COUNTER: {
-			Set<Long> set = new HashSet<Long>();
-			for (String val : inSet) {
-				set.add(Long.valueOf(val));
-			}
-			return set;
-		}
-		case FLOAT: {
-			Set<Float> set = new HashSet<Float>();
-			for (String val : inSet) {
-				set.add(Float.valueOf(val));
-			}
-			return set;
-		}
-		case DOUBLE: {
-			Set<Double> set = new HashSet<Double>();
-			for (String val : inSet) {
-				set.add(Double.valueOf(val));
-			}
-			return set;
-		}
-		case DATE: {
-			Set<LocalDate> set = new HashSet<LocalDate>();
-			for (String val : inSet) {
-				set.add(Utils.getLocalDate(val));
-			}
-			return set;
-		}
-		case TIMESTAMP: {
-			Set<Date> set = new HashSet<Date>();
-			for (String val : inSet) {
-				set.add(DateFormat.getDateInstance().parse(val));
-			}
-			return set;
-		}
-		case TIMEUUID:
-		case UUID: {
-			Set<UUID> set = new HashSet<UUID>();
-			for (String val : inSet) {
-				set.add(UUID.fromString(val));
-			}
-			return set;
-		}
-		default:
+		CqlBinder binder = getBinder();
+		if (binder.isIdentity()) {
 			return inSet;
 		}
+		Set<Object> set = new HashSet<Object>((int) (inSet.size() / 0.75f) + 1);
+		for (String val : inSet) {
+			set.add(binder.parse(val));
+		}
+		return set;
 	}
 
 	public List<?> getList(List<String> inList) throws Exception {
@@ -728,111 +471,15 @@ public class CqlToken {
 			throw new Exception("invalid bind: attempting to bind List for "
 					+ getCqlType());
 		}
-		switch (getCollectionType()) {
-		case BLOB: {
-			List<ByteBuffer> list = new ArrayList<ByteBuffer>();
-			for (String val : inList) {
-				list.add(ByteBuffer.wrap(val.getBytes()));
-			}
-			return list;
-		}
-		case DECIMAL: {
-			List<BigDecimal> list = new ArrayList<BigDecimal>();
-			for (String val : inList) {
-				list.add(new BigDecimal(val));
-			}
-			return list;
-		}
-		case VARINT: {
-			List<BigInteger> list = new ArrayList<BigInteger>();
-			for (String val : inList) {
-				list.add(new BigInteger(val));
-			}
-			return list;
-		}
-		case BOOLEAN: {
-			List<Boolean> list = new ArrayList<Boolean>();
-			for (String val : inList) {
-				list.add(Boolean.valueOf(val));
-			}
-			return list;
-		}
-		case INET: {
-			List<InetAddress> list = new ArrayList<InetAddress>();
-			for (String val : inList) {
-				list.add(InetAddress.getByName(val));
-			}
-			return list;
-		}
-		case INT: {
-			List<Integer> list = new ArrayList<Integer>();
-			for (String val : inList) {
-				list.add(Integer.valueOf(val));
-			}
-			return list;
-		}
-		case SMALLINT: {
-			List<Short> list = new ArrayList<Short>();
-			for (String val : inList) {
-				list.add(Short.valueOf(val));
-			}
-			return list;
-		}
-		case TINYINT: {
-			List<Byte> list = new ArrayList<Byte>();
-			for (String val : inList) {
-				list.add(Byte.valueOf(val));
-			}
-			return list;
-		}
-		case BIGINT:
-		case TIME:
-		case COUNTER: {
-			List<Long> list = new ArrayList<Long>();
-			for (String val : inList) {
-				list.add(Long.valueOf(val));
-			}
-			return list;
-		}
-		case FLOAT: {
-			List<Float> list = new ArrayList<Float>();
-			for (String val : inList) {
-				list.add(Float.valueOf(val));
-			}
-			return list;
-		}
-		case DOUBLE: {
-			List<Double> list = new ArrayList<Double>();
-			for (String val : inList) {
-				list.add(Double.valueOf(val));
-			}
-			return list;
-		}
-		case DATE: {
-			List<LocalDate> list = new ArrayList<LocalDate>();
-			for (String val : inList) {
-				list.add(Utils.getLocalDate(val));
-			}
-			return list;
-		}
-		case TIMESTAMP: {
-			List<Date> list = new ArrayList<Date>();
-			for (String val : inList) {
-				list.add(DateFormat.getDateInstance().parse(val));
-			}
-			return list;
-		}
-		case TIMEUUID:
-		case UUID: {
-			List<UUID> list = new ArrayList<UUID>();
-			for (String val : inList) {
-				list.add(UUID.fromString(val));
-			}
-			return list;
-		}
-		default:
+		CqlBinder binder = getBinder();
+		if (binder.isIdentity()) {
 			return inList;
 		}
+		List<Object> list = new ArrayList<Object>(inList.size());
+		for (String val : inList) {
+			list.add(binder.parse(val));
+		}
+		return list;
 	}
 
 	/**
@@ -850,7 +497,7 @@ public class CqlToken {
 		}
 		LOG.trace("bindMap: entered with {}", inMap.toString());
 		Map<String, ?> map = getMap(inMap);
-		for (Integer pos : getPositions())
+		for (int pos : getBinder().getPositions())
 			bs.setMap(pos, map);
 	}
 
@@ -868,7 +515,7 @@ public class CqlToken {
 		}
 		LOG.trace("bindSet: entered with {}", inSet.toString());
 		Set<?> set = getSet(inSet);
-		for (Integer pos : getPositions())
+		for (int pos : getBinder().getPositions())
 			bs.setSet(pos, set);
 	}
 
@@ -887,7 +534,7 @@ public class CqlToken {
 		}
 		LOG.trace("bindList: entered with {}", inList.toString());
 		List<?> list = getList(inList);
-		for (Integer pos : getPositions())
+		for (int pos : getBinder().getPositions())
 			bs.setList(pos, list);
 	}
 
@@ -911,7 +558,7 @@ public class CqlToken {
 				.getMetadata(), inList);
 		TupleValue tv = tupleType.newValue(inList.toArray(new Object[inList
 				.size()]));
-		for (Integer pos : getPositions())
+		for (int pos : getBinder().getPositions())
 			bs.setTupleValue(pos, tv);
 	}
 
@@ -0,0 +1,281 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.metis.cassandra;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.datastax.driver.core.Session;
+
+/**
+ * The write-behind buffer of a Client. Writes are accepted into the buffer and
+ * a flusher thread drains them, a flush at a time, when flushSize writes are
+ * pending or flushInterval milliseconds after the first of them was accepted.
+ * The Client executes each flush as partition-grouped, async batches.
+ * <p>
+ * The buffer holds no more than capacity writes, including those of the flush
+ * that is in progress; so, when Cassandra falls behind, the writers are held
+ * back. A flush preserves the order of the writes to any one row: the writes
+ * are executed in rounds, where a round holds no more than one write per row,
+ * and a round is not executed until the previous one has completed.
+ */
+final class CqlWriteBehind implements Runnable {
+
+	private static final Logger LOG = LoggerFactory
+			.getLogger(CqlWriteBehind.class);
+
+	private final Client client;
+	private final int flushSize;
+	private final long flushInterval;
+	private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<Pending>();
+	// a permit for each write that the buffer has room for
+	private final Semaphore room;
+	private final Thread flusher;
+	private volatile boolean closed;
+	// writes are enqueued under the read lock and the buffer is closed under
+	// the write lock; so, once closed, no write can slip in behind the
+	// flusher's final drain
+	private final ReadWriteLock closing = new ReentrantReadWriteLock();
+	private final AtomicLong writes = new AtomicLong();
+	private final AtomicLong failures = new AtomicLong();
+	private final AtomicLong flushes = new AtomicLong();
+
+	CqlWriteBehind(Client client, int capacity, int flushSize,
+			long flushInterval) {
+		this.client = client;
+		this.flushSize = flushSize;
+		this.flushInterval = flushInterval;
+		this.room = new Semaphore(capacity);
+		this.flusher = new Thread(this, client.getBeanName() + "-write-behind");
+		this.flusher.setDaemon(true);
+		this.flusher.start();
+	}
+
+	/**
+	 * Accepts the given Maps, for the given statement, into the buffer;
+	 * waiting up to timeout milliseconds for there to be room for all of
+	 * them. Returns false if there is no room or the buffer has been closed,
+	 * in which case none of the Maps are accepted.
+	 */
+	boolean offer(CqlStmnt cqlStmnt, List<Map<Object, Object>> listMap,
+			long timeout) throws InterruptedException {
+		if (closed || !room.tryAcquire(listMap.size(), timeout,
+				TimeUnit.MILLISECONDS)) {
+			return false;
+		}
+		closing.readLock().lock();
+		try {
+			// the buffer may have been closed while waiting for room
+			if (closed) {
+				room.release(listMap.size());
+				return false;
+			}
+			for (Map<Object, Object> map : listMap) {
+				queue.offer(new Pending(cqlStmnt, map));
+			}
+			writes.addAndGet(listMap.size());
+			return true;
+		} finally {
+			closing.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Closes the buffer to new writes and waits up to timeout milliseconds
+	 * for the writes that it holds to be flushed.
+	 */
+	void close(long timeout) {
+		// wait for the writes that are being enqueued
+		closing.writeLock().lock();
+		try {
+			closed = true;
+		} finally {
+			closing.writeLock().unlock();
+		}
+		try {
+			flusher.join(timeout);
+		} catch (InterruptedException ignore) {
+			Thread.currentThread().interrupt();
+		}
+		if (flusher.isAlive() || !queue.isEmpty()) {
+			LOG.warn(client.getBeanName() + ":close: write-behind buffer "
+					+ "was closed with {} writes pending", queue.size());
+		}
+	}
+
+	public void run() {
+		List<Pending> flush = new ArrayList<Pending>();
+		while (!closed || !queue.isEmpty()) {
+			try {
+				Pending first = queue.poll(flushInterval,
+						TimeUnit.MILLISECONDS);
+				if (first == null) {
+					continue;
+				}
+				flush.add(first);
+				// wait for the flush to fill up, but no longer than the
+				// interval; unless the buffer is being closed
+				long deadline = System.currentTimeMillis() + flushInterval;
+				while (flush.size() < flushSize && !closed) {
+					queue.drainTo(flush, flushSize - flush.size());
+					long wait = deadline - System.currentTimeMillis();
+					if (flush.size() >= flushSize || wait <= 0) {
+						break;
+					}
+					Pending next = queue.poll(wait, TimeUnit.MILLISECONDS);
+					if (next == null) {
+						break;
+					}
+					flush.add(next);
+				}
+				queue.drainTo(flush, flushSize - flush.size());
+				flush(flush);
+			} catch (InterruptedException exc) {
+				LOG.warn(client.getBeanName() + ":run: write-behind flusher "
+						+ "was interrupted");
+				return;
+			} catch (RuntimeException exc) {
+				LOG.error(client.getBeanName() + ":run: caught this "
+						+ "exception while flushing {}", exc.toString());
+			} finally {
+				room.release(flush.size());
+				flush.clear();
+			}
+		}
+	}
+
+	/**
+	 * Executes the given writes, round by round.
+	 */
+	private void flush(List<Pending> flush) {
+		flushes.incrementAndGet();
+		Session session = null;
+		try {
+			session = client.getSession();
+		} catch (Exception exc) {
+			LOG.error(client.getBeanName() + ":flush: unable to get session, "
+					+ "dropping {} writes, msg = {}", flush.size(),
+					exc.getMessage());
+			failures.addAndGet(flush.size());
+			return;
+		}
+		for (Map<CqlStmnt, List<Map<Object, Object>>> round : getRounds(flush,
+				session)) {
+			for (Map.Entry<CqlStmnt, List<Map<Object, Object>>> entry : round
+					.entrySet()) {
+				failures.addAndGet(client.executeBehind(entry.getKey(),
+						entry.getValue(), session));
+			}
+		}
+	}
+
+	/**
+	 * Splits the given writes into rounds, where each round holds the writes,
+	 * grouped by statement, that can be executed together. A write whose row
+	 * cannot be derived is placed in a round of its own, with respect to the
+	 * other writes to its table.
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private List<Map<CqlStmnt, List<Map<Object, Object>>>> getRounds(
+			List<Pending> flush, Session session) {
+		List<Map<CqlStmnt, List<Map<Object, Object>>>> rounds = new ArrayList<Map<CqlStmnt, List<Map<Object, Object>>>>();
+		// the last round of each row and the first round that each table's
+		// next write may be placed in
+		Map<String, Integer> rowRounds = new HashMap<String, Integer>();
+		Map<String, Integer> tableFloors = new HashMap<String, Integer>();
+		Map<String, Integer> tableRounds = new HashMap<String, Integer>();
+		for (Pending pending : flush) {
+			String table = String.valueOf(pending.cqlStmnt.getTable());
+			String row = pending.cqlStmnt.getRow(session, (Map) pending.map);
+			Integer floor = tableFloors.get(table);
+			Integer last = tableRounds.get(table);
+			int round = 0;
+			if (row == null) {
+				// after all of the table's previous writes
+				round = (last == null) ? 0 : last + 1;
+				tableFloors.put(table, round + 1);
+			} else {
+				row = table + row;
+				Integer rowRound = rowRounds.get(row);
+				round = Math.max((floor == null) ? 0 : floor,
+						(rowRound == null) ? 0 : rowRound + 1);
+				rowRounds.put(row, round);
+			}
+			tableRounds.put(table, Math.max(round, (last == null) ? 0 : last));
+			while (rounds.size() <= round) {
+				rounds.add(new LinkedHashMap<CqlStmnt, List<Map<Object, Object>>>());
+			}
+			List<Map<Object, Object>> maps = rounds.get(round).get(
+					pending.cqlStmnt);
+			if (maps == null) {
+				maps = new ArrayList<Map<Object, Object>>();
+				rounds.get(round).put(pending.cqlStmnt, maps);
+			}
+			maps.add(pending.map);
+		}
+		return rounds;
+	}
+
+	/**
+	 * @return the number of writes that are waiting to be flushed
+	 */
+	int getPending() {
+		return queue.size();
+	}
+
+	/**
+	 * @return the number of writes accepted into the buffer
+	 */
+	long getWrites() {
+		return writes.get();
+	}
+
+	/**
+	 * @return the number of accepted writes that failed when flushed
+	 */
+	long getFailures() {
+		return failures.get();
+	}
+
+	/**
+	 * @return the number of flushes
+	 */
+	long getFlushes() {
+		return flushes.get();
+	}
+
+	private static final class Pending {
+		private final CqlStmnt cqlStmnt;
+		private final Map<Object, Object> map;
+
+		Pending(CqlStmnt cqlStmnt, Map<Object, Object> map) {
+			this.cqlStmnt = cqlStmnt;
+			this.map = map;
+		}
+	}
+
+}
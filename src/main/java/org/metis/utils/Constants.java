@@ -50,6 +50,7 @@ public class Constants {
 	public static final String INTO_STR = "into";
 	public static final String CASSANDRA_METHOD = "metis.cql.method";
 	public static final String CASSANDRA_PAGING_STATE = "metis.cql.paging.state";
+	public static final String CASSANDRA_FAILURES = "metis.cql.failures";
 	public static final String UTF8_STR = "utf-8";
 	public static final String JSON_STR = "json";
 
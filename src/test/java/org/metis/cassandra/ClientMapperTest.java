@@ -0,0 +1,58 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.metis.cassandra;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.springframework.util.AntPathMatcher;
+import static org.junit.Assert.*;
+
+/**
+ * Validates the compiled patterns used by the ClientMapper against the
+ * AntPathMatcher. No Cassandra node is required.
+ */
+public class ClientMapperTest {
+
+	private static final List<String> PATTERNS = Arrays.asList("/user",
+			"/user/*", "/user/**", "/user/*/video", "/u?er", "/us*",
+			"/video/**/event", "/video/{id}", "/video/{id}/tags",
+			"/**/tags", "/a/b/c", "/a/b*/c*", "/*");
+
+	private static final List<String> PATHS = Arrays.asList("/user",
+			"/user/", "/user/joe", "/user/joe/", "/user/joe/video",
+			"/user/joe/video/1", "/uxer", "/usr", "/users", "/video/1",
+			"/video/1/tags", "/video/x/y/event", "/video/event", "/a/b/c",
+			"/a/bb/cc", "/a/b", "/tags", "/x/y/tags", "/", "/nomatch/at/all");
+
+	@Test
+	public void TestA() {
+		AntPathMatcher matcher = new AntPathMatcher();
+		ClientPathTrie trie = new ClientPathTrie(PATTERNS, matcher);
+		for (String path : PATHS) {
+			List<String> expected = new ArrayList<String>();
+			for (String pattern : PATTERNS) {
+				if (matcher.match(pattern, path)) {
+					expected.add(pattern);
+				}
+			}
+			List<String> actual = trie.getMatches(path);
+			assertEquals(path, expected.size(), actual.size());
+			assertTrue(path, actual.containsAll(expected));
+		}
+	}
+
+}
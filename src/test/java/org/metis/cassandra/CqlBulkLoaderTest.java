@@ -0,0 +1,138 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.metis.cassandra;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Validates the bulk loader's parsing of CSV lines, its choice of format, its
+ * splitting of a file into chunks and its numbering of failed lines. No
+ * Cassandra node is required.
+ */
+public class CqlBulkLoaderTest {
+
+	@Test
+	public void TestA() {
+		assertEquals(Arrays.asList("joe", "42", ""),
+				CqlBulkLoader.parseCsv("joe,42,"));
+		// a quoted field may hold commas and doubled quotes
+		assertEquals(Arrays.asList("Smith, Joe", "say \"hi\"", "x"),
+				CqlBulkLoader.parseCsv("\"Smith, Joe\",\"say \"\"hi\"\"\",x"));
+		assertEquals(Arrays.asList(""), CqlBulkLoader.parseCsv(""));
+	}
+
+	@Test
+	public void TestB() {
+		assertEquals(CqlBulkLoader.Format.CSV,
+				CqlBulkLoader.Format.forFile(null, new File("users.CSV")));
+		assertEquals(CqlBulkLoader.Format.JSONL,
+				CqlBulkLoader.Format.forFile(null, new File("users.jsonl")));
+		assertEquals(CqlBulkLoader.Format.CSV,
+				CqlBulkLoader.Format.forFile(" csv ", new File("users.txt")));
+	}
+
+	@Test
+	public void TestC() throws Exception {
+		// the last line has no line terminator
+		File file = File.createTempFile("CqlBulkLoaderTest", ".csv");
+		file.deleteOnExit();
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write("aaa\nbbbbb\ncc\nd".getBytes("UTF-8"));
+		} finally {
+			out.close();
+		}
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			long size = channel.size();
+			assertEquals(14, size);
+			assertEquals(4, CqlBulkLoader.getLineEnd(channel, 0, size));
+			assertEquals(4, CqlBulkLoader.getLineEnd(channel, 3, size));
+			assertEquals(14, CqlBulkLoader.getLineEnd(channel, 13, size));
+
+			// each chunk ends on a line boundary and the chunks cover the
+			// file from the given position on
+			List<CqlBulkLoader.Chunk> chunks = CqlBulkLoader.getChunks(
+					channel, 0, size, 4);
+			assertEquals(3, chunks.size());
+			assertEquals(0, chunks.get(0).start);
+			assertEquals(4, chunks.get(0).end);
+			assertEquals(4, chunks.get(1).start);
+			assertEquals(10, chunks.get(1).end);
+			assertEquals(10, chunks.get(2).start);
+			assertEquals(14, chunks.get(2).end);
+
+			chunks = CqlBulkLoader.getChunks(channel, 4, size, 100);
+			assertEquals(1, chunks.size());
+			assertEquals(4, chunks.get(0).start);
+			assertEquals(14, chunks.get(0).end);
+
+			assertTrue(CqlBulkLoader.getChunks(channel, size, size, 5)
+					.isEmpty());
+		} finally {
+			raf.close();
+		}
+	}
+
+	@Test
+	public void TestD() {
+		// a chunk's failures are keyed by their line within the chunk
+		List<CqlBulkLoader.Chunk> chunks = new ArrayList<CqlBulkLoader.Chunk>();
+		CqlBulkLoader.Chunk chunk = new CqlBulkLoader.Chunk(0, 10);
+		chunk.lines = 3;
+		chunk.failures.put(1, "x");
+		chunks.add(chunk);
+		chunk = new CqlBulkLoader.Chunk(10, 20);
+		chunk.lines = 2;
+		chunk.failures.put(0, "y");
+		chunk.failures.put(1, "z");
+		chunks.add(chunk);
+		// the first line of a CSV file is its header
+		Map<Integer, String> failedLines = CqlBulkLoader.getFailedLines(
+				chunks, 2);
+		assertEquals(3, failedLines.size());
+		assertEquals("x", failedLines.get(3));
+		assertEquals("y", failedLines.get(5));
+		assertEquals("z", failedLines.get(6));
+
+		// no more than MAX_FAILURES are reported, and they are the first
+		chunks.clear();
+		for (int i = 0; i < 2; i++) {
+			chunk = new CqlBulkLoader.Chunk(i * 10, i * 10 + 10);
+			chunk.lines = CqlBulkLoader.MAX_FAILURES;
+			for (int j = 0; j < CqlBulkLoader.MAX_FAILURES; j++) {
+				chunk.failures.put(j, "failed");
+			}
+			chunks.add(chunk);
+		}
+		failedLines = CqlBulkLoader.getFailedLines(chunks, 1);
+		assertEquals(CqlBulkLoader.MAX_FAILURES, failedLines.size());
+		assertTrue(failedLines.containsKey(1));
+		assertTrue(failedLines.containsKey(CqlBulkLoader.MAX_FAILURES));
+		assertFalse(failedLines.containsKey(CqlBulkLoader.MAX_FAILURES + 1));
+	}
+
+}
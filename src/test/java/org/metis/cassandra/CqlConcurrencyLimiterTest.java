@@ -0,0 +1,97 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.metis.cassandra;
+
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Validates the admission and the adjustment of the adaptive concurrency
+ * limit. No Cassandra node is required.
+ */
+public class CqlConcurrencyLimiterTest {
+
+	@Test
+	public void TestA() throws Exception {
+		CqlConcurrencyLimiter limiter = new CqlConcurrencyLimiter("test", 2,
+				1, 10, 2.0, 0L);
+
+		// a request over the limit is rejected right away
+		limiter.acquire(false);
+		limiter.acquire(false);
+		try {
+			limiter.acquire(false);
+			fail("request was admitted over the limit");
+		} catch (RejectedExecutionException ignore) {
+		}
+		assertEquals(1, limiter.getRejections());
+		limiter.release(1000000L, false);
+		limiter.release(1000000L, false);
+
+		// the limit grows while the limit is in use and the RTT holds
+		for (int i = 0; i < 50; i++) {
+			int limit = limiter.getLimit();
+			for (int j = 0; j < limit; j++) {
+				limiter.acquire(false);
+			}
+			for (int j = 0; j < limit; j++) {
+				limiter.release(1000000L, false);
+			}
+		}
+		assertEquals(10, limiter.getLimit());
+		assertEquals(0, limiter.getInFlight());
+
+		// and shrinks once the RTT climbs well past the no-load RTT
+		for (int i = 0; i < 50; i++) {
+			int limit = limiter.getLimit();
+			for (int j = 0; j < limit; j++) {
+				limiter.acquire(false);
+			}
+			for (int j = 0; j < limit; j++) {
+				limiter.release(10000000L, false);
+			}
+		}
+		assertTrue(limiter.getLimit() < 10);
+
+		// a dropped request cuts the limit
+		int limit = limiter.getLimit();
+		limiter.acquire(false);
+		limiter.release(-1L, true);
+		assertTrue(limiter.getLimit() <= Math.max(1, limit * 0.9));
+	}
+
+	@Test
+	public void TestB() throws Exception {
+		// a request over the limit waits for another to complete
+		final CqlConcurrencyLimiter limiter = new CqlConcurrencyLimiter(
+				"test", 1, 1, 1, 2.0, 5000L);
+		limiter.acquire(false);
+		new Thread() {
+			public void run() {
+				try {
+					Thread.sleep(50);
+				} catch (InterruptedException ignore) {
+				}
+				limiter.release(1000000L, false);
+			}
+		}.start();
+		limiter.acquire(false);
+		assertEquals(1, limiter.getInFlight());
+		assertEquals(0, limiter.getRejections());
+	}
+
+}
@@ -0,0 +1,160 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.metis.cassandra;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.Message;
+import org.apache.camel.Processor;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.impl.DefaultMessage;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import static org.metis.utils.Constants.CASSANDRA_PAGING_STATE;
+
+/**
+ * Validates how the consumer advances its checkpoint in row mode. No
+ * Cassandra node is required; the pages are scripted.
+ */
+public class CqlConsumerTest {
+
+	@Test
+	public void TestA() throws Exception {
+		final List<Integer> processed = new ArrayList<Integer>();
+		TestConsumer consumer = new TestConsumer(new Processor() {
+			public void process(Exchange exchange) throws Exception {
+				processed.add(exchange.getIn().getBody(Map.class).size());
+			}
+		});
+		consumer.start();
+
+		// a page with rows advances the checkpoint once its last row has
+		// been processed
+		consumer.pages.add(new Page(2, "p1"));
+		assertEquals(2, consumer.poll());
+		assertEquals("p1", consumer.getCheckpoint());
+
+		// an empty intermediate page produces no exchange, but still
+		// advances the checkpoint
+		consumer.pages.add(new Page(0, "p2"));
+		assertEquals(0, consumer.poll());
+		assertEquals("p2", consumer.getCheckpoint());
+
+		consumer.pages.add(new Page(1, "p3"));
+		assertEquals(1, consumer.poll());
+		assertEquals("p3", consumer.getCheckpoint());
+
+		// the empty page at the end of the result set wraps the checkpoint
+		// back to the beginning
+		consumer.pages.add(new Page(0, null));
+		assertEquals(0, consumer.poll());
+		assertNull(consumer.getCheckpoint());
+
+		consumer.pages.add(new Page(1, "p1"));
+		assertEquals(1, consumer.poll());
+		assertEquals("p1", consumer.getCheckpoint());
+
+		assertEquals(4, processed.size());
+		assertEquals(Arrays.asList(null, "p1", "p2", "p3", null),
+				consumer.read);
+		consumer.stop();
+	}
+
+	@Test
+	public void TestB() throws Exception {
+		final int[] calls = new int[1];
+		TestConsumer consumer = new TestConsumer(new Processor() {
+			public void process(Exchange exchange) throws Exception {
+				// the first row of the first page fails
+				if (calls[0]++ == 0) {
+					throw new Exception("failed");
+				}
+			}
+		});
+		consumer.start();
+
+		// a page with a failed row does not advance the checkpoint, so it
+		// is read again
+		consumer.pages.add(new Page(2, "p1"));
+		assertEquals(2, consumer.poll());
+		assertNull(consumer.getCheckpoint());
+
+		consumer.pages.add(new Page(2, "p1"));
+		assertEquals(2, consumer.poll());
+		assertEquals("p1", consumer.getCheckpoint());
+		assertEquals(Arrays.asList(null, null), consumer.read);
+		consumer.stop();
+	}
+
+	// a page of the given number of rows, followed by the given paging state
+	private static final class Page {
+		private final int rows;
+		private final String next;
+
+		Page(int rows, String next) {
+			this.rows = rows;
+			this.next = next;
+		}
+	}
+
+	// a consumer that reads its pages from a script
+	private static final class TestConsumer extends CqlConsumer {
+		private final Queue<Page> pages = new LinkedList<Page>();
+		// the paging states that the pages were read from
+		private final List<String> read = new ArrayList<String>();
+
+		TestConsumer(Processor processor) {
+			super(new CqlEndpoint("cql:user", "user", new CqlComponent(
+					new DefaultCamelContext()), null, new Client()),
+					processor);
+			// the test, not the scheduler, polls the consumer
+			setStartScheduler(false);
+		}
+
+		@Override
+		Message readPage(String pState) throws Exception {
+			read.add(pState);
+			Page page = pages.poll();
+			if (page == null) {
+				return null;
+			}
+			Message msg = new DefaultMessage();
+			if (page.next != null) {
+				msg.setHeader(CASSANDRA_PAGING_STATE, page.next);
+			}
+			msg.setBody(page);
+			return msg;
+		}
+
+		@Override
+		void loadRows(Message msg, Collection<Map<String, Object>> rows) {
+			Page page = (Page) msg.getBody();
+			for (int i = 0; i < page.rows; i++) {
+				Map<String, Object> row = new HashMap<String, Object>();
+				row.put("id", i);
+				rows.add(row);
+			}
+		}
+	}
+
+}
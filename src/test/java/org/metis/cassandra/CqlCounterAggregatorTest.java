@@ -0,0 +1,176 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.metis.cassandra;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import com.datastax.driver.core.Session;
+
+import static org.junit.Assert.*;
+
+/**
+ * Validates that the counter aggregator neither loses nor double counts the
+ * deltas that it accepts; while its rows are being retired and handed off,
+ * and when it is closed. No Cassandra node is required; the client tallies
+ * the UPDATEs that the aggregator flushes, rather than executing them.
+ */
+public class CqlCounterAggregatorTest {
+
+	private static final int ROWS = 3;
+
+	@Test
+	public void TestA() throws Exception {
+		TestClient client = new TestClient();
+		final CqlStmnt cqlStmnt = getCqlStmnt();
+
+		// flush every millisecond, so that the rows that are left idle are
+		// retired while the writers move on to, and back to, them
+		final CqlCounterAggregator aggregator = new CqlCounterAggregator(
+				client, 1L);
+		final AtomicLong[] expected = new AtomicLong[ROWS];
+		for (int i = 0; i < ROWS; i++) {
+			expected[i] = new AtomicLong();
+		}
+		final CountDownLatch started = new CountDownLatch(4);
+		List<Thread> writers = new ArrayList<Thread>();
+		for (int i = 0; i < 4; i++) {
+			Thread writer = new Thread() {
+				public void run() {
+					started.countDown();
+					try {
+						started.await();
+						for (int j = 0; j < 20000; j++) {
+							// a phase of 1000 increments is spent on one
+							// row, which then idles for two phases
+							int row = (j / 1000) % ROWS;
+							aggregator.add(increment(cqlStmnt, row, 1L));
+							expected[row].addAndGet(1L);
+							if (j % 1000 == 999) {
+								Thread.sleep(20L);
+							}
+						}
+					} catch (Exception exc) {
+						throw new RuntimeException(exc);
+					}
+				}
+			};
+			writer.start();
+			writers.add(writer);
+		}
+		for (Thread writer : writers) {
+			writer.join();
+		}
+		aggregator.close(10000L);
+
+		// the flushed totals are exactly those that were added
+		for (int i = 0; i < ROWS; i++) {
+			assertEquals(expected[i].get(), client.getTotal(i));
+		}
+		assertEquals(80000, aggregator.getIncrements());
+		assertEquals(0, aggregator.getFailures());
+		assertTrue(aggregator.getUpdates() > ROWS);
+	}
+
+	@Test
+	public void TestB() throws Exception {
+		TestClient client = new TestClient();
+		CqlStmnt cqlStmnt = getCqlStmnt();
+
+		// nothing is flushed until the aggregator is closed
+		CqlCounterAggregator aggregator = new CqlCounterAggregator(client,
+				3600000L);
+		aggregator.add(increment(cqlStmnt, 0, 5L));
+		aggregator.add(increment(cqlStmnt, 0, -2L));
+		aggregator.add(increment(cqlStmnt, 1, 7L));
+		// a row whose deltas cancel out is not written at all
+		aggregator.add(increment(cqlStmnt, 2, 4L));
+		aggregator.add(increment(cqlStmnt, 2, -4L));
+		assertEquals(0, aggregator.getUpdates());
+
+		aggregator.close(10000L);
+		assertEquals(3, client.getTotal(0));
+		assertEquals(7, client.getTotal(1));
+		assertEquals(0, client.getTotal(2));
+		assertEquals(2, aggregator.getUpdates());
+
+		// nor is any delta accepted after that
+		try {
+			aggregator.add(increment(cqlStmnt, 0, 1L));
+			fail("ERROR: delta accepted after close");
+		} catch (Exception expected) {
+		}
+		assertEquals(3, client.getTotal(0));
+	}
+
+	private static CqlStmnt getCqlStmnt() throws Exception {
+		CqlStmnt cqlStmnt = new CqlStmnt(
+				"update video_rating set rating_counter = rating_counter + "
+						+ "`counter:count` where videoid = `int:videoid`");
+		cqlStmnt.afterPropertiesSet();
+		return cqlStmnt;
+	}
+
+	private static List<CqlCounterAggregator.Increment> increment(
+			CqlStmnt cqlStmnt, int row, long delta) {
+		Map<String, Object> keyParams = new HashMap<String, Object>();
+		keyParams.put("videoid", row);
+		List<CqlCounterAggregator.Increment> increments = new ArrayList<CqlCounterAggregator.Increment>();
+		increments.add(new CqlCounterAggregator.Increment(cqlStmnt, "r"
+				+ row, keyParams, new long[] { delta }));
+		return increments;
+	}
+
+	// a client that tallies the flushed UPDATEs by row
+	private static final class TestClient extends Client {
+		private final ConcurrentMap<Object, AtomicLong> totals = new ConcurrentHashMap<Object, AtomicLong>();
+
+		TestClient() {
+			setBeanName("test");
+		}
+
+		@Override
+		public Session getSession() {
+			return null;
+		}
+
+		@Override
+		int executeBehind(CqlStmnt cqlStmnt,
+				List<Map<Object, Object>> myListMap, Session mySession) {
+			for (Map<Object, Object> map : myListMap) {
+				AtomicLong total = totals.get(map.get("videoid"));
+				if (total == null) {
+					totals.putIfAbsent(map.get("videoid"), new AtomicLong());
+					total = totals.get(map.get("videoid"));
+				}
+				total.addAndGet(((Number) map.get("count")).longValue());
+			}
+			return 0;
+		}
+
+		long getTotal(int row) {
+			AtomicLong total = totals.get(row);
+			return (total == null) ? 0 : total.get();
+		}
+	}
+
+}
@@ -0,0 +1,208 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.metis.cassandra;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.SimpleStatement;
+import com.datastax.driver.core.Statement;
+import com.google.common.util.concurrent.AbstractFuture;
+
+import static org.junit.Assert.*;
+
+/**
+ * Validates the hedging of reads against a stand-in session, whose reads are
+ * answered by the test. No Cassandra node is required.
+ */
+public class CqlHedgerTest {
+
+	private final Queue<TestFuture> reads = new LinkedList<TestFuture>();
+	private final ResultSet resultSet = (ResultSet) proxy(ResultSet.class);
+	private final Session session = (Session) proxy(Session.class);
+
+	@Test
+	public void TestA() throws Exception {
+		CqlHedger hedger = new CqlHedger("test", 95.0, 0L, 100);
+		Statement stmnt = new SimpleStatement("select * from users")
+				.setIdempotent(true);
+
+		// nothing is hedged until the delay is known
+		TestFuture read = answered();
+		assertSame(read, hedger.executeAsync(session, stmnt));
+		warmUp(hedger, stmnt);
+
+		// the hedge answers first and the original read is cancelled
+		TestFuture slow = new TestFuture();
+		reads.add(slow);
+		answered();
+		ResultSetFuture future = hedger.executeAsync(session, stmnt);
+		assertSame(resultSet, future.getUninterruptibly(5, TimeUnit.SECONDS));
+		// the loser is cancelled right after the winner is taken
+		for (int i = 0; i < 100 && !slow.isCancelled(); i++) {
+			Thread.sleep(10);
+		}
+		assertTrue(slow.isCancelled());
+		assertEquals(1, hedger.getHedges());
+		assertEquals(1, hedger.getHedgeWins());
+
+		// a statement that is not idempotent is never hedged
+		read = answered();
+		assertSame(read, hedger.executeAsync(session,
+				new SimpleStatement("select * from users")));
+	}
+
+	@Test
+	public void TestB() throws Exception {
+		// without a budget, a slow read is left alone
+		CqlHedger hedger = new CqlHedger("test", 95.0, 0L, 0);
+		Statement stmnt = new SimpleStatement("select * from users")
+				.setIdempotent(true);
+		warmUp(hedger, stmnt);
+		TestFuture slow = new TestFuture();
+		reads.add(slow);
+		ResultSetFuture future = hedger.executeAsync(session, stmnt);
+		Thread.sleep(50);
+		assertFalse(future.isDone());
+		assertEquals(0, hedger.getHedges());
+		slow.answer(resultSet);
+		assertSame(resultSet, future.getUninterruptibly());
+	}
+
+	@Test
+	public void TestC() throws Exception {
+		CqlHedger hedger = new CqlHedger("test", 95.0, 0L, 100);
+		Statement stmnt = new SimpleStatement("select * from users")
+				.setIdempotent(true);
+		warmUp(hedger, stmnt);
+
+		// a hedge that the sender does not admit is not sent
+		final AtomicInteger offered = new AtomicInteger();
+		TestFuture slow = new TestFuture();
+		reads.add(slow);
+		ResultSetFuture future = hedger.executeAsync(session, stmnt,
+				new CqlHedger.HedgeSender() {
+					public ResultSetFuture trySend(Session session,
+							Statement stmnt) {
+						offered.incrementAndGet();
+						return null;
+					}
+				});
+		for (int i = 0; i < 100 && offered.get() == 0; i++) {
+			Thread.sleep(10);
+		}
+		assertEquals(1, offered.get());
+		assertEquals(0, hedger.getHedges());
+		assertFalse(future.isDone());
+		slow.answer(resultSet);
+		assertSame(resultSet, future.getUninterruptibly());
+		CqlHedger.getSettled(future).get(5, TimeUnit.SECONDS);
+
+		// the statement is not settled until both reads are done with it;
+		// here, the original read cannot be cancelled
+		TestFuture stubborn = new TestFuture() {
+			@Override
+			public boolean cancel(boolean mayInterruptIfRunning) {
+				return false;
+			}
+		};
+		reads.add(stubborn);
+		answered();
+		future = hedger.executeAsync(session, stmnt,
+				new CqlHedger.HedgeSender() {
+					public ResultSetFuture trySend(Session session,
+							Statement stmnt) {
+						return session.executeAsync(stmnt);
+					}
+				});
+		assertSame(resultSet, future.getUninterruptibly(5, TimeUnit.SECONDS));
+		assertEquals(1, hedger.getHedges());
+		assertFalse(CqlHedger.getSettled(future).isDone());
+		stubborn.answer(resultSet);
+		CqlHedger.getSettled(future).get(5, TimeUnit.SECONDS);
+	}
+
+	// samples enough reads for the hedge delay to become known
+	private void warmUp(CqlHedger hedger, Statement stmnt)
+			throws InterruptedException {
+		for (int i = 0; i < 128; i++) {
+			answered();
+			hedger.executeAsync(session, stmnt);
+		}
+		for (int i = 0; i < 100 && hedger.getDelay() < 0; i++) {
+			Thread.sleep(10);
+		}
+		assertTrue(hedger.getDelay() >= 0);
+	}
+
+	// queues up a read that is answered as soon as it is sent
+	private TestFuture answered() {
+		TestFuture read = new TestFuture();
+		read.answer(resultSet);
+		reads.add(read);
+		return read;
+	}
+
+	private Object proxy(Class<?> type) {
+		return Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class<?>[] { type }, new InvocationHandler() {
+					public Object invoke(Object proxy, Method method,
+							Object[] args) {
+						if (method.getName().equals("executeAsync")) {
+							synchronized (reads) {
+								return reads.poll();
+							}
+						}
+						return (method.getName().equals("hashCode")) ? 1
+								: (method.getName().equals("equals")) ? proxy == args[0]
+										: null;
+					}
+				});
+	}
+
+	private static class TestFuture extends AbstractFuture<ResultSet>
+			implements ResultSetFuture {
+
+		void answer(ResultSet resultSet) {
+			set(resultSet);
+		}
+
+		public ResultSet getUninterruptibly() {
+			try {
+				return get();
+			} catch (Exception exc) {
+				throw new RuntimeException(exc);
+			}
+		}
+
+		public ResultSet getUninterruptibly(long timeout, TimeUnit unit) {
+			try {
+				return get(timeout, unit);
+			} catch (Exception exc) {
+				throw new RuntimeException(exc);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,129 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.metis.cassandra;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Validates the SELECT result cache and the derivation of the tables and
+ * columns that it is invalidated by. No Cassandra node is required.
+ */
+public class CqlResultCacheTest {
+
+	@Test
+	public void TestA() {
+		CqlResultCache cache = new CqlResultCache(60000L, 2, 0);
+
+		cache.put("a", "[1]", getRows("joe"), cache.getGeneration());
+		List<Map<String, Object>> rows = cache.get("a");
+		assertEquals("joe", rows.get(0).get("username"));
+
+		// the caller gets its own copy
+		rows.get(0).put("username", "ann");
+		assertEquals("joe", cache.get("a").get(0).get("username"));
+		assertNull(cache.get("b"));
+		assertEquals(2, cache.getHits());
+		assertEquals(1, cache.getMisses());
+
+		// the least recently used entry is evicted
+		cache.put("b", "[2]", getRows("bob"), cache.getGeneration());
+		cache.get("a");
+		cache.put("c", null, getRows("sue"), cache.getGeneration());
+		assertEquals(2, cache.size());
+		assertNull(cache.get("b"));
+		assertEquals(1, cache.getEvictions());
+
+		// rows read before an invalidation are not cached
+		long gen = cache.getGeneration();
+		cache.invalidate("[2]");
+		assertFalse(cache.put("b", "[2]", getRows("bob"), gen));
+
+		// a partition's invalidation also removes the entries whose
+		// partition is unknown
+		assertNotNull(cache.get("a"));
+		assertNull(cache.get("c"));
+		cache.invalidate("[1]");
+		assertNull(cache.get("a"));
+		assertEquals(0, cache.getBytes());
+	}
+
+	@Test
+	public void TestB() throws Exception {
+		CqlStmnt select = new CqlStmnt(
+				"select * from ks.users where username = `text:user` "
+						+ "and age > `int:age` allow filtering");
+		select.afterPropertiesSet();
+		assertEquals("users", select.getTable());
+		assertEquals(1, select.getColumnKeys().size());
+		assertEquals("user", select.getColumnKeys().get("username"));
+
+		CqlStmnt insert = new CqlStmnt(
+				"insert into users (username, age, email) values "
+						+ "(`text:username`, `int:age`, 'n/a')");
+		insert.afterPropertiesSet();
+		assertEquals("users", insert.getTable());
+		assertEquals(2, insert.getColumnKeys().size());
+		assertEquals("age", insert.getColumnKeys().get("age"));
+
+		CqlStmnt update = new CqlStmnt(
+				"update users set age = `int:age` where username = "
+						+ "`text:username` if email = `text:email`");
+		update.afterPropertiesSet();
+		assertEquals("users", update.getTable());
+		assertEquals(1, update.getColumnKeys().size());
+		assertEquals("username", update.getColumnKeys().get("username"));
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void TestC() {
+		CqlResultCache cache = new CqlResultCache(60000L, 2, 0);
+
+		// the collections and blobs of a CqlRow are not shared with the
+		// cache either
+		List<String> tags = new ArrayList<String>();
+		tags.add("funny");
+		CqlRow.Schema schema = new CqlRow.Schema(new String[] { "username",
+				"tags", "avatar" });
+		List<Map<String, Object>> rows = new ArrayList<Map<String, Object>>();
+		rows.add(new CqlRow(schema, new Object[] { "joe", tags,
+				ByteBuffer.wrap(new byte[] { 1, 2 }) }));
+		cache.put("a", "[1]", rows, cache.getGeneration());
+
+		Map<String, Object> row = cache.get("a").get(0);
+		assertTrue(row instanceof CqlRow);
+		((List<String>) row.get("tags")).add("sad");
+		((ByteBuffer) row.get("avatar")).put(0, (byte) 9);
+
+		row = cache.get("a").get(0);
+		assertEquals(1, ((List<String>) row.get("tags")).size());
+		assertEquals(1, ((ByteBuffer) row.get("avatar")).get(0));
+	}
+
+	private List<Map<String, Object>> getRows(String username) {
+		Map<String, Object> row = new HashMap<String, Object>();
+		row.put("username", username);
+		List<Map<String, Object>> rows = new ArrayList<Map<String, Object>>();
+		rows.add(row);
+		return rows;
+	}
+
+}
@@ -0,0 +1,79 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.metis.cassandra;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Validates the compact row's Map view. No Cassandra node is required.
+ */
+public class CqlRowTest {
+
+	@Test
+	public void TestA() {
+		CqlRow.Schema schema = new CqlRow.Schema(new String[] { "username",
+				"age", "email" });
+		CqlRow row1 = new CqlRow(schema, new Object[] { "joe", 42, null });
+		CqlRow row2 = new CqlRow(schema, new Object[] { "ann", 7, "a@b.c" });
+
+		assertEquals(3, row1.size());
+		assertEquals("joe", row1.get("username"));
+		assertEquals(42, row1.get("age"));
+		assertNull(row1.get("email"));
+		assertTrue(row1.containsKey("email"));
+		assertFalse(row1.containsKey("foo"));
+		assertEquals("a@b.c", row2.get(2));
+
+		// a compact row equals the HashMap it replaces
+		Map<String, Object> map = new HashMap<String, Object>();
+		map.put("username", "joe");
+		map.put("age", 42);
+		map.put("email", null);
+		assertEquals(map, row1);
+		assertEquals(map.hashCode(), row1.hashCode());
+
+		// the rows share their key set and are read-only
+		assertSame(row1.keySet(), row2.keySet());
+		try {
+			row1.put("age", 43);
+			fail("ERROR: compact row was modified");
+		} catch (UnsupportedOperationException ignore) {
+		}
+	}
+
+	@Test
+	public void TestB() {
+		// a duplicate column name is one key, whose value is its last column
+		CqlRow.Schema schema = new CqlRow.Schema(new String[] { "id", "ts",
+				"id" });
+		CqlRow row = new CqlRow(schema, new Object[] { 1, 100L, 2 });
+
+		Map<String, Object> map = new HashMap<String, Object>();
+		map.put("id", 1);
+		map.put("ts", 100L);
+		map.put("id", 2);
+		assertEquals(2, row.size());
+		assertEquals(2, row.entrySet().size());
+		assertEquals(2, row.get("id"));
+		assertEquals(map, row);
+		assertEquals(row, map);
+		assertEquals(map.hashCode(), row.hashCode());
+		assertEquals(1, row.get(0));
+	}
+
+}
@@ -13,8 +13,17 @@
  */
 package org.metis.cassandra;
 
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.camel.Message;
 
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -25,6 +34,9 @@ import org.springframework.context.ApplicationContext;
 import org.springframework.context.support.ClassPathXmlApplicationContext;
 import org.junit.FixMethodOrder;
 import org.junit.runners.MethodSorters;
+import com.datastax.driver.core.Session;
+import com.google.common.util.concurrent.SettableFuture;
+
 import static org.junit.Assert.*;
 
 /**
@@ -670,4 +682,184 @@ public class CqlStmntTest {
 
 	}
 
+	@Test
+	public void TestB() {
+
+		// a scan of an entire table
+		cqlStmnt = new CqlStmnt("select * from videos");
+		cqlStmnt.setScanKey("videoid");
+		try {
+			cqlStmnt.afterPropertiesSet();
+		} catch (Exception e) {
+			fail("ERROR: got this exception: " + e.getMessage());
+		}
+		assertTrue(cqlStmnt.isScan());
+		assertEquals("select * from videos WHERE token(videoid) > ? AND "
+				+ "token(videoid) <= ?", cqlStmnt.getScanStr(true));
+		assertEquals("select * from videos WHERE token(videoid) > ?",
+				cqlStmnt.getScanStr(false));
+
+		// the token range must follow the params and precede the limit
+		cqlStmnt = new CqlStmnt(
+				"select * from video_event where username = `text:username` "
+						+ "limit 10 allow filtering");
+		cqlStmnt.setScanKey("videoid");
+		try {
+			cqlStmnt.afterPropertiesSet();
+		} catch (Exception e) {
+			fail("ERROR: got this exception: " + e.getMessage());
+		}
+		assertEquals("select * from video_event where username = ? AND "
+				+ "token(videoid) > ? AND token(videoid) <= ? limit 10 "
+				+ "allow filtering", cqlStmnt.getScanStr(true));
+
+		// this should throw an exception, only a select can scan
+		cqlStmnt = new CqlStmnt(
+				"delete from video_event where username = `text:username`");
+		cqlStmnt.setScanKey("videoid");
+		try {
+			cqlStmnt.afterPropertiesSet();
+			fail("ERROR: did not get Exception when scanning via delete");
+		} catch (Exception e) {
+			if (!(e instanceof IllegalArgumentException)) {
+				fail("ERROR: did not get IllegalArgumentException");
+			}
+		}
+	}
+
+	@Test
+	public void TestC() throws Exception {
+
+		// each key token's binder is compiled with the token's position
+		cqlStmnt = new CqlStmnt(
+				"select * from videos where videoid = `uuid:videoid` and "
+						+ "tags contains `list:int:ids` and name = `text:name`");
+		cqlStmnt.afterPropertiesSet();
+		CqlToken token = cqlStmnt.getKeyTokens().get("name");
+		assertArrayEquals(new int[] { 2 }, token.getBinder().getPositions());
+
+		// collection elements are parsed by the element type's binder
+		token = cqlStmnt.getKeyTokens().get("ids");
+		List<String> ids = new ArrayList<String>();
+		ids.add("1");
+		ids.add("2");
+		List<?> list = token.getList(ids);
+		assertEquals(Integer.valueOf(1), list.get(0));
+		assertEquals(Integer.valueOf(2), list.get(1));
+
+		// a list of Strings is bound as is
+		token = new CqlToken("list", "text", "names", 0);
+		assertSame(ids, token.getList(ids));
+	}
+
+	@Test
+	public void TestD() throws Exception {
+
+		cqlStmnt = new CqlStmnt(
+				"select * from users where username = `text:username`");
+		cqlStmnt.setCoalesce(true);
+		cqlStmnt.afterPropertiesSet();
+		assertTrue(cqlStmnt.isCoalescing());
+
+		// the default key is given by the params, regardless of their order
+		Map<String, Object> params1 = new HashMap<String, Object>();
+		params1.put("username", "joe");
+		params1.put("age", 42);
+		Map<String, Object> params2 = new TreeMap<String, Object>(params1);
+		String key = cqlStmnt.getCoalesceKey(params1, null);
+		assertEquals(key, cqlStmnt.getCoalesceKey(params2, null));
+
+		// an identical request joins the query that is in flight
+		Session session = (Session) Proxy.newProxyInstance(getClass()
+				.getClassLoader(), new Class<?>[] { Session.class },
+				new InvocationHandler() {
+					public Object invoke(Object proxy, Method method,
+							Object[] args) {
+						return (method.getName().equals("hashCode")) ? 1
+								: (method.getName().equals("equals")) ? proxy == args[0]
+										: null;
+					}
+				});
+		SettableFuture<List<Map<String, Object>>> flight1 = SettableFuture
+				.create();
+		SettableFuture<List<Map<String, Object>>> flight2 = SettableFuture
+				.create();
+		assertNull(cqlStmnt.joinInFlight(session, key, flight1));
+		assertSame(flight1, cqlStmnt.joinInFlight(session, key, flight2));
+		assertEquals(1, cqlStmnt.getCoalesceHits());
+		assertEquals(1, cqlStmnt.getCoalesceMisses());
+
+		// once the query has left, the next request issues its own query
+		cqlStmnt.leaveInFlight(session, key, flight1);
+		assertNull(cqlStmnt.joinInFlight(session, key, flight2));
+
+		// a key mapper can opt a request out of coalescing
+		cqlStmnt.setCoalesceKeyMapper(new CqlKeyMapper() {
+			public String getKey(CqlStmnt cqlStmnt,
+					Map<String, Object> inParams, Message inMsg) {
+				return null;
+			}
+		});
+		assertNull(cqlStmnt.getCoalesceKey(params1, null));
+	}
+
+	@Test
+	public void TestE() throws Exception {
+
+		// equal params yield equal keys, regardless of their order
+		Map<String, Object> params1 = new LinkedHashMap<String, Object>();
+		params1.put("a", "1");
+		params1.put("b", "2");
+		Map<String, Object> params2 = new LinkedHashMap<String, Object>();
+		params2.put("b", "2");
+		params2.put("a", "1");
+		assertEquals(CqlStmnt.getParamsKey(params1),
+				CqlStmnt.getParamsKey(params2));
+
+		// but values that hold the separators of Map.toString() do not make
+		// different params collide
+		params1.clear();
+		params1.put("a", "1, b=2");
+		params2.clear();
+		params2.put("a", "1");
+		params2.put("b", "2");
+		assertEquals(params1.toString(), params2.toString());
+		assertFalse(CqlStmnt.getParamsKey(params1).equals(
+				CqlStmnt.getParamsKey(params2)));
+
+		// nor does a null value collide with the String "null"
+		params1.clear();
+		params1.put("a", null);
+		params2.clear();
+		params2.put("a", "null");
+		assertFalse(CqlStmnt.getParamsKey(params1).equals(
+				CqlStmnt.getParamsKey(params2)));
+	}
+
+	@Test
+	public void TestF() throws Exception {
+
+		// a conditional write is never batched
+		cqlStmnt = new CqlStmnt("insert into users (username, age) values "
+				+ "(`text:username`, `int:age`) if not exists");
+		cqlStmnt.afterPropertiesSet();
+		assertTrue(cqlStmnt.isConditional());
+
+		cqlStmnt = new CqlStmnt("update users set age = `int:age` where "
+				+ "username = `text:username` IF age = `int:oldage`");
+		cqlStmnt.afterPropertiesSet();
+		assertTrue(cqlStmnt.isConditional());
+		assertEquals("username", cqlStmnt.getColumnKeys().get("username"));
+
+		// but an unconditional one may be
+		cqlStmnt = new CqlStmnt("insert into users (username, age) values "
+				+ "(`text:username`, `int:age`)");
+		cqlStmnt.afterPropertiesSet();
+		assertFalse(cqlStmnt.isConditional());
+
+		cqlStmnt = new CqlStmnt(
+				"select * from users where username = `text:username`");
+		cqlStmnt.afterPropertiesSet();
+		assertFalse(cqlStmnt.isConditional());
+	}
 }
@@ -0,0 +1,119 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.metis.cassandra;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Validates that the write-behind buffer does not lose the writes that it
+ * accepts while it is being closed. No Cassandra node is required; the
+ * client has no cluster, so every flush fails and is counted as such.
+ */
+public class CqlWriteBehindTest {
+
+	@Test
+	public void TestA() throws Exception {
+		Client client = new Client();
+		client.setBeanName("test");
+		final CqlStmnt cqlStmnt = new CqlStmnt(
+				"insert into users (userid) values (`uuid:userid`)");
+		final CqlWriteBehind buffer = new CqlWriteBehind(client, 1000, 10, 1L);
+		final AtomicLong accepted = new AtomicLong();
+		final CountDownLatch started = new CountDownLatch(4);
+		List<Thread> writers = new ArrayList<Thread>();
+		for (int i = 0; i < 4; i++) {
+			Thread writer = new Thread() {
+				public void run() {
+					List<Map<Object, Object>> listMap = new ArrayList<Map<Object, Object>>();
+					listMap.add(new HashMap<Object, Object>());
+					started.countDown();
+					try {
+						for (int j = 0; j < 10000; j++) {
+							if (buffer.offer(cqlStmnt, listMap, 10L)) {
+								accepted.incrementAndGet();
+							}
+						}
+					} catch (InterruptedException ignore) {
+					}
+				}
+			};
+			writer.start();
+			writers.add(writer);
+		}
+		started.await();
+		Thread.sleep(10L);
+
+		// close the buffer while the writers are still offering writes
+		buffer.close(10000L);
+		for (Thread writer : writers) {
+			writer.join();
+		}
+
+		// every write that was accepted was flushed and none was left behind
+		assertTrue(accepted.get() > 0);
+		assertEquals(accepted.get(), buffer.getWrites());
+		assertEquals(accepted.get(), buffer.getFailures());
+		assertEquals(0, buffer.getPending());
+	}
+
+	@Test
+	public void TestB() throws Exception {
+		Client client = new Client();
+		client.setBeanName("test");
+		final CqlStmnt cqlStmnt = new CqlStmnt(
+				"insert into users (userid) values (`uuid:userid`)");
+		final List<Map<Object, Object>> listMap = new ArrayList<Map<Object, Object>>();
+		listMap.add(new HashMap<Object, Object>());
+
+		// the buffer has room for one write, which the flusher holds while
+		// it waits for its flush to fill up
+		final CqlWriteBehind buffer = new CqlWriteBehind(client, 1, 10, 1000L);
+		assertTrue(buffer.offer(cqlStmnt, listMap, 10L));
+
+		// so, this writer waits for room
+		final boolean[] accepted = new boolean[1];
+		Thread writer = new Thread() {
+			public void run() {
+				try {
+					accepted[0] = buffer.offer(cqlStmnt, listMap, 5000L);
+				} catch (InterruptedException ignore) {
+				}
+			}
+		};
+		writer.start();
+		Thread.sleep(100L);
+
+		// the room that the flush gives back, once the buffer is closed,
+		// must not let the waiting write into the closed buffer
+		buffer.close(10000L);
+		writer.join();
+		assertFalse(accepted[0]);
+		assertEquals(1, buffer.getWrites());
+		assertEquals(0, buffer.getPending());
+
+		// nor is any write accepted after that
+		assertFalse(buffer.offer(cqlStmnt, listMap, 10L));
+		assertEquals(1, buffer.getWrites());
+	}
+
+}
@@ -126,4 +126,25 @@ public class MatchingTest {
 		stmnt = CqlStmnt.getMatch(cqlList, map.keySet());
 		assertTrue(stmnt == null);
 	}
+
+	@Test
+	public void TestB() {
+		// the dispatch index must yield the same statements as getMatch
+		CqlStmntIndex index = new CqlStmntIndex(cqlList);
+		assertFalse(index.isEmpty());
+		map.clear();
+		assertTrue(index.getMatch(map.keySet()) == CqlStmnt.getMatch(cqlList,
+				map.keySet()));
+		assertTrue(index.getMatch(map.keySet()) == cqlList.get(0));
+		map.put("username", "joef551");
+		assertTrue(index.getMatch(map.keySet()) == cqlList.get(1));
+		map.put("videoid", "3984793");
+		assertTrue(index.getMatch(map.keySet()) == cqlList.get(2));
+		map.put("foobar", "3984793");
+		assertTrue(index.getMatch(map.keySet()) == null);
+		map.clear();
+		map.put("foo", "joef551");
+		assertTrue(index.getMatch(map.keySet()) == null);
+		assertTrue(new CqlStmntIndex(null).isEmpty());
+	}
 }